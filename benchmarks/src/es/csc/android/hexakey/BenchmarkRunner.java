@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the average time of an operation, the way the JMH "avgt" mode does: some
+ * warmup iterations whose results are discarded, then the measured iterations, all
+ * in the same JVM. Every iteration repeats the operation for about the given time.
+ * <p>
+ * The results are written in the JSON format of JMH, so they can be compared across
+ * commits with the tools made for it.
+ */
+final class BenchmarkRunner {
+    /** Repeats an operation and returns a value depending on all the repetitions. */
+    interface Benchmark {
+        long run(int operations);
+    }
+
+    /** Quantiles of the Student's t distribution at 99.95%, by degrees of freedom. */
+    private static final double[] T_QUANTILES = {
+        636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587 };
+    private static final double NORMAL_QUANTILE = 3.291;
+
+    private static final long CALIBRATION_NANOS = 10 * 1000 * 1000L;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+
+    private final List<String> names = new ArrayList<String>();
+    private final List<double[]> results = new ArrayList<double[]>();
+
+    /** Keeps the results of the operations, so the JIT cannot remove them. */
+    private volatile long sink;
+
+    BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1000 * 1000;
+    }
+
+    void run(String name, Benchmark benchmark) {
+        int operations = 1;
+        long elapsed;
+        do {
+            operations *= 2;
+            elapsed = measure(benchmark, operations);
+        } while (elapsed < CALIBRATION_NANOS && operations < Integer.MAX_VALUE / 2);
+        operations = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                (double) operations * iterationNanos / Math.max(1, elapsed)));
+
+        for (int i = 0; i < warmupIterations; i++) {
+            measure(benchmark, operations);
+        }
+
+        final double[] nanosPerOperation = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            nanosPerOperation[i] = (double) measure(benchmark, operations) / operations;
+        }
+
+        names.add(name);
+        results.add(nanosPerOperation);
+        System.out.println(String.format(Locale.US, "%-40s %12.3f +- %.3f ns/op",
+                name, mean(nanosPerOperation), error(nanosPerOperation)));
+    }
+
+    private long measure(Benchmark benchmark, int operations) {
+        final long start = System.nanoTime();
+        sink += benchmark.run(operations);
+        return System.nanoTime() - start;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    /**
+     * @return the half width of the 99.9% confidence interval of the mean
+     */
+    private static double error(double[] values) {
+        if (values.length < 2) {
+            return Double.NaN;
+        }
+        final double mean = mean(values);
+        double squares = 0;
+        for (double value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+        final int freedom = values.length - 1;
+        final double quantile = freedom <= T_QUANTILES.length
+                ? T_QUANTILES[freedom - 1] : NORMAL_QUANTILE;
+        return quantile * Math.sqrt(squares / freedom) / Math.sqrt(values.length);
+    }
+
+    void writeJson(Writer writer) throws IOException {
+        writer.write("[\n");
+        for (int i = 0; i < names.size(); i++) {
+            final double[] values = results.get(i);
+            final double mean = mean(values);
+            final double error = error(values);
+            writer.write("    {\n");
+            writer.write("        \"benchmark\" : \"" + names.get(i) + "\",\n");
+            writer.write("        \"mode\" : \"avgt\",\n");
+            writer.write("        \"threads\" : 1,\n");
+            writer.write("        \"forks\" : 0,\n");
+            writer.write("        \"warmupIterations\" : " + warmupIterations + ",\n");
+            writer.write("        \"warmupTime\" : \"" + iterationNanos / 1000000 + " ms\",\n");
+            writer.write("        \"measurementIterations\" : " + measurementIterations + ",\n");
+            writer.write("        \"measurementTime\" : \"" + iterationNanos / 1000000 + " ms\",\n");
+            writer.write("        \"primaryMetric\" : {\n");
+            writer.write("            \"score\" : " + number(mean) + ",\n");
+            writer.write("            \"scoreError\" : " + number(error) + ",\n");
+            writer.write("            \"scoreConfidence\" : [ " + number(mean - error) + ", "
+                    + number(mean + error) + " ],\n");
+            writer.write("            \"scoreUnit\" : \"ns/op\",\n");
+            writer.write("            \"rawData\" : [ [ ");
+            for (int v = 0; v < values.length; v++) {
+                writer.write((v > 0 ? ", " : "") + number(values[v]));
+            }
+            writer.write(" ] ]\n");
+            writer.write("        },\n");
+            writer.write("        \"secondaryMetrics\" : {}\n");
+            writer.write(i < names.size() - 1 ? "    },\n" : "    }\n");
+        }
+        writer.write("]\n");
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value)
+                ? "\"NaN\"" : String.format(Locale.US, "%.6f", value);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package es.csc.android.hexakey;
+
+import java.util.Random;
+
+import android.text.TextUtils;
+import android.view.KeyEvent;
+import android.view.inputmethod.InputConnection;
+
+/**
+ * Compares the caps mode that CapsModeTracker finds from its local copy of the text
+ * with the one of TextUtils.getCapsMode over the whole text of the editor, after
+ * every key of a random corpus typed with deletes of characters and words.
+ * <p>
+ * The corpus has sentences, abbreviations, quotes and brackets, new lines, runs of
+ * spaces and words longer than the copy kept by the tracker, so the copy is often
+ * truncated, and characters out of the BMP, deleted one key at a time as the editors
+ * do. Run it from the root of the repository; it exits with 1 if any caps mode
+ * differs:
+ * <pre>
+ * java -cp benchmarks/bin es.csc.android.hexakey.CapsModeCheck
+ * </pre>
+ */
+public class CapsModeCheck {
+    private static final int KEYS = 200000;
+    private static final int[] MODES = { TextUtils.CAP_MODE_SENTENCES, TextUtils.CAP_MODE_WORDS,
+            TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_SENTENCES };
+    private static final String[] PIECES = {
+        "the", "quick", "brown", "fox", "e.g.", "U.S.A.", "Mr.", "etc.", "3.14",
+        " ", " ", " ", " ", "  ", "\t", "\n", ". ", ".  ", "? ", "! ", ", ", "... ",
+        "\"", "'", "(", ")", "[", "]", "\u00ab", "\u00bb", "\u00bf", "\u00a1",
+        "\ud83d\ude00", "\ud801\udc00", "\u00e9t\u00e9"
+    };
+
+    private final Random random = new Random(1);
+    private final Editor editor = new Editor();
+    private final CapsModeTracker tracker = new CapsModeTracker();
+    private int checks;
+    private int errors;
+
+    public static void main(String[] args) {
+        final CapsModeCheck check = new CapsModeCheck();
+        check.run();
+        System.out.println("Checked " + check.checks + " caps modes, " + check.editor.capsModeCalls
+                + " asked to the editor, " + check.errors + " differences");
+        if (check.errors > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void run() {
+        tracker.start(editor, 0, 0);
+        for (int i = 0; i < KEYS && errors < 20; i++) {
+            final int operation = random.nextInt(100);
+            if (operation < 8) {
+                // HexaKey.handleBackspace
+                editor.deleteCharacter();
+                tracker.onDelete();
+            }
+            else if (operation < 9) {
+                // HexaKey.deleteWordBeforeCursor
+                final int length = tracker.getLastWordLength(editor);
+                if (length > 0) {
+                    editor.deleteSurroundingText(length, 0);
+                    tracker.onTextDeleted(length);
+                }
+            }
+            else {
+                final String text = nextPiece();
+                editor.commitText(text, 1);
+                tracker.onTextCommitted(text);
+            }
+            // The keys are sent and the editor reports the new cursor position
+            tracker.onCommitted();
+            tracker.onUpdateSelection(editor.text.length(), editor.text.length());
+            check();
+        }
+    }
+
+    private String nextPiece() {
+        final int kind = random.nextInt(100);
+        if (kind < 2) {
+            // Longer than the copy of the text of the tracker
+            final char c = random.nextBoolean() ? ' ' : 'a';
+            final StringBuilder builder = new StringBuilder();
+            for (int length = 60 + random.nextInt(150); length > 0; length--) {
+                builder.append(c);
+            }
+            return builder.toString();
+        }
+        return PIECES[random.nextInt(PIECES.length)];
+    }
+
+    private void check() {
+        for (int reqModes : MODES) {
+            checks++;
+            final int expected = TextUtils.getCapsMode(editor.text, editor.text.length(), reqModes);
+            final int actual = tracker.getCursorCapsMode(editor, reqModes);
+            if (actual != expected) {
+                errors++;
+                final int start = Math.max(0, editor.text.length() - 40);
+                System.out.println("Caps mode " + Integer.toHexString(actual) + " instead of "
+                        + Integer.toHexString(expected) + " for " + Integer.toHexString(reqModes)
+                        + " after \"" + editor.text.substring(start).replace("\n", "\\n") + "\"");
+            }
+        }
+    }
+
+    /**
+     * Editor with the cursor always at the end of its text.
+     */
+    private static class Editor implements InputConnection {
+        final StringBuilder text = new StringBuilder();
+        int capsModeCalls;
+
+        @Override
+        public CharSequence getTextBeforeCursor(int n, int flags) {
+            return text.substring(Math.max(0, text.length() - n));
+        }
+
+        @Override
+        public int getCursorCapsMode(int reqModes) {
+            capsModeCalls++;
+            return TextUtils.getCapsMode(text, text.length(), reqModes);
+        }
+
+        @Override
+        public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+            text.setLength(Math.max(0, text.length() - beforeLength));
+            return true;
+        }
+
+        @Override
+        public boolean commitText(CharSequence newText, int newCursorPosition) {
+            text.append(newText);
+            return true;
+        }
+
+        @Override
+        public boolean beginBatchEdit() {
+            return true;
+        }
+
+        @Override
+        public boolean endBatchEdit() {
+            return true;
+        }
+
+        @Override
+        public boolean sendKeyEvent(KeyEvent event) {
+            if (event.getAction() == KeyEvent.ACTION_DOWN && event.getKeyCode() == KeyEvent.KEYCODE_DEL) {
+                deleteCharacter();
+            }
+            return true;
+        }
+
+        /**
+         * The delete key removes the whole character before the cursor, both chars of
+         * a surrogate pair.
+         */
+        void deleteCharacter() {
+            final int end = text.length();
+            if (end == 0) {
+                return;
+            }
+            text.setLength(end >= 2 && Character.isLowSurrogate(text.charAt(end - 1))
+                    && Character.isHighSurrogate(text.charAt(end - 2)) ? end - 2 : end - 1);
+        }
+    }
+}
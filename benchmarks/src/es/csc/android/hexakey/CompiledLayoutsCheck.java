@@ -0,0 +1,309 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package es.csc.android.hexakey;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import android.content.res.Resources;
+
+/**
+ * Checks that every layout of CompiledLayouts places the same keys, with the same codes,
+ * at the same positions and with the same sizes as its XML in res/xml, so a compiled
+ * layout that is out of date is found before it reaches the app.
+ * <p>
+ * The keys are placed on a 720x1280 xhdpi screen, in portrait with the values of
+ * res/values and in landscape with those of res/values-land too. Run it from the root
+ * of the repository; it exits with 1 if any layout differs:
+ * <pre>
+ * java -cp benchmarks/bin es.csc.android.hexakey.CompiledLayoutsCheck
+ * </pre>
+ */
+public class CompiledLayoutsCheck {
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+    private static final float DENSITY = 2;
+
+    // Fields of every key placed by place()
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int WIDTH = 2;
+    private static final int HEIGHT = 3;
+    private static final int KEY_FIELDS = 4;
+
+    public static void main(String[] args) throws Exception {
+        final File resDirectory = new File(args.length > 0 ? args[0] : "res");
+        final File[] files = new File(resDirectory, "xml").listFiles();
+        if (files == null) {
+            throw new IllegalArgumentException("Cannot list the layouts of " + resDirectory);
+        }
+        Arrays.sort(files);
+
+        final Map<String, String> portrait = readValues(new File(resDirectory, "values/dimens.xml"),
+                new HashMap<String, String>());
+        final Map<String, String> landscape = readValues(
+                new File(resDirectory, "values-land/dimens.xml"), new HashMap<String, String>(portrait));
+
+        int layouts = 0;
+        int errors = 0;
+        for (File file : files) {
+            final String name = file.getName();
+            if (!name.endsWith(".xml") || !(name.startsWith("letters_") || name.startsWith("symbols")
+                    || name.equals("numbers.xml"))) {
+                continue;
+            }
+            layouts++;
+            final String layoutName = name.substring(0, name.length() - ".xml".length());
+            final CompiledLayout layout = CompiledLayouts.get(resourceId("xml", layoutName));
+            if (layout == null) {
+                System.out.println(layoutName + ": not compiled");
+                errors++;
+                continue;
+            }
+            final Element keyboard = parse(file);
+            errors += compare(layoutName + " (portrait)", keyboard, layout, portrait, 720, 1280);
+            errors += compare(layoutName + " (landscape)", keyboard, layout, landscape, 1280, 720);
+        }
+
+        System.out.println("Checked " + layouts + " layouts, " + errors + " differences");
+        if (errors > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the number of keys that differ between the XML and the compiled layout
+     */
+    private static int compare(String name, Element keyboard, CompiledLayout layout,
+            Map<String, String> values, int displayWidth, int displayHeight) {
+        final List<int[]> xmlCodes = new ArrayList<int[]>();
+        final int[] xmlKeys = placeXml(keyboard, values, displayWidth, displayHeight, xmlCodes);
+        final int[] compiledKeys = placeCompiled(layout, new ValuesResources(values),
+                displayWidth, displayHeight);
+
+        if (xmlKeys.length != compiledKeys.length) {
+            System.out.println(name + ": " + xmlKeys.length / KEY_FIELDS + " keys in the XML, "
+                    + layout.getKeyCount() + " compiled");
+            return 1;
+        }
+        int errors = 0;
+        for (int key = 0; key < layout.getKeyCount(); key++) {
+            final int offset = key * KEY_FIELDS;
+            final int[] codes = layout.getCodes(key);
+            if (!Arrays.equals(codes, xmlCodes.get(key))
+                    || !Arrays.equals(Arrays.copyOfRange(xmlKeys, offset, offset + KEY_FIELDS),
+                            Arrays.copyOfRange(compiledKeys, offset, offset + KEY_FIELDS))) {
+                System.out.println(name + ": key " + key + " is " + describe(xmlCodes.get(key), xmlKeys, offset)
+                        + " in the XML, " + describe(codes, compiledKeys, offset) + " compiled");
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    private static String describe(int[] codes, int[] keys, int offset) {
+        return Arrays.toString(codes) + " at (" + keys[offset + X] + ", " + keys[offset + Y] + ") "
+                + keys[offset + WIDTH] + "x" + keys[offset + HEIGHT];
+    }
+
+    /**
+     * Places the keys of an XML layout the same way {@link android.inputmethodservice.Keyboard}
+     * does when it parses it.
+     */
+    private static int[] placeXml(Element keyboard, Map<String, String> values,
+            int displayWidth, int displayHeight, List<int[]> codes) {
+        final int keyWidth = size(keyboard, "keyWidth", values, displayWidth, displayWidth / 10);
+        final int keyHeight = size(keyboard, "keyHeight", values, displayHeight, 50);
+        final int horizontalGap = size(keyboard, "horizontalGap", values, displayWidth, 0);
+        final int verticalGap = size(keyboard, "verticalGap", values, displayHeight, 0);
+
+        final List<Integer> keys = new ArrayList<Integer>();
+        int y = 0;
+        for (Element row : children(keyboard)) {
+            int x = 0;
+            for (Element key : children(row)) {
+                final int width = size(key, "keyWidth", values, displayWidth, keyWidth);
+                x += size(key, "horizontalGap", values, displayWidth, horizontalGap);
+                keys.addAll(Arrays.asList(x, y, width,
+                        size(key, "keyHeight", values, displayHeight, keyHeight)));
+                codes.add(codes(key));
+                x += width;
+            }
+            y += verticalGap + keyHeight;
+        }
+
+        final int[] result = new int[keys.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = keys.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Places the keys of a compiled layout the same way LatinKeyboard does.
+     */
+    private static int[] placeCompiled(CompiledLayout layout, Resources res,
+            int displayWidth, int displayHeight) {
+        final int keyWidth = layout.resolveKeyboardSize(res, CompiledLayout.KEYBOARD_KEY_WIDTH,
+                displayWidth, displayWidth / 10);
+        final int keyHeight = layout.resolveKeyboardSize(res, CompiledLayout.KEYBOARD_KEY_HEIGHT,
+                displayHeight, 50);
+        final int horizontalGap = layout.resolveKeyboardSize(res,
+                CompiledLayout.KEYBOARD_HORIZONTAL_GAP, displayWidth, 0);
+        final int verticalGap = layout.resolveKeyboardSize(res,
+                CompiledLayout.KEYBOARD_VERTICAL_GAP, displayHeight, 0);
+
+        final int[] keys = new int[layout.getKeyCount() * KEY_FIELDS];
+        int index = 0;
+        int y = 0;
+        for (int rowLength : layout.rowLengths) {
+            int x = 0;
+            for (int i = 0; i < rowLength; i++, index++) {
+                final int width = layout.resolveKeySize(res, index, CompiledLayout.KEY_WIDTH,
+                        displayWidth, keyWidth);
+                x += layout.resolveKeySize(res, index, CompiledLayout.KEY_GAP, displayWidth,
+                        horizontalGap);
+                final int offset = index * KEY_FIELDS;
+                keys[offset + X] = x;
+                keys[offset + Y] = y;
+                keys[offset + WIDTH] = width;
+                keys[offset + HEIGHT] = layout.resolveKeySize(res, index,
+                        CompiledLayout.KEY_HEIGHT, displayHeight, keyHeight);
+                x += width;
+            }
+            y += verticalGap + keyHeight;
+        }
+        return keys;
+    }
+
+    private static int[] codes(Element key) {
+        if (key.hasAttributeNS(ANDROID_NS, "codes")) {
+            final String[] values = key.getAttributeNS(ANDROID_NS, "codes").split(",");
+            final int[] codes = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                codes[i] = Integer.parseInt(values[i].trim());
+            }
+            return codes;
+        }
+        // Labels of a single character, the only ones without codes in the layouts
+        final String label = key.getAttributeNS(ANDROID_NS, "keyLabel");
+        return new int[] { label.charAt(label.startsWith("\\") ? 1 : 0) };
+    }
+
+    private static int size(Element element, String attribute, Map<String, String> values,
+            int base, int defaultValue) {
+        if (!element.hasAttributeNS(ANDROID_NS, attribute)) {
+            return defaultValue;
+        }
+        final String value = element.getAttributeNS(ANDROID_NS, attribute).trim();
+        final int slash = value.indexOf('/');
+        if (value.startsWith("@") && slash > 0) {
+            return convert(values.get(value.substring(slash + 1)), base);
+        }
+        return convert(value, base);
+    }
+
+    /**
+     * Converts a dimension to pixels, truncating as getDimensionPixelOffset does, or
+     * a fraction of the display to pixels, rounding as Keyboard does.
+     */
+    static int convert(String value, int base) {
+        if (value == null) {
+            throw new IllegalArgumentException("Unknown resource");
+        }
+        if (value.endsWith("%p")) {
+            return Math.round(Float.parseFloat(value.substring(0, value.length() - 2)) * base / 100);
+        }
+        if (value.endsWith("px")) {
+            return Integer.parseInt(value.substring(0, value.length() - 2));
+        }
+        if (value.endsWith("dip") || value.endsWith("dp") || value.endsWith("sp")) {
+            return (int) (Float.parseFloat(value.replaceAll("[a-z]+$", "")) * DENSITY);
+        }
+        throw new IllegalArgumentException("Unsupported size " + value);
+    }
+
+    private static Map<String, String> readValues(File file, Map<String, String> values)
+            throws Exception {
+        final Element resources = parse(file);
+        for (Element value : children(resources)) {
+            if (value.getTagName().equals("dimen") || "fraction".equals(value.getAttribute("type"))) {
+                values.put(value.getAttribute("name"), value.getTextContent().trim());
+            }
+        }
+        return values;
+    }
+
+    private static Element parse(File file) throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(file).getDocumentElement();
+    }
+
+    private static int resourceId(String type, String name) throws Exception {
+        return Class.forName(R.class.getName() + "$" + type).getField(name).getInt(null);
+    }
+
+    private static List<Element> children(Element parent) {
+        final List<Element> elements = new ArrayList<Element>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Resources that resolve the dimensions and fractions of R from res/values.
+     */
+    private static class ValuesResources extends Resources {
+        private final Map<Integer, String> values = new HashMap<Integer, String>();
+
+        ValuesResources(Map<String, String> namedValues) {
+            for (Class<?> type : Arrays.asList(R.dimen.class, R.fraction.class)) {
+                for (Field field : type.getFields()) {
+                    try {
+                        values.put(field.getInt(null), namedValues.get(field.getName()));
+                    }
+                    catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int getDimensionPixelOffset(int id) {
+            return convert(values.get(id), 0);
+        }
+
+        @Override
+        public float getFraction(int id, int base, int pbase) {
+            final String value = values.get(id);
+            return Float.parseFloat(value.substring(0, value.length() - 2)) * pbase / 100;
+        }
+    }
+}
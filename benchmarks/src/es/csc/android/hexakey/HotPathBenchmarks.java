@@ -0,0 +1,226 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+
+/**
+ * Benchmarks of the code that runs on every touch or key of the keyboard, run on the
+ * desktop with the few Android classes it uses replaced by the ones of stubs/.
+ * <p>
+ * The keys are those of the letters layouts on a 720x1280 xhdpi screen.
+ */
+public class HotPathBenchmarks {
+    private static final int[] LETTERS_ROW_LENGTHS = { 7, 8, 7, 8, 7 };
+    private static final int KEY_WIDTH = 85;
+    private static final int KEY_HEIGHT = 104;
+    private static final int VERTICAL_GAP = -26;
+    private static final int ROW_HORIZONTAL_GAP = 43;
+
+    private static final int TOUCH_POINTS = 1024;
+    private static final String WORD_SEPARATORS = " .,;:!?\n()[]*&@{}/<>_+=|\"";
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog, again and again.\n";
+
+    public static void main(String[] args) throws Exception {
+        int warmupIterations = 5;
+        int measurementIterations = 10;
+        long iterationMillis = 1000;
+        String output = null;
+        String filter = "";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-wi") && i + 1 < args.length) {
+                warmupIterations = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-i") && i + 1 < args.length) {
+                measurementIterations = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-t") && i + 1 < args.length) {
+                iterationMillis = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("-o") && i + 1 < args.length) {
+                output = args[++i];
+            }
+            else if (!args[i].startsWith("-")) {
+                filter = args[i];
+            }
+            else {
+                System.err.println("Usage: HotPathBenchmarks [-wi warmup iterations]"
+                        + " [-i iterations] [-t iteration ms] [-o results.json] [name filter]");
+                System.exit(1);
+            }
+        }
+
+        final BenchmarkRunner runner = new BenchmarkRunner(warmupIterations,
+                measurementIterations, iterationMillis);
+        final List<Key> keys = createLettersKeys();
+
+        if ("HexKeyIndex.findKeyIndex".contains(filter)) {
+            final HexKeyIndex index = HexKeyIndex.build(keys, KEY_WIDTH, KEY_HEIGHT, VERTICAL_GAP);
+            final int[] touchX = new int[TOUCH_POINTS];
+            final int[] touchY = new int[TOUCH_POINTS];
+            final Random random = new Random(1);
+            final int height = LETTERS_ROW_LENGTHS.length * (KEY_HEIGHT + VERTICAL_GAP) - VERTICAL_GAP;
+            for (int i = 0; i < TOUCH_POINTS; i++) {
+                touchX[i] = random.nextInt(8 * KEY_WIDTH);
+                touchY[i] = random.nextInt(height);
+            }
+            runner.run("HexKeyIndex.findKeyIndex", new BenchmarkRunner.Benchmark() {
+                @Override
+                public long run(int operations) {
+                    long result = 0;
+                    for (int i = 0; i < operations; i++) {
+                        final int point = i & (TOUCH_POINTS - 1);
+                        result += index.findKeyIndex(touchX[point], touchY[point]);
+                    }
+                    return result;
+                }
+            });
+        }
+
+        if ("HexKeyIndex.build".contains(filter)) {
+            runner.run("HexKeyIndex.build", new BenchmarkRunner.Benchmark() {
+                @Override
+                public long run(int operations) {
+                    long result = 0;
+                    for (int i = 0; i < operations; i++) {
+                        result += HexKeyIndex.build(keys, KEY_WIDTH, KEY_HEIGHT, VERTICAL_GAP)
+                                .findKeyIndex(0, 0);
+                    }
+                    return result;
+                }
+            });
+        }
+
+        if ("WordSeparators.contains".contains(filter)) {
+            final WordSeparators separators = new WordSeparators(WORD_SEPARATORS);
+            runner.run("WordSeparators.contains", new BenchmarkRunner.Benchmark() {
+                @Override
+                public long run(int operations) {
+                    long result = 0;
+                    for (int i = 0, c = 0; i < operations; i++, c = c + 1 < TEXT.length() ? c + 1 : 0) {
+                        if (separators.contains(TEXT.charAt(c))) {
+                            result++;
+                        }
+                    }
+                    return result;
+                }
+            });
+        }
+
+        if ("CapsLockDetector.onShift".contains(filter)) {
+            final CapsLockDetector detector = new CapsLockDetector();
+            runner.run("CapsLockDetector.onShift", new BenchmarkRunner.Benchmark() {
+                @Override
+                public long run(int operations) {
+                    // Single presses, double presses and presses in caps lock, in turns
+                    long result = 0;
+                    long now = 0;
+                    boolean shifted = false;
+                    for (int i = 0; i < operations; i++) {
+                        now += (i & 3) == 0 ? 1000 : 100;
+                        detector.onShift(shifted, now);
+                        shifted = !shifted || detector.isCapsLock();
+                        if (detector.isCapsLock()) {
+                            result++;
+                        }
+                    }
+                    return result;
+                }
+            });
+        }
+
+        if ("LetterLayouts.get".contains(filter)) {
+            // Two locales of subtypes and one without a layout nor a subtype
+            final String[] locales = { "en_US", "es", "fr" };
+            runner.run("LetterLayouts.get", new BenchmarkRunner.Benchmark() {
+                @Override
+                public long run(int operations) {
+                    long result = 0;
+                    for (int i = 0; i < operations; i++) {
+                        result += LetterLayouts.get(locales[i % locales.length]);
+                    }
+                    return result;
+                }
+            });
+        }
+
+        if ("UserHistory.open".contains(filter)) {
+            final File log = File.createTempFile("history", ".log");
+            log.deleteOnExit();
+            UserHistoryCheck.writeLog(log);
+            runner.run("UserHistory.open", new BenchmarkRunner.Benchmark() {
+                @Override
+                public long run(int operations) {
+                    long result = 0;
+                    try {
+                        for (int i = 0; i < operations; i++) {
+                            final UserHistory history = UserHistory.open(log);
+                            result += history.getWordCount();
+                            history.close();
+                        }
+                    }
+                    catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return result;
+                }
+            });
+        }
+
+        if (output != null) {
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
+            try {
+                runner.writeJson(writer);
+            }
+            finally {
+                writer.close();
+            }
+            System.out.println("Wrote " + output);
+        }
+    }
+
+    /**
+     * @return the keys of the letters layouts, the rows of 7 keys shifted half a key
+     */
+    private static List<Key> createLettersKeys() {
+        final List<Key> keys = new ArrayList<Key>();
+        final Keyboard.Row row = new Keyboard.Row(null);
+        int code = 'a';
+        for (int r = 0; r < LETTERS_ROW_LENGTHS.length; r++) {
+            int x = LETTERS_ROW_LENGTHS[r] == 7 ? ROW_HORIZONTAL_GAP : 0;
+            for (int k = 0; k < LETTERS_ROW_LENGTHS[r]; k++) {
+                final Key key = new Key(row);
+                key.codes = new int[] { code++ };
+                key.x = x;
+                key.y = r * (KEY_HEIGHT + VERTICAL_GAP);
+                key.width = KEY_WIDTH;
+                key.height = KEY_HEIGHT;
+                keys.add(key);
+                x += KEY_WIDTH;
+            }
+        }
+        return keys;
+    }
+}
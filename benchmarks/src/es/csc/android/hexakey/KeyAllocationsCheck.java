@@ -0,0 +1,229 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package es.csc.android.hexakey;
+
+import java.lang.management.ManagementFactory;
+
+import android.inputmethodservice.InputMethodService;
+import android.text.TextUtils;
+import android.view.Choreographer;
+import android.view.KeyEvent;
+import android.view.inputmethod.InputConnection;
+
+/**
+ * Counts the memory allocated by the code that runs for every key typed, from onKey
+ * to the editor: the word separators, the shared strings of the characters, the
+ * commit pipeline and the caps mode tracker, driven the same way HexaKey drives them.
+ * <p>
+ * Run it from the root of the repository in the interpreter, so escape analysis
+ * does not hide any allocation; it exits with 1 if the keys allocate anything:
+ * <pre>
+ * java -Xint -cp benchmarks/bin es.csc.android.hexakey.KeyAllocationsCheck
+ * </pre>
+ */
+public class KeyAllocationsCheck {
+    private static final int KEYS = 10000;
+    /** Keys typed in every frame. */
+    private static final int KEYS_PER_FRAME = 3;
+    /** Every how many keys a key is deleted. */
+    private static final int DELETE_PERIOD = 17;
+    private static final String WORD_SEPARATORS = " .,;:!?\n()[]*&@{}/<>_+=|\"";
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog. Again, 2 times!\n";
+
+    private final WordSeparators separators = new WordSeparators(WORD_SEPARATORS);
+    private final Editor editor = new Editor();
+    private final CapsModeTracker capsModeTracker = new CapsModeTracker();
+    private final CommitPipeline commitPipeline;
+    private int capitalized;
+
+    KeyAllocationsCheck() {
+        final InputMethodService service = new InputMethodService();
+        service.setCurrentInputConnection(editor);
+        commitPipeline = new CommitPipeline(service, new CommitPipeline.Listener() {
+            @Override
+            public void onCommitted() {
+                capsModeTracker.onCommitted();
+                if (capsModeTracker.getCursorCapsMode(editor, TextUtils.CAP_MODE_SENTENCES) != 0) {
+                    capitalized++;
+                }
+                // The editor reports the new cursor position
+                capsModeTracker.onUpdateSelection(editor.cursor, editor.cursor);
+            }
+        });
+        capsModeTracker.start(editor, 0, 0);
+    }
+
+    public static void main(String[] args) {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final KeyAllocationsCheck check = new KeyAllocationsCheck();
+
+        // The first keys create the strings of the characters, the key events and the
+        // buffers, that are kept
+        check.type(KEYS);
+        final long overhead = -threads.getThreadAllocatedBytes(thread)
+                + threads.getThreadAllocatedBytes(thread);
+        final long start = threads.getThreadAllocatedBytes(thread);
+        check.type(KEYS);
+        final long allocated = threads.getThreadAllocatedBytes(thread) - start - overhead;
+
+        System.out.println(KEYS + " keys allocated " + allocated + " bytes, "
+                + check.editor.cursor + " characters in the editor, "
+                + check.capitalized + " capitalized positions");
+        if (allocated > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void type(int keys) {
+        for (int i = 0; i < keys; i++) {
+            if (i % DELETE_PERIOD == DELETE_PERIOD - 1) {
+                // HexaKey.handleBackspace
+                commitPipeline.sendKey(KeyEvent.KEYCODE_DEL);
+                capsModeTracker.onDelete();
+            }
+            else {
+                onKey(TEXT.charAt(i % TEXT.length()));
+            }
+            if (i % KEYS_PER_FRAME == KEYS_PER_FRAME - 1) {
+                Choreographer.getInstance().doFrame();
+            }
+        }
+        Choreographer.getInstance().doFrame();
+    }
+
+    /**
+     * The part of HexaKey.onKey run for the characters and word separators.
+     */
+    private void onKey(int primaryCode) {
+        if (separators.contains(primaryCode) && primaryCode == '\n') {
+            // HexaKey.sendKey leaves enter to the editor
+            commitPipeline.sendKey(KeyEvent.KEYCODE_ENTER);
+            capsModeTracker.invalidate();
+            return;
+        }
+
+        final String text = SingleCharacters.valueOf(primaryCode);
+        commitPipeline.commitText(text);
+        capsModeTracker.onTextCommitted(text);
+    }
+
+    /**
+     * Editor that keeps the end of its text, without allocating.
+     */
+    private static class Editor implements InputConnection {
+        private static final int KEPT = 256;
+
+        private final StringBuilder text = new StringBuilder(KEPT * 2);
+        private final Tail tail = new Tail(text);
+        int cursor;
+
+        @Override
+        public CharSequence getTextBeforeCursor(int n, int flags) {
+            return tail.set(Math.max(0, text.length() - n));
+        }
+
+        @Override
+        public int getCursorCapsMode(int reqModes) {
+            return TextUtils.getCapsMode(text, text.length(), reqModes);
+        }
+
+        @Override
+        public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+            final int length = Math.min(beforeLength, text.length());
+            text.setLength(text.length() - length);
+            cursor -= length;
+            return true;
+        }
+
+        @Override
+        public boolean commitText(CharSequence newText, int newCursorPosition) {
+            for (int i = 0; i < newText.length(); i++) {
+                append(newText.charAt(i));
+            }
+            return true;
+        }
+
+        @Override
+        public boolean beginBatchEdit() {
+            return true;
+        }
+
+        @Override
+        public boolean endBatchEdit() {
+            return true;
+        }
+
+        @Override
+        public boolean sendKeyEvent(KeyEvent event) {
+            if (event.getAction() == KeyEvent.ACTION_DOWN) {
+                if (event.getKeyCode() == KeyEvent.KEYCODE_DEL) {
+                    deleteSurroundingText(1, 0);
+                }
+                else if (event.getKeyCode() == KeyEvent.KEYCODE_ENTER) {
+                    append('\n');
+                }
+            }
+            return true;
+        }
+
+        private void append(char c) {
+            if (text.length() == KEPT * 2) {
+                text.delete(0, KEPT);
+            }
+            text.append(c);
+            cursor++;
+        }
+    }
+
+    /**
+     * The end of a text, seen as a CharSequence without copying it.
+     */
+    private static class Tail implements CharSequence {
+        private final CharSequence text;
+        private int start;
+
+        Tail(CharSequence text) {
+            this.text = text;
+        }
+
+        Tail set(int newStart) {
+            start = newStart;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return text.length() - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int subStart, int subEnd) {
+            return text.subSequence(start + subStart, start + subEnd);
+        }
+
+        @Override
+        public String toString() {
+            return text.subSequence(start, text.length()).toString();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package es.csc.android.hexakey;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Checks that a compacted UserHistory log of 50k entries, 25k words and the 25k
+ * pairs of consecutive words, opens within the 20 ms budget of the creation of the
+ * input method, and that a log cut at any byte of its last records, as a crash
+ * while appending leaves it, opens with the complete records only and keeps
+ * working.
+ * <p>
+ * Run it from the root of the repository; it exits with 1 if a check fails:
+ * <pre>
+ * java -cp benchmarks/bin es.csc.android.hexakey.UserHistoryCheck
+ * </pre>
+ */
+public class UserHistoryCheck {
+    static final int WORDS = 25000;
+    private static final long MAX_OPEN_NANOS = 20 * 1000000L;
+    private static final int WARMUP_OPENS = 20;
+    private static final int OPENS = 51;
+    /** Words appended after the compacted log, whose records are cut. */
+    private static final int TAIL_WORDS = 8;
+
+    public static void main(String[] args) throws IOException {
+        final File directory = createTemporaryDirectory();
+        try {
+            final boolean isFast = checkOpenTime(directory);
+            final boolean isCrashSafe = checkTornTails(directory);
+            if (!isFast || !isCrashSafe) {
+                System.exit(1);
+            }
+        }
+        finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Writes a compacted log with every word typed twice after the one before it.
+     */
+    static void writeLog(File file) throws IOException {
+        file.delete();
+        final UserHistory history = UserHistory.open(file);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < WORDS; i++) {
+                history.addWord(word(i), word((i + WORDS - 1) % WORDS));
+            }
+        }
+        history.compact();
+        history.close();
+    }
+
+    /**
+     * @return a different word of letters for every number
+     */
+    static String word(int number) {
+        final StringBuilder builder = new StringBuilder();
+        do {
+            builder.append((char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return builder.append("ion").toString();
+    }
+
+    private static boolean checkOpenTime(File directory) throws IOException {
+        final File file = new File(directory, "history");
+        writeLog(file);
+
+        final long[] times = new long[OPENS];
+        for (int i = -WARMUP_OPENS; i < OPENS; i++) {
+            final long start = System.nanoTime();
+            final UserHistory history = UserHistory.open(file);
+            final long time = System.nanoTime() - start;
+            history.close();
+            if (history.getWordCount() != WORDS) {
+                System.out.println("Opened " + history.getWordCount() + " words instead of " + WORDS);
+                return false;
+            }
+            if (i >= 0) {
+                times[i] = time;
+            }
+        }
+        Arrays.sort(times);
+
+        final long median = times[OPENS / 2];
+        System.out.println("Opened " + 2 * WORDS + " entries (" + file.length() + " bytes) in "
+                + median / 1000 + " us, slowest " + times[OPENS - 1] / 1000 + " us");
+        return median <= MAX_OPEN_NANOS;
+    }
+
+    /**
+     * Cuts the log at every byte of the records appended after compacting it.
+     */
+    private static boolean checkTornTails(File directory) throws IOException {
+        final File file = new File(directory, "torn");
+        writeLog(file);
+        final int compactedLength = (int) file.length();
+        UserHistory history = UserHistory.open(file);
+        for (int i = 0; i < TAIL_WORDS; i++) {
+            // New words, known words and bigrams
+            history.addWord(i % 2 == 0 ? "tail" + (char) ('a' + i) : word(i), word(i + 1));
+        }
+        history.close();
+        final byte[] log = read(file);
+
+        int errors = 0;
+        for (int length = compactedLength; length <= log.length; length++) {
+            write(file, log, length);
+            history = UserHistory.open(file);
+            final int words = history.getWordCount();
+            final long validLength = file.length();
+            history.addWord("again", null);
+            history.close();
+
+            history = UserHistory.open(file);
+            final int reopenedWords = history.getWordCount();
+            history.close();
+            if (words < WORDS || validLength > length || reopenedWords != words + 1
+                    || (length == log.length && validLength != length)) {
+                System.out.println("Log cut at " + length + " of " + log.length + " bytes: "
+                        + words + " words, " + validLength + " valid bytes, " + reopenedWords
+                        + " words after adding one");
+                errors++;
+            }
+        }
+        System.out.println("Opened the log cut at " + (log.length - compactedLength + 1)
+                + " lengths, " + errors + " errors");
+        return errors == 0;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static void write(File file, byte[] bytes, int length) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes, 0, length);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static File createTemporaryDirectory() throws IOException {
+        final File directory = File.createTempFile("history", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        return directory;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package android.content.res;
+
+/**
+ * The part of the Android class used by the benchmarked code. It has no resources;
+ * the benchmarks override what they need.
+ */
+public class Resources {
+    public int getDimensionPixelOffset(int id) {
+        return 0;
+    }
+
+    public float getFraction(int id, int base, int pbase) {
+        return 0;
+    }
+}
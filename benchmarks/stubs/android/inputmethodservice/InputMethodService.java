@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package android.inputmethodservice;
+
+import android.view.inputmethod.InputConnection;
+
+/**
+ * The part of the Android class used by the benchmarked code: the connection to
+ * the editor, set by the benchmark.
+ */
+public class InputMethodService {
+    private InputConnection inputConnection;
+
+    public InputConnection getCurrentInputConnection() {
+        return inputConnection;
+    }
+
+    public void setCurrentInputConnection(InputConnection ic) {
+        inputConnection = ic;
+    }
+}
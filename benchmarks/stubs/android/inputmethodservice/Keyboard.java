@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package android.inputmethodservice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The part of the Android class used by the benchmarked code: the keys, without
+ * their icons nor the parsing of layouts.
+ */
+public class Keyboard {
+    public static final int EDGE_LEFT = 0x01;
+    public static final int EDGE_RIGHT = 0x02;
+
+    private final List<Key> keys = new ArrayList<Key>();
+
+    public static class Row {
+        public Row(Keyboard parent) {
+        }
+    }
+
+    public static class Key {
+        public int[] codes;
+        public CharSequence label;
+        public int width;
+        public int height;
+        public int gap;
+        public int x;
+        public int y;
+        public boolean on;
+
+        public Key(Row parent) {
+        }
+
+        public int squaredDistanceFrom(int x, int y) {
+            final int xDist = this.x + width / 2 - x;
+            final int yDist = this.y + height / 2 - y;
+            return xDist * xDist + yDist * yDist;
+        }
+    }
+
+    public List<Key> getKeys() {
+        return keys;
+    }
+}
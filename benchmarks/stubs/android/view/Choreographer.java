@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package android.view;
+
+/**
+ * The part of the Android class used by the benchmarked code. Frames do not come by
+ * themselves: the benchmark runs the posted callback with {@link #doFrame()}.
+ */
+public final class Choreographer {
+    public interface FrameCallback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    private static final Choreographer instance = new Choreographer();
+
+    private FrameCallback callback;
+
+    public static Choreographer getInstance() {
+        return instance;
+    }
+
+    public void postFrameCallback(FrameCallback newCallback) {
+        callback = newCallback;
+    }
+
+    public void removeFrameCallback(FrameCallback oldCallback) {
+        if (callback == oldCallback) {
+            callback = null;
+        }
+    }
+
+    public void doFrame() {
+        final FrameCallback frameCallback = callback;
+        callback = null;
+        if (frameCallback != null) {
+            frameCallback.doFrame(System.nanoTime());
+        }
+    }
+}
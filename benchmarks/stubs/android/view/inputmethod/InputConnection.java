@@ -0,0 +1,37 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package android.view.inputmethod;
+
+import android.view.KeyEvent;
+
+/**
+ * The part of the Android interface used by the benchmarked code.
+ */
+public interface InputConnection {
+    CharSequence getTextBeforeCursor(int n, int flags);
+
+    int getCursorCapsMode(int reqModes);
+
+    boolean deleteSurroundingText(int beforeLength, int afterLength);
+
+    boolean commitText(CharSequence text, int newCursorPosition);
+
+    boolean beginBatchEdit();
+
+    boolean endBatchEdit();
+
+    boolean sendKeyEvent(KeyEvent event);
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package es.csc.android.hexakey;
+
+/**
+ * The resources of the app used by the benchmarked code, with made up ids.
+ */
+public final class R {
+    public static final class dimen {
+        public static final int key_height = 0x7f040001;
+        public static final int key_vertical_gap = 0x7f040002;
+    }
+
+    public static final class drawable {
+        public static final int sym_keyboard_delete = 0x7f020001;
+        public static final int sym_keyboard_language_switch = 0x7f020002;
+        public static final int sym_keyboard_return = 0x7f020003;
+        public static final int sym_keyboard_shift = 0x7f020004;
+        public static final int sym_keyboard_space = 0x7f020005;
+    }
+
+    public static final class fraction {
+        public static final int key_width = 0x7f060001;
+        public static final int num_key_width = 0x7f060002;
+        public static final int row_horizontal_gap = 0x7f060003;
+    }
+
+    public static final class xml {
+        public static final int letters_default = 0x7f050001;
+        public static final int letters_es = 0x7f050002;
+        public static final int numbers = 0x7f050003;
+        public static final int symbols = 0x7f050004;
+        public static final int symbols_shift = 0x7f050005;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Dictionary read from a file built by the DictionaryBuilder tool (see tools/). The file
+ * is mapped in memory and searched in place, so opening it does not read the words
+ * into the heap.
+ * <p>
+ * The file has a header, a jump table and the words:
+ * <pre>
+ * int magic, int version, int wordCount, int blockCount
+ * blockCount x int: offset of the block from the start of the words
+ * blockCount x byte: highest frequency of the words of the block
+ * words: sorted, in blocks of {@link #BLOCK_SIZE}, each word as
+ *     byte length shared with the previous word (0 for the first of a block),
+ *     byte length of the rest, the rest as chars, byte frequency
+ * </pre>
+ * The methods that search the words reuse an internal buffer, so they must be called
+ * from one thread at a time.
+ */
+final class BinaryDictionary implements Dictionary {
+    static final int MAGIC = 0x48584443;
+    static final int VERSION = 1;
+    static final int BLOCK_SIZE = 16;
+    static final int HEADER_SIZE = 16;
+    static final int MAX_WORD_LENGTH = 255;
+
+    private final ByteBuffer buffer;
+    private final int blockCount;
+    private final int frequenciesStart;
+    private final int wordsStart;
+
+    /** The word being decoded. */
+    private final char[] word = new char[MAX_WORD_LENGTH];
+    private int wordLength;
+    /** Position of the next word to decode. */
+    private int position;
+    /** Number of the decoded word when read with getWord, -1 otherwise. */
+    private int wordIndex = -1;
+
+    BinaryDictionary(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a dictionary of version " + VERSION);
+        }
+
+        blockCount = buffer.getInt(12);
+        frequenciesStart = HEADER_SIZE + blockCount * 4;
+        wordsStart = frequenciesStart + blockCount;
+    }
+
+    /**
+     * Maps the file in memory. The mapping stays valid after the file is closed.
+     */
+    static BinaryDictionary open(File file) throws IOException {
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = in.getChannel();
+            return new BinaryDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public int getWordCount() {
+        return buffer.getInt(8);
+    }
+
+    @Override
+    public int getWord(int index, StringBuilder target) {
+        int frequency = 0;
+        if (wordIndex < 0 || index <= wordIndex || index / BLOCK_SIZE != wordIndex / BLOCK_SIZE) {
+            startBlock(index / BLOCK_SIZE);
+            frequency = nextWord();
+            wordIndex = index - index % BLOCK_SIZE;
+        }
+        while (wordIndex < index) {
+            frequency = nextWord();
+            wordIndex++;
+        }
+        target.setLength(0);
+        target.append(word, 0, wordLength);
+        return frequency;
+    }
+
+    @Override
+    public int getFrequency(CharSequence target) {
+        final int block = findBlock(target);
+        if (block < 0) {
+            return 0;
+        }
+
+        startBlock(block);
+        final int end = getBlockEnd(block);
+        while (position < end) {
+            final int frequency = nextWord();
+            final int comparison = compareWord(target, target.length());
+            if (comparison > 0 || (comparison == 0 && wordLength > target.length())) {
+                // After the target
+                break;
+            }
+            if (comparison == 0 && wordLength == target.length()) {
+                return frequency;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean hasPrefix(CharSequence prefix) {
+        if (blockCount == 0) {
+            return false;
+        }
+
+        // The first word with the prefix is in the block found or starts the next one
+        final int block = Math.max(0, findBlock(prefix));
+        startBlock(block);
+        final int end = getBlockEnd(block);
+        while (position < end) {
+            nextWord();
+            final int comparison = compareWord(prefix, prefix.length());
+            if (comparison > 0) {
+                return false;
+            }
+            if (comparison == 0 && wordLength >= prefix.length()) {
+                return true;
+            }
+        }
+
+        if (block + 1 == blockCount) {
+            return false;
+        }
+        startBlock(block + 1);
+        nextWord();
+        return compareWord(prefix, prefix.length()) == 0 && wordLength >= prefix.length();
+    }
+
+    @Override
+    public int getCompletions(CharSequence prefix, String[] words, int[] frequencies) {
+        final int maxResults = Math.min(words.length, frequencies.length);
+        if (maxResults == 0 || blockCount == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        final int prefixLength = prefix.length();
+        int block = Math.max(0, findBlock(prefix));
+        startBlock(block);
+        int blockEnd = getBlockEnd(block);
+        while (true) {
+            if (position >= blockEnd) {
+                block++;
+                // Skip the blocks that can not improve the results
+                while (count == maxResults && block < blockCount
+                        && getBlockFrequency(block) <= frequencies[count - 1]) {
+                    block++;
+                }
+                if (block >= blockCount) {
+                    break;
+                }
+                startBlock(block);
+                blockEnd = getBlockEnd(block);
+            }
+
+            final int frequency = nextWord();
+            final int comparison = compareWord(prefix, prefixLength);
+            if (comparison > 0) {
+                // After all the words with the prefix
+                break;
+            }
+            if (comparison < 0 || wordLength < prefixLength) {
+                // Before the prefix
+                continue;
+            }
+
+            if (count < maxResults || frequency > frequencies[count - 1]) {
+                int i = count < maxResults ? count++ : count - 1;
+                while (i > 0 && frequencies[i - 1] < frequency) {
+                    words[i] = words[i - 1];
+                    frequencies[i] = frequencies[i - 1];
+                    i--;
+                }
+                words[i] = new String(word, 0, wordLength);
+                frequencies[i] = frequency;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the last block whose first word is not after the target, or -1 if
+     * all of them are
+     */
+    private int findBlock(CharSequence target) {
+        int low = 0;
+        int high = blockCount - 1;
+        int found = -1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            startBlock(middle);
+            nextWord();
+            final int comparison = compareWord(target, target.length());
+            if (comparison < 0 || (comparison == 0 && wordLength <= target.length())) {
+                found = middle;
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private int getBlockStart(int block) {
+        return wordsStart + buffer.getInt(HEADER_SIZE + block * 4);
+    }
+
+    private int getBlockEnd(int block) {
+        return block + 1 < blockCount ? getBlockStart(block + 1) : buffer.limit();
+    }
+
+    private int getBlockFrequency(int block) {
+        return buffer.get(frequenciesStart + block) & 0xff;
+    }
+
+    private void startBlock(int block) {
+        position = getBlockStart(block);
+        wordLength = 0;
+        wordIndex = -1;
+    }
+
+    /**
+     * Decodes the next word into the buffer.
+     *
+     * @return its frequency
+     */
+    private int nextWord() {
+        final int shared = buffer.get(position) & 0xff;
+        final int rest = buffer.get(position + 1) & 0xff;
+        position += 2;
+        for (int i = 0; i < rest; i++) {
+            word[shared + i] = buffer.getChar(position);
+            position += 2;
+        }
+        wordLength = shared + rest;
+        return buffer.get(position++) & 0xff;
+    }
+
+    /**
+     * Compares the first characters of the decoded word with the first ones of the
+     * target, in lower case.
+     *
+     * @return negative if the word goes before, positive if after, 0 if the shortest
+     * is a prefix of the other
+     */
+    private int compareWord(CharSequence target, int length) {
+        final int max = Math.min(wordLength, length);
+        for (int i = 0; i < max; i++) {
+            final char c = Character.toLowerCase(target.charAt(i));
+            if (word[i] != c) {
+                return word[i] - c;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2008-2009 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.csc.android.hexakey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Strip over the keyboard with the typed word and its suggestions. The typed word
+ * is the first one, the others are the suggestions, most likely first.
+ */
+public class CandidateView extends View {
+
+    private static final int OUT_OF_BOUNDS = -1;
+    private static final int MAX_SUGGESTIONS = 32;
+
+    private HexaKey service;
+    private List<String> suggestions = new ArrayList<String>();
+    private boolean typedWordValid;
+
+    private int touchX = OUT_OF_BOUNDS;
+
+    private final int[] wordX = new int[MAX_SUGGESTIONS];
+    private final int[] wordWidth = new int[MAX_SUGGESTIONS];
+
+    private final int colorNormal;
+    private final int colorRecommended;
+    private final int colorOther;
+    private final int colorBackground;
+    private final int verticalPadding;
+    private final int horizontalPadding;
+
+    private final Paint paint;
+
+    public CandidateView(Context context) {
+        super(context);
+
+        Resources r = context.getResources();
+        colorNormal = r.getColor(R.color.candidate_normal);
+        colorRecommended = r.getColor(R.color.candidate_recommended);
+        colorOther = r.getColor(R.color.candidate_other);
+        colorBackground = r.getColor(R.color.candidate_background);
+        verticalPadding = r.getDimensionPixelSize(R.dimen.candidate_vertical_padding);
+        horizontalPadding = r.getDimensionPixelSize(R.dimen.candidate_horizontal_padding);
+
+        paint = new Paint();
+        paint.setColor(colorNormal);
+        paint.setAntiAlias(true);
+        paint.setTextSize(r.getDimensionPixelSize(R.dimen.candidate_font_height));
+        paint.setStrokeWidth(0);
+
+        setHorizontalFadingEdgeEnabled(true);
+        setWillNotDraw(false);
+        setHorizontalScrollBarEnabled(false);
+        setVerticalScrollBarEnabled(false);
+    }
+
+    /**
+     * A connection back to the service to communicate with the text field
+     */
+    public void setService(HexaKey listener) {
+        service = listener;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int measuredWidth = resolveSize(50, widthMeasureSpec);
+
+        // Maximum possible height for a candidate
+        final int desiredHeight = ((int) paint.getTextSize()) + verticalPadding * 2;
+
+        setMeasuredDimension(measuredWidth, resolveSize(desiredHeight, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.drawColor(colorBackground);
+
+        final int height = getHeight();
+        final float y = (height - paint.ascent() - paint.descent()) / 2;
+        final int count = Math.min(suggestions.size(), MAX_SUGGESTIONS);
+
+        int x = 0;
+        for (int i = 0; i < count; i++) {
+            final String suggestion = suggestions.get(i);
+            final int width = (int) paint.measureText(suggestion) + horizontalPadding * 2;
+            wordX[i] = x;
+            wordWidth[i] = width;
+
+            if (touchX != OUT_OF_BOUNDS && touchX >= x && touchX < x + width) {
+                paint.setColor(colorOther);
+                canvas.drawRect(x, 0, x + width, height, paint);
+            }
+
+            if ((i == 1 && !typedWordValid) || (i == 0 && typedWordValid)) {
+                paint.setFakeBoldText(true);
+                paint.setColor(colorRecommended);
+            }
+            else {
+                paint.setFakeBoldText(false);
+                paint.setColor(i == 0 ? colorNormal : colorOther);
+            }
+            canvas.drawText(suggestion, x + horizontalPadding, y, paint);
+
+            paint.setColor(colorOther);
+            canvas.drawLine(x + width + 0.5f, 0, x + width + 0.5f, height, paint);
+            x += width;
+        }
+        paint.setFakeBoldText(false);
+    }
+
+    public void setSuggestions(List<String> suggestions, boolean typedWordValid) {
+        this.suggestions = suggestions != null ? suggestions : new ArrayList<String>();
+        this.typedWordValid = typedWordValid;
+        touchX = OUT_OF_BOUNDS;
+        invalidate();
+    }
+
+    public void clear() {
+        setSuggestions(null, false);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent me) {
+        touchX = (int) me.getX();
+
+        switch (me.getAction()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_MOVE:
+                invalidate();
+                break;
+
+            case MotionEvent.ACTION_UP:
+                final int index = findSuggestion(touchX);
+                if (index != OUT_OF_BOUNDS && service != null) {
+                    service.pickSuggestion(suggestions.get(index));
+                }
+                touchX = OUT_OF_BOUNDS;
+                invalidate();
+                break;
+
+            case MotionEvent.ACTION_CANCEL:
+            default:
+                touchX = OUT_OF_BOUNDS;
+                invalidate();
+                break;
+        }
+        return true;
+    }
+
+    private int findSuggestion(int x) {
+        final int count = Math.min(suggestions.size(), MAX_SUGGESTIONS);
+        for (int i = 0; i < count; i++) {
+            if (x >= wordX[i] && x < wordX[i] + wordWidth[i]) {
+                return i;
+            }
+        }
+        return OUT_OF_BOUNDS;
+    }
+}
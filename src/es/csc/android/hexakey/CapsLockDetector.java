@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+/**
+ * Turns the caps lock on when shift is pressed twice quickly, the first press having
+ * shifted the letters, and off on the next press.
+ */
+final class CapsLockDetector {
+    /** Maximum time between the two presses of shift that turn the caps lock on. */
+    static final long DOUBLE_TAP_TIMEOUT = 400;
+
+    private long lastShiftTime;
+    private boolean capsLock;
+
+    /**
+     * @param shifted whether the letters were shifted when shift was pressed
+     * @param now the time of the press, in milliseconds
+     */
+    void onShift(boolean shifted, long now) {
+        if (capsLock) {
+            capsLock = false;
+            lastShiftTime = 0;
+        }
+        else if (shifted && lastShiftTime + DOUBLE_TAP_TIMEOUT > now) {
+            capsLock = true;
+            lastShiftTime = 0;
+        }
+        else {
+            lastShiftTime = now;
+        }
+    }
+
+    boolean isCapsLock() {
+        return capsLock;
+    }
+
+    void cancelCapsLock() {
+        capsLock = false;
+    }
+
+    void reset() {
+        capsLock = false;
+        lastShiftTime = 0;
+    }
+}
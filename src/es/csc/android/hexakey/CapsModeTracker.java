@@ -0,0 +1,313 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import android.text.TextUtils;
+import android.view.inputmethod.InputConnection;
+
+/**
+ * Local copy of the end of the text before the cursor, kept up to date with the keys
+ * sent to the editor, so the caps mode is known without asking the editor after
+ * every key.
+ * <p>
+ * The copy is discarded when the editor reports a selection that the keys sent do
+ * not explain (the user moved the cursor, the editor changed the text...) and it is
+ * read again from the editor the next time it is needed.
+ */
+final class CapsModeTracker {
+    /** Characters kept before the cursor, enough to find the end of the last sentence. */
+    private static final int WINDOW_SIZE = 64;
+    /** Cursor positions sent to the editor whose selection update is still expected. */
+    private static final int MAX_EXPECTED_POSITIONS = 8;
+
+    private final StringBuilder textBeforeCursor = new StringBuilder(WINDOW_SIZE * 2);
+    /** Whether textBeforeCursor does not start at the beginning of the text. */
+    private boolean isTruncated;
+    private boolean isValid;
+
+    private int cursor;
+    private boolean hasSelection;
+    /** Whether the cursor position is known, false if the text was read after an update. */
+    private boolean isCursorKnown;
+
+    private final int[] expectedPositions = new int[MAX_EXPECTED_POSITIONS];
+    private int expectedCount;
+
+    /**
+     * @return whether the local copy of the text is valid, so it is not read from the
+     * editor
+     */
+    boolean isValid() {
+        return isValid;
+    }
+
+    /**
+     * Starts tracking a new editor, reading the text before its cursor.
+     */
+    void start(InputConnection ic, int selectionStart, int selectionEnd) {
+        invalidate();
+        if (ic != null && selectionStart >= 0 && selectionEnd >= 0) {
+            load(ic);
+            setCursor(selectionStart, selectionEnd);
+        }
+    }
+    
+    private void setCursor(int selectionStart, int selectionEnd) {
+        cursor = Math.min(selectionStart, selectionEnd);
+        hasSelection = selectionStart != selectionEnd;
+        isCursorKnown = true;
+    }
+
+    private void load(InputConnection ic) {
+        final CharSequence text = ic.getTextBeforeCursor(WINDOW_SIZE, 0);
+        if (text == null) {
+            return;
+        }
+
+        textBeforeCursor.setLength(0);
+        textBeforeCursor.append(text);
+        isTruncated = text.length() >= WINDOW_SIZE;
+        expectedCount = 0;
+        isCursorKnown = false;
+        isValid = true;
+    }
+
+    void invalidate() {
+        isValid = false;
+        textBeforeCursor.setLength(0);
+        expectedCount = 0;
+    }
+
+    /**
+     * The text replaces the selection, if any, and the cursor is left after it.
+     */
+    void onTextCommitted(CharSequence text) {
+        if (!isValid) {
+            return;
+        }
+
+        hasSelection = false;
+        textBeforeCursor.append(text);
+        cursor += text.length();
+
+        if (textBeforeCursor.length() >= WINDOW_SIZE * 2) {
+            textBeforeCursor.delete(0, textBeforeCursor.length() - WINDOW_SIZE);
+            isTruncated = true;
+        }
+    }
+
+    /**
+     * A delete key removes the selection or, if there is none, the character before
+     * the cursor.
+     */
+    void onDelete() {
+        if (!isValid) {
+            return;
+        }
+
+        if (hasSelection) {
+            hasSelection = false;
+            return;
+        }
+        if (isCursorKnown && cursor == 0) {
+            return;
+        }
+        if (textBeforeCursor.length() == 0) {
+            // Everything known was deleted
+            invalidate();
+            return;
+        }
+
+        int length = 1;
+        final int end = textBeforeCursor.length();
+        if (end >= 2 && Character.isLowSurrogate(textBeforeCursor.charAt(end - 1))
+                && Character.isHighSurrogate(textBeforeCursor.charAt(end - 2))) {
+            length = 2;
+        }
+        textBeforeCursor.setLength(end - length);
+        cursor -= length;
+    }
+
+    /**
+     * Characters deleted before the cursor, as deleteSurroundingText does.
+     */
+    void onTextDeleted(int length) {
+        if (!isValid) {
+            return;
+        }
+
+        if (length > textBeforeCursor.length()) {
+            invalidate();
+            return;
+        }
+        hasSelection = false;
+        textBeforeCursor.setLength(textBeforeCursor.length() - length);
+        cursor -= length;
+    }
+
+    /**
+     * Called after the keys are sent to the editor, that will report the new cursor
+     * position with a selection update.
+     */
+    void onCommitted() {
+        if (!isValid) {
+            return;
+        }
+
+        if (expectedCount == MAX_EXPECTED_POSITIONS) {
+            System.arraycopy(expectedPositions, 1, expectedPositions, 0, expectedCount - 1);
+            expectedCount--;
+        }
+        expectedPositions[expectedCount++] = cursor;
+    }
+
+    /**
+     * Checks the selection reported by the editor against the positions expected
+     * after the keys sent, invalidating the copy of the text if it does not match.
+     *
+     * @return false if the text before the cursor changed in a way the keys sent do
+     * not explain
+     */
+    boolean onUpdateSelection(int selectionStart, int selectionEnd) {
+        if (!isValid) {
+            // Nothing to check until the text is read again
+            return true;
+        }
+
+        if (!isCursorKnown) {
+            // The text was read again, this is the position it ends at
+            setCursor(selectionStart, selectionEnd);
+            expectedCount = 0;
+            return true;
+        }
+
+        if (selectionStart == selectionEnd && selectionStart == cursor && !hasSelection) {
+            expectedCount = 0;
+            return true;
+        }
+
+        for (int i = 0; i < expectedCount; i++) {
+            if (expectedPositions[i] == selectionStart && selectionStart == selectionEnd) {
+                // An update of keys sent before the last ones, more updates will follow
+                expectedCount -= i + 1;
+                System.arraycopy(expectedPositions, i + 1, expectedPositions, 0, expectedCount);
+                return true;
+            }
+        }
+
+        invalidate();
+        return false;
+    }
+
+    /**
+     * Finds how many characters to delete before the cursor to delete the last word
+     * and the spaces after it, or the last character if it is not part of a word,
+     * asking the editor only if the local copy of the text is not valid.
+     *
+     * @return the number of characters, or 0 if there is a selection or the copy of
+     * the text does not have the whole word
+     */
+    int getLastWordLength(InputConnection ic) {
+        if (!isValid && ic != null) {
+            load(ic);
+        }
+        if (!isValid || hasSelection) {
+            return 0;
+        }
+
+        final int end = textBeforeCursor.length();
+        int start = end;
+        while (start > 0 && Character.isWhitespace(textBeforeCursor.charAt(start - 1))) {
+            start--;
+        }
+        final int wordEnd = start;
+        while (start > 0 && Character.isLetterOrDigit(textBeforeCursor.charAt(start - 1))) {
+            start--;
+        }
+        if (start == wordEnd && start > 0) {
+            start--;
+            if (start > 0 && Character.isLowSurrogate(textBeforeCursor.charAt(start))
+                    && Character.isHighSurrogate(textBeforeCursor.charAt(start - 1))) {
+                start--;
+            }
+        }
+        return start == 0 && isTruncated ? 0 : end - start;
+    }
+
+    /**
+     * Same result as {@link InputConnection#getCursorCapsMode(int)}, asking the editor
+     * only if the local copy of the text is not valid or not long enough.
+     */
+    int getCursorCapsMode(InputConnection ic, int reqModes) {
+        if (!isValid && ic != null) {
+            load(ic);
+        }
+
+        if (!isValid || (isTruncated && !hasSentenceContext())) {
+            return ic == null ? 0 : ic.getCursorCapsMode(reqModes);
+        }
+
+        return TextUtils.getCapsMode(textBeforeCursor, textBeforeCursor.length(), reqModes);
+    }
+
+    /**
+     * TextUtils.getCapsMode goes back over quotes, brackets and spaces and, after a
+     * period, over the letters of the word, and treats the beginning of the text as
+     * the beginning of a paragraph, so a truncated copy is only enough if these scans
+     * stop before its beginning.
+     */
+    private boolean hasSentenceContext() {
+        final StringBuilder text = textBeforeCursor;
+        int i = text.length();
+        while (i > 0 && isOpeningPunctuation(text.charAt(i - 1))) {
+            i--;
+        }
+        int j = i;
+        while (j > 0 && (text.charAt(j - 1) == ' ' || text.charAt(j - 1) == '\t')) {
+            j--;
+        }
+        if (j == 0) {
+            return false;
+        }
+        if (text.charAt(j - 1) == '\n' || i == j) {
+            return true;
+        }
+
+        while (j > 0 && isClosingPunctuation(text.charAt(j - 1))) {
+            j--;
+        }
+        if (j == 0) {
+            return false;
+        }
+        if (text.charAt(j - 1) != '.') {
+            return true;
+        }
+        for (int k = j - 2; k >= 0; k--) {
+            final char c = text.charAt(k);
+            if (c == '.' || !Character.isLetter(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOpeningPunctuation(char c) {
+        return c == '"' || c == '\'' || Character.getType(c) == Character.START_PUNCTUATION;
+    }
+
+    private static boolean isClosingPunctuation(char c) {
+        return c == '"' || c == '\'' || Character.getType(c) == Character.END_PUNCTUATION;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import android.inputmethodservice.InputMethodService;
+import android.view.Choreographer;
+import android.view.KeyEvent;
+import android.view.inputmethod.InputConnection;
+
+/**
+ * Queues the text and key events of the keys typed during a frame and sends them
+ * to the editor in the next frame, in order and in a single batch edit. Consecutive
+ * characters are committed together, and a delete right after a queued character
+ * removes it from the queue instead of being sent.
+ */
+final class CommitPipeline implements Choreographer.FrameCallback {
+    interface Listener {
+        /**
+         * Called after the queued operations are sent, so the state of the editor
+         * reflects them.
+         */
+        void onCommitted();
+    }
+
+    private static final int OP_TEXT = 0;
+    private static final int OP_KEY = 1;
+    private static final int OP_DELETE = 2;
+
+    private final InputMethodService service;
+    private final Listener listener;
+    private final Choreographer choreographer;
+
+    /** Text of all the queued OP_TEXT operations, in order. */
+    private final StringBuilder text = new StringBuilder();
+    /** The text of the operation being sent, reused so flushing does not allocate. */
+    private final TextRange textRange = new TextRange(text);
+    // Queued operations: type and, for OP_TEXT, length of its text, for OP_KEY, key code
+    // or, for OP_DELETE, number of characters deleted before the cursor
+    private int[] opTypes = new int[16];
+    private int[] opValues = new int[16];
+    private int opCount;
+
+    /** Reused key events, indexed by key code. */
+    private final KeyEvent[] keyDownEvents = new KeyEvent[KeyEvent.getMaxKeyCode() + 1];
+    private final KeyEvent[] keyUpEvents = new KeyEvent[KeyEvent.getMaxKeyCode() + 1];
+
+    private boolean isFrameScheduled;
+    /** Whether operations were queued since the last flush, even if they were removed. */
+    private boolean isPending;
+
+    CommitPipeline(InputMethodService service, Listener listener) {
+        this.service = service;
+        this.listener = listener;
+        choreographer = Choreographer.getInstance();
+    }
+
+    void commitText(CharSequence newText) {
+        if (opCount > 0 && opTypes[opCount - 1] == OP_TEXT) {
+            opValues[opCount - 1] += newText.length();
+        }
+        else {
+            addOp(OP_TEXT, newText.length());
+        }
+        text.append(newText);
+        scheduleFlush();
+    }
+
+    void sendKey(int keyEventCode) {
+        if (keyEventCode == KeyEvent.KEYCODE_DEL && removeLastCharacter()) {
+            scheduleFlush();
+            return;
+        }
+
+        addOp(OP_KEY, keyEventCode);
+        scheduleFlush();
+    }
+
+    /**
+     * Deletes the characters before the cursor, as deleteSurroundingText does. The
+     * ones still queued are removed from the queue.
+     */
+    void deleteTextBeforeCursor(int length) {
+        int remaining = length;
+        while (remaining > 0 && opCount > 0 && opTypes[opCount - 1] == OP_TEXT) {
+            final int removed = Math.min(remaining, opValues[opCount - 1]);
+            text.setLength(text.length() - removed);
+            opValues[opCount - 1] -= removed;
+            if (opValues[opCount - 1] == 0) {
+                opCount--;
+            }
+            remaining -= removed;
+        }
+
+        if (remaining > 0) {
+            if (opCount > 0 && opTypes[opCount - 1] == OP_DELETE) {
+                opValues[opCount - 1] += remaining;
+            }
+            else {
+                addOp(OP_DELETE, remaining);
+            }
+        }
+        scheduleFlush();
+    }
+
+    private boolean removeLastCharacter() {
+        if (opCount == 0 || opTypes[opCount - 1] != OP_TEXT) {
+            return false;
+        }
+
+        int length = 1;
+        if (text.length() >= 2 && Character.isLowSurrogate(text.charAt(text.length() - 1))
+                && Character.isHighSurrogate(text.charAt(text.length() - 2))) {
+            length = 2;
+        }
+        if (opValues[opCount - 1] < length) {
+            return false;
+        }
+
+        text.setLength(text.length() - length);
+        opValues[opCount - 1] -= length;
+        if (opValues[opCount - 1] == 0) {
+            opCount--;
+        }
+        return true;
+    }
+
+    private void addOp(int type, int value) {
+        if (opCount == opTypes.length) {
+            final int[] newTypes = new int[opCount * 2];
+            final int[] newValues = new int[opCount * 2];
+            System.arraycopy(opTypes, 0, newTypes, 0, opCount);
+            System.arraycopy(opValues, 0, newValues, 0, opCount);
+            opTypes = newTypes;
+            opValues = newValues;
+        }
+        opTypes[opCount] = type;
+        opValues[opCount] = value;
+        opCount++;
+    }
+
+    private void scheduleFlush() {
+        isPending = true;
+        if (!isFrameScheduled) {
+            isFrameScheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        isFrameScheduled = false;
+        flush();
+    }
+
+    /**
+     * Sends the queued operations now. Must be called before anything that reads the
+     * editor or sends to it outside the pipeline.
+     */
+    void flush() {
+        if (isFrameScheduled) {
+            isFrameScheduled = false;
+            choreographer.removeFrameCallback(this);
+        }
+
+        final InputConnection ic = service.getCurrentInputConnection();
+        if (ic == null) {
+            clear();
+            return;
+        }
+        if (opCount == 0) {
+            // The queued operations cancelled each other out
+            if (isPending) {
+                isPending = false;
+                listener.onCommitted();
+            }
+            return;
+        }
+
+        ic.beginBatchEdit();
+        int textStart = 0;
+        for (int i = 0; i < opCount; i++) {
+            if (opTypes[i] == OP_TEXT) {
+                final int textEnd = textStart + opValues[i];
+                ic.commitText(textRange.set(textStart, textEnd), 1);
+                textStart = textEnd;
+            }
+            else if (opTypes[i] == OP_DELETE) {
+                ic.deleteSurroundingText(opValues[i], 0);
+            }
+            else {
+                sendKeyDownUp(ic, opValues[i]);
+            }
+        }
+        ic.endBatchEdit();
+        if (LatencyTracer.enabled) {
+            LatencyTracer.committed();
+        }
+
+        clear();
+        listener.onCommitted();
+    }
+
+    /**
+     * Discards the queued operations.
+     */
+    void clear() {
+        text.setLength(0);
+        opCount = 0;
+        isPending = false;
+    }
+
+    /**
+     * A part of a text, seen as a CharSequence without copying it. The editors copy
+     * the committed text before commitText returns, so it can be reused.
+     */
+    private static final class TextRange implements CharSequence {
+        private final CharSequence text;
+        private int start;
+        private int end;
+
+        TextRange(CharSequence text) {
+            this.text = text;
+        }
+
+        TextRange set(int newStart, int newEnd) {
+            start = newStart;
+            end = newEnd;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int subStart, int subEnd) {
+            return text.subSequence(start + subStart, start + subEnd);
+        }
+
+        @Override
+        public String toString() {
+            return text.subSequence(start, end).toString();
+        }
+    }
+
+    private void sendKeyDownUp(InputConnection ic, int keyEventCode) {
+        if (keyDownEvents[keyEventCode] == null) {
+            keyDownEvents[keyEventCode] = new KeyEvent(KeyEvent.ACTION_DOWN, keyEventCode);
+            keyUpEvents[keyEventCode] = new KeyEvent(KeyEvent.ACTION_UP, keyEventCode);
+        }
+        ic.sendKeyEvent(keyDownEvents[keyEventCode]);
+        ic.sendKeyEvent(keyUpEvents[keyEventCode]);
+    }
+}
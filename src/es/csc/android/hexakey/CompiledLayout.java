@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import android.content.res.Resources;
+
+/**
+ * Keyboard layout precompiled from its XML resource by the LayoutCompiler tool
+ * (see tools/), so a {@link LatinKeyboard} can be created from it without parsing XML.
+ * <p>
+ * The keys are stored in flat arrays. Sizes keep a reference to the resource they
+ * come from, so they are resolved for the current configuration every time a
+ * keyboard is created, as the XML inflation does.
+ */
+final class CompiledLayout {
+    /** The size is not set, the default of the row or keyboard applies. */
+    static final int SIZE_DEFAULT = 0;
+    /** The value is a size in pixels. */
+    static final int SIZE_PIXELS = 1;
+    /** The value is the id of a dimension resource. */
+    static final int SIZE_DIMENSION = 2;
+    /** The value is the id of a fraction resource, relative to the display size. */
+    static final int SIZE_FRACTION = 3;
+
+    // Keyboard sizes, as (kind, value) pairs
+    static final int KEYBOARD_KEY_WIDTH = 0;
+    static final int KEYBOARD_KEY_HEIGHT = 2;
+    static final int KEYBOARD_HORIZONTAL_GAP = 4;
+    static final int KEYBOARD_VERTICAL_GAP = 6;
+    static final int KEYBOARD_SIZES = 8;
+
+    // Fields of every key in the keys array
+    static final int KEY_CODES_OFFSET = 0;
+    static final int KEY_CODES_LENGTH = 1;
+    static final int KEY_EDGE_FLAGS = 2;
+    static final int KEY_FLAGS = 3;
+    static final int KEY_ICON = 4;
+    static final int KEY_WIDTH = 5;
+    static final int KEY_HEIGHT = 7;
+    static final int KEY_GAP = 9;
+    static final int KEY_FIELDS = 11;
+
+    // Values of the KEY_FLAGS field
+    static final int FLAG_STICKY = 1;
+    static final int FLAG_MODIFIER = 2;
+    static final int FLAG_REPEATABLE = 4;
+
+    final int xmlLayoutResId;
+    final int[] keyboardSizes;
+    final int[] rowLengths;
+    final int[] keys;
+    final int[] codes;
+    final String[] labels;
+
+    CompiledLayout(int xmlLayoutResId, int[] keyboardSizes, int[] rowLengths,
+            int[] keys, int[] codes, String[] labels) {
+        this.xmlLayoutResId = xmlLayoutResId;
+        this.keyboardSizes = keyboardSizes;
+        this.rowLengths = rowLengths;
+        this.keys = keys;
+        this.codes = codes;
+        this.labels = labels;
+    }
+
+    int getKeyCount() {
+        return labels.length;
+    }
+
+    int getKeyField(int key, int field) {
+        return keys[key * KEY_FIELDS + field];
+    }
+
+    int[] getCodes(int key) {
+        final int[] keyCodes = new int[getKeyField(key, KEY_CODES_LENGTH)];
+        System.arraycopy(codes, getKeyField(key, KEY_CODES_OFFSET), keyCodes, 0, keyCodes.length);
+        return keyCodes;
+    }
+
+    boolean hasFlag(int key, int flag) {
+        return (getKeyField(key, KEY_FLAGS) & flag) != 0;
+    }
+
+    int resolveKeyboardSize(Resources res, int size, int base, int defaultValue) {
+        return resolveSize(res, keyboardSizes, size, base, defaultValue);
+    }
+
+    int resolveKeySize(Resources res, int key, int size, int base, int defaultValue) {
+        return resolveSize(res, keys, key * KEY_FIELDS + size, base, defaultValue);
+    }
+
+    /**
+     * Same conversion as the one applied to the keyWidth, keyHeight, horizontalGap and
+     * verticalGap attributes by {@link android.inputmethodservice.Keyboard}.
+     */
+    private static int resolveSize(Resources res, int[] sizes, int offset, int base,
+            int defaultValue) {
+        switch (sizes[offset]) {
+            case SIZE_PIXELS:
+                return sizes[offset + 1];
+            case SIZE_DIMENSION:
+                return res.getDimensionPixelOffset(sizes[offset + 1]);
+            case SIZE_FRACTION:
+                return Math.round(res.getFraction(sizes[offset + 1], base, base));
+            case SIZE_DEFAULT:
+            default:
+                return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import static es.csc.android.hexakey.CompiledLayout.*;
+
+import android.inputmethodservice.Keyboard;
+
+/**
+ * Keyboard layouts of res/xml compiled by es.csc.android.hexakey.tools.LayoutCompiler.
+ * Generated file, do not edit: run the compiler again after changing a layout.
+ */
+final class CompiledLayouts {
+    static final CompiledLayout LETTERS_DEFAULT = new CompiledLayout(R.xml.letters_default,
+            new int[] {
+                SIZE_FRACTION, R.fraction.key_width, SIZE_DIMENSION, R.dimen.key_height,
+                SIZE_PIXELS, 0, SIZE_DIMENSION, R.dimen.key_vertical_gap
+            },
+            new int[] { 7, 8, 7, 8, 7 },
+            new int[] {
+                // codes offset, codes length, edge flags, flags, icon, width, height, gap
+                0, 1, Keyboard.EDGE_LEFT, FLAG_REPEATABLE, R.drawable.sym_keyboard_delete, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                1, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                2, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                3, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                4, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                5, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                6, 1, Keyboard.EDGE_RIGHT, FLAG_REPEATABLE, R.drawable.sym_keyboard_delete, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                7, 1, Keyboard.EDGE_LEFT, FLAG_STICKY | FLAG_MODIFIER, R.drawable.sym_keyboard_shift, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                8, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                9, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                10, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                11, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                12, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                13, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                14, 1, Keyboard.EDGE_RIGHT, FLAG_STICKY | FLAG_MODIFIER, R.drawable.sym_keyboard_shift, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                15, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                16, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                17, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                18, 1, 0, FLAG_REPEATABLE, R.drawable.sym_keyboard_space, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                19, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                20, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                21, 1, Keyboard.EDGE_RIGHT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                22, 1, Keyboard.EDGE_LEFT, 0, R.drawable.sym_keyboard_return, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                23, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                24, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                25, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                26, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                27, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                28, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                29, 1, Keyboard.EDGE_RIGHT, 0, R.drawable.sym_keyboard_return, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                30, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                31, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                32, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                33, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                34, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                35, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                36, 1, Keyboard.EDGE_RIGHT, 0, R.drawable.sym_keyboard_language_switch, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0
+            },
+            new int[] {
+                -5, 97, 98, 99, 100, 101, -5, -1, 102, 103, 104, 105, 106, 107, -1, 108, 109, 110,
+                32, 111, 112, 113, 10, 114, 115, 116, 117, 118, 119, 10, -2, 46, 44, 120, 121, 122,
+                -101
+            },
+            new String[] {
+                null, "a", "b", "c", "d", "e", null, null, "f", "g", "h", "i", "j", "k", null, "l",
+                "m", "n", null, "o", "p", "q", null, "r", "s", "t", "u", "v", "w", null, "123", ".",
+                ",", "x", "y", "z", null
+            });
+
+    static final CompiledLayout LETTERS_ES = new CompiledLayout(R.xml.letters_es,
+            new int[] {
+                SIZE_FRACTION, R.fraction.key_width, SIZE_DIMENSION, R.dimen.key_height,
+                SIZE_PIXELS, 0, SIZE_DIMENSION, R.dimen.key_vertical_gap
+            },
+            new int[] { 7, 8, 7, 8, 7 },
+            new int[] {
+                // codes offset, codes length, edge flags, flags, icon, width, height, gap
+                0, 1, Keyboard.EDGE_LEFT, FLAG_REPEATABLE, R.drawable.sym_keyboard_delete, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                1, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                2, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                3, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                4, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                5, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                6, 1, Keyboard.EDGE_RIGHT, FLAG_REPEATABLE, R.drawable.sym_keyboard_delete, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                7, 1, Keyboard.EDGE_LEFT, FLAG_STICKY | FLAG_MODIFIER, R.drawable.sym_keyboard_shift, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                8, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                9, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                10, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                11, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                12, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                13, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                14, 1, Keyboard.EDGE_RIGHT, FLAG_STICKY | FLAG_MODIFIER, R.drawable.sym_keyboard_shift, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                15, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                16, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                17, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                18, 1, 0, FLAG_REPEATABLE, R.drawable.sym_keyboard_space, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                19, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                20, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                21, 1, Keyboard.EDGE_RIGHT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                22, 1, Keyboard.EDGE_LEFT, 0, R.drawable.sym_keyboard_return, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                23, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                24, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                25, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                26, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                27, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                28, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                29, 1, Keyboard.EDGE_RIGHT, 0, R.drawable.sym_keyboard_return, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                30, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                31, 2, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                33, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                34, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                35, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                36, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                37, 1, Keyboard.EDGE_RIGHT, 0, R.drawable.sym_keyboard_language_switch, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0
+            },
+            new int[] {
+                -5, 97, 98, 99, 100, 101, -5, -1, 102, 103, 104, 105, 106, 107, -1, 108, 109, 110,
+                32, 241, 111, 112, 10, 113, 114, 115, 116, 117, 118, 10, -2, 46, 44, 119, 120, 121,
+                122, -101
+            },
+            new String[] {
+                null, "a", "b", "c", "d", "e", null, null, "f", "g", "h", "i", "j", "k", null, "l",
+                "m", "n", null, "\u00f1", "o", "p", null, "q", "r", "s", "t", "u", "v", null, "123",
+                ".", "w", "x", "y", "z", null
+            });
+
+    static final CompiledLayout NUMBERS = new CompiledLayout(R.xml.numbers,
+            new int[] {
+                SIZE_FRACTION, R.fraction.num_key_width, SIZE_DIMENSION, R.dimen.key_height,
+                SIZE_PIXELS, 0, SIZE_PIXELS, 0
+            },
+            new int[] { 4, 4, 4, 4 },
+            new int[] {
+                // codes offset, codes length, edge flags, flags, icon, width, height, gap
+                0, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                1, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                2, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                3, 1, Keyboard.EDGE_RIGHT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                4, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                5, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                6, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                7, 1, Keyboard.EDGE_RIGHT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                8, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                9, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                10, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                11, 1, Keyboard.EDGE_RIGHT, FLAG_REPEATABLE, R.drawable.sym_keyboard_delete, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                12, 2, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                14, 2, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                16, 2, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                18, 1, Keyboard.EDGE_RIGHT, 0, R.drawable.sym_keyboard_return, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0
+            },
+            new int[] {
+                49, 50, 51, 46, 52, 53, 54, 44, 55, 56, 57, -5, 35, 42, 48, 32, 45, 43, 10
+            },
+            new String[] {
+                "1", "2", "3", ".", "4", "5", "6", ",", "7", "8", "9", null, "# *", "0 |_|", "- +",
+                null
+            });
+
+    static final CompiledLayout SYMBOLS = new CompiledLayout(R.xml.symbols,
+            new int[] {
+                SIZE_FRACTION, R.fraction.key_width, SIZE_DIMENSION, R.dimen.key_height,
+                SIZE_PIXELS, 0, SIZE_DIMENSION, R.dimen.key_vertical_gap
+            },
+            new int[] { 7, 8, 7, 8, 7 },
+            new int[] {
+                // codes offset, codes length, edge flags, flags, icon, width, height, gap
+                0, 1, Keyboard.EDGE_LEFT, FLAG_REPEATABLE, R.drawable.sym_keyboard_delete, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                1, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                2, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                3, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                4, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                5, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                6, 1, Keyboard.EDGE_RIGHT, FLAG_REPEATABLE, R.drawable.sym_keyboard_delete, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                7, 1, Keyboard.EDGE_LEFT, FLAG_STICKY | FLAG_MODIFIER, R.drawable.sym_keyboard_shift, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                8, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                9, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                10, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                11, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                12, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                13, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                14, 1, Keyboard.EDGE_RIGHT, FLAG_STICKY | FLAG_MODIFIER, R.drawable.sym_keyboard_shift, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                15, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                16, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                17, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                18, 1, 0, FLAG_REPEATABLE, R.drawable.sym_keyboard_space, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                19, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                20, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                21, 1, Keyboard.EDGE_RIGHT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                22, 1, Keyboard.EDGE_LEFT, 0, R.drawable.sym_keyboard_return, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                23, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                24, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                25, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                26, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                27, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                28, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                29, 1, Keyboard.EDGE_RIGHT, 0, R.drawable.sym_keyboard_return, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                30, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                31, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                32, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                33, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                34, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                35, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                36, 1, Keyboard.EDGE_RIGHT, 0, R.drawable.sym_keyboard_language_switch, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0
+            },
+            new int[] {
+                -5, 49, 50, 51, 52, 53, -5, -1, 54, 55, 56, 57, 48, 64, -1, 35, 36, 37, 32, 38, 42,
+                45, 10, 61, 40, 41, 33, 34, 39, 10, -2, 58, 59, 47, 63, 44, -101
+            },
+            new String[] {
+                null, "1", "2", "3", "4", "5", null, null, "6", "7", "8", "9", "0", "@", null, "#",
+                "$", "%", null, "&", "*", "-", null, "=", "(", ")", "!", "", "'", null, "123", ":",
+                ";", "/", "?", ",", null
+            });
+
+    static final CompiledLayout SYMBOLS_SHIFT = new CompiledLayout(R.xml.symbols_shift,
+            new int[] {
+                SIZE_FRACTION, R.fraction.key_width, SIZE_DIMENSION, R.dimen.key_height,
+                SIZE_PIXELS, 0, SIZE_DIMENSION, R.dimen.key_vertical_gap
+            },
+            new int[] { 7, 8, 7, 8, 7 },
+            new int[] {
+                // codes offset, codes length, edge flags, flags, icon, width, height, gap
+                0, 1, Keyboard.EDGE_LEFT, FLAG_REPEATABLE, R.drawable.sym_keyboard_delete, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                1, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                2, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                3, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                4, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                5, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                6, 1, Keyboard.EDGE_RIGHT, FLAG_REPEATABLE, R.drawable.sym_keyboard_delete, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                7, 1, Keyboard.EDGE_LEFT, FLAG_STICKY | FLAG_MODIFIER, R.drawable.sym_keyboard_shift, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                8, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                9, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                10, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                11, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                12, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                13, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                14, 1, Keyboard.EDGE_RIGHT, FLAG_STICKY | FLAG_MODIFIER, R.drawable.sym_keyboard_shift, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                15, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                16, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                17, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                18, 1, 0, FLAG_REPEATABLE, R.drawable.sym_keyboard_space, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                19, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                20, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                21, 1, Keyboard.EDGE_RIGHT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                22, 1, Keyboard.EDGE_LEFT, 0, R.drawable.sym_keyboard_return, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                23, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                24, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                25, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                26, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                27, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                28, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                29, 1, Keyboard.EDGE_RIGHT, 0, R.drawable.sym_keyboard_return, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                30, 1, Keyboard.EDGE_LEFT, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_FRACTION, R.fraction.row_horizontal_gap,
+                31, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                32, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                33, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                34, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                35, 1, 0, 0, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0,
+                36, 1, Keyboard.EDGE_RIGHT, 0, R.drawable.sym_keyboard_language_switch, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0, SIZE_DEFAULT, 0
+            },
+            new int[] {
+                -5, 126, 177, 215, 247, 8226, -5, -1, 176, 96, 180, 123, 125, 169, -1, 163, 8364,
+                94, 32, 174, 165, 95, 10, 43, 91, 93, 161, 60, 62, 10, -2, 162, 124, 92, 191, 8230,
+                -101
+            },
+            new String[] {
+                null, "~", "\u00b1", "\u00d7", "\u00f7", "\u2022", null, null, "\u00b0", "`",
+                "\u00b4", "{", "}", "\u00a9", null, "\u00a3", "\u20ac", "^", null, "\u00ae",
+                "\u00a5", "_", null, "+", "[", "]", "\u00a1", "<", ">", null, "123", "\u00a2", "|",
+                "\\", "\u00bf", "\u2026", null
+            });
+
+    /** Locales of the letters_&lt;locale&gt; layouts, "default" for letters_default. */
+    static final String[] LETTERS_LOCALES = { "default", "es" };
+    static final int[] LETTERS_LAYOUTS = { R.xml.letters_default, R.xml.letters_es };
+    /** Locales of the subtypes of res/xml/method.xml. */
+    static final String[] SUBTYPE_LOCALES = { "en_US", "en_GB", "es" };
+
+    private CompiledLayouts() {
+    }
+
+    /**
+     * @return the compiled version of the layout, or null if it was not compiled
+     */
+    static CompiledLayout get(int xmlLayoutResId) {
+        if (xmlLayoutResId == R.xml.letters_default) {
+            return LETTERS_DEFAULT;
+        }
+        if (xmlLayoutResId == R.xml.letters_es) {
+            return LETTERS_ES;
+        }
+        if (xmlLayoutResId == R.xml.numbers) {
+            return NUMBERS;
+        }
+        if (xmlLayoutResId == R.xml.symbols) {
+            return SYMBOLS;
+        }
+        if (xmlLayoutResId == R.xml.symbols_shift) {
+            return SYMBOLS_SHIFT;
+        }
+        return null;
+    }
+}
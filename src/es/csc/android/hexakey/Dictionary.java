@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+/**
+ * Read-only list of words of a language with their frequencies. The words are
+ * in lower case.
+ */
+interface Dictionary {
+    /** Highest frequency of a word. */
+    int MAX_FREQUENCY = 255;
+
+    /**
+     * Finds the most frequent words that start with the prefix, the prefix itself
+     * included if it is a word.
+     *
+     * @param words receives the words, most frequent first
+     * @param frequencies receives the frequency of each word
+     * @return the number of words found, at most the length of the arrays
+     */
+    int getCompletions(CharSequence prefix, String[] words, int[] frequencies);
+
+    /**
+     * @return the frequency of the word, or 0 if it is not in the dictionary
+     */
+    int getFrequency(CharSequence word);
+
+    /**
+     * @return whether some word starts with the prefix, or is the prefix itself
+     */
+    boolean hasPrefix(CharSequence prefix);
+
+    /**
+     * @return the number of words, that are numbered in alphabetical order
+     */
+    int getWordCount();
+
+    /**
+     * Reads a word by its number. Reading the words in order is faster than reading
+     * them at random.
+     *
+     * @param word receives the word
+     * @return the frequency of the word
+     */
+    int getWord(int index, StringBuilder word);
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+/**
+ * Dictionaries opened for each locale, from the res/raw/words_&lt;locale&gt; binary
+ * dictionaries or words_default if the locale has none, like the layouts of
+ * {@link LetterLayouts}.
+ * <p>
+ * Resources can not be mapped in memory, so each dictionary is copied once to the
+ * private storage of the app, and again after the app is updated.
+ * It is not thread safe, it is used from the thread of the {@link SuggestionEngine}.
+ */
+final class DictionaryCache {
+    private static final String WORDS_RAW_PREFIX = "words_";
+    private static final String DEFAULT_LOCALE = "default";
+    private static final String DICTIONARIES_DIRECTORY = "dictionaries";
+    private static final String DICTIONARY_SUFFIX = ".dict";
+
+    private final HashMap<String, Dictionary> dictionaries = new HashMap<String, Dictionary>();
+
+    /**
+     * @return the dictionary of the locale, or null if it can not be loaded
+     */
+    Dictionary get(Context context, String locale) {
+        if (dictionaries.containsKey(locale)) {
+            return dictionaries.get(locale);
+        }
+
+        final Dictionary dictionary = load(context, findLocaleOrDefault(context, locale));
+        dictionaries.put(locale, dictionary);
+        return dictionary;
+    }
+
+    private int findLocaleOrDefault(Context context, String locale) {
+        int resourceId = context.getResources().getIdentifier(WORDS_RAW_PREFIX + locale, "raw", context.getPackageName());
+        if (resourceId == 0) {
+            resourceId = context.getResources().getIdentifier(WORDS_RAW_PREFIX + DEFAULT_LOCALE, "raw", context.getPackageName());
+        }
+        return resourceId;
+    }
+
+    private Dictionary load(Context context, int resourceId) {
+        if (resourceId == 0) {
+            return null;
+        }
+
+        try {
+            final File file = new File(context.getDir(DICTIONARIES_DIRECTORY, Context.MODE_PRIVATE),
+                    context.getResources().getResourceEntryName(resourceId) + DICTIONARY_SUFFIX);
+            if (!file.exists() || file.lastModified() < getLastUpdateTime(context)) {
+                copy(context, resourceId, file);
+            }
+            return BinaryDictionary.open(file);
+        }
+        catch (IOException e) {
+            Log.w(HexaKey.TAG, "Can not load the dictionary", e);
+            return null;
+        }
+    }
+
+    private long getLastUpdateTime(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        }
+        catch (PackageManager.NameNotFoundException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Copies the resource through a temporary file, so a copy interrupted halfway is
+     * never opened.
+     */
+    private void copy(Context context, int resourceId, File file) throws IOException {
+        final File temporary = new File(file.getPath() + ".tmp");
+        final InputStream in = context.getResources().openRawResource(resourceId);
+        try {
+            final OutputStream out = new FileOutputStream(temporary);
+            try {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Can not create " + file);
+        }
+    }
+}
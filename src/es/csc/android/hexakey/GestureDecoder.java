@@ -0,0 +1,227 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+/**
+ * Finds the words whose template, the path through the centers of their letters,
+ * is closest to the path of a gesture.
+ * <p>
+ * The words of the dictionary are indexed by their first and last letters, so only
+ * the words that start near the beginning of the gesture and end near its end are
+ * considered, and of them only those whose letters are all near the path are compared
+ * with it. The index is built the first time a dictionary and a layout are used
+ * together. All the buffers are allocated once; it must be used from one thread at
+ * a time.
+ */
+final class GestureDecoder {
+    /** Points the gestures and the templates are resampled to before comparing them. */
+    static final int SAMPLES = 32;
+
+    /** Distance, in key widths, from the path to the keys it may have meant to go through. */
+    private static final float NEAR_KEY_WIDTHS = 1f;
+    /** Standard deviation of the distance between the gesture and a template, in key widths. */
+    private static final float SIGMA_KEY_WIDTHS = 0.25f;
+    /** Weight of the frequency of the word against the shape of the gesture. */
+    private static final float LANGUAGE_WEIGHT = 0.5f;
+
+    private static final int MAX_WORD_LENGTH = 32;
+
+    private Dictionary indexedDictionary;
+    private GestureLayout indexedLayout;
+    /** For every pair of first and last letters, where its words start in bucketWords. */
+    private int[] bucketStarts;
+    private int[] bucketWords;
+
+    private final boolean[] nearLetters = new boolean[Character.MAX_VALUE + 1];
+    private final int[] firstLetters = new int[SpatialModel.MAX_ALTERNATIVES * 2];
+    private final int[] lastLetters = new int[SpatialModel.MAX_ALTERNATIVES * 2];
+    private final float[] letterX = new float[MAX_WORD_LENGTH];
+    private final float[] letterY = new float[MAX_WORD_LENGTH];
+    private final float[] templateX = new float[SAMPLES];
+    private final float[] templateY = new float[SAMPLES];
+    private final StringBuilder word = new StringBuilder(MAX_WORD_LENGTH);
+    private final float[] scores = new float[SuggestionEngine.MAX_SUGGESTIONS];
+
+    /**
+     * Builds the index of the dictionary for the layout, if it is not built yet.
+     */
+    void prepare(GestureLayout layout, Dictionary dictionary) {
+        if (dictionary != indexedDictionary || layout != indexedLayout) {
+            buildIndex(dictionary, layout);
+        }
+    }
+
+    /**
+     * @param pathX the points of the gesture, resampled to {@link #SAMPLES}
+     * @param words receives the words found, most likely first
+     * @return the number of words found
+     */
+    int decode(float[] pathX, float[] pathY, GestureLayout layout, Dictionary dictionary,
+            String[] words) {
+        prepare(layout, dictionary);
+
+        final float keyWidth = layout.getKeyWidth();
+        final int letterCount = layout.getLetterCount();
+        final int firstCount = findLettersNear(layout, pathX[0], pathY[0], firstLetters);
+        final int lastCount = findLettersNear(layout, pathX[SAMPLES - 1], pathY[SAMPLES - 1], lastLetters);
+        findLettersNearPath(layout, pathX, pathY);
+
+        final float inverseTwoSigmaSquared = 1 / (2 * SIGMA_KEY_WIDTHS * SIGMA_KEY_WIDTHS);
+        final int maxResults = Math.min(words.length, scores.length);
+        int count = 0;
+        for (int f = 0; f < firstCount; f++) {
+            for (int l = 0; l < lastCount; l++) {
+                final int bucket = firstLetters[f] * letterCount + lastLetters[l];
+                for (int i = bucketStarts[bucket]; i < bucketStarts[bucket + 1]; i++) {
+                    final int frequency = dictionary.getWord(bucketWords[i], word);
+                    final int length = getTemplate(layout);
+                    if (length == 0) {
+                        continue;
+                    }
+
+                    GesturePath.resample(letterX, letterY, length, SAMPLES, templateX, templateY);
+                    float distance = 0;
+                    for (int p = 0; p < SAMPLES; p++) {
+                        distance += GesturePath.distance(pathX[p], pathY[p], templateX[p], templateY[p]);
+                    }
+                    distance /= SAMPLES * keyWidth;
+
+                    final float score = -distance * distance * inverseTwoSigmaSquared
+                            + LANGUAGE_WEIGHT * (float) Math.log((double) frequency / Dictionary.MAX_FREQUENCY);
+                    if (count == maxResults && score <= scores[count - 1]) {
+                        continue;
+                    }
+
+                    int position = count < maxResults ? count++ : count - 1;
+                    while (position > 0 && scores[position - 1] < score) {
+                        words[position] = words[position - 1];
+                        scores[position] = scores[position - 1];
+                        position--;
+                    }
+                    words[position] = word.toString();
+                    scores[position] = score;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Puts the centers of the letters of the word in letterX and letterY, once for
+     * every run of the same letter.
+     *
+     * @return the number of centers, or 0 if some letter is not on the keyboard or
+     * not near the path
+     */
+    private int getTemplate(GestureLayout layout) {
+        if (word.length() > MAX_WORD_LENGTH) {
+            return 0;
+        }
+
+        int length = 0;
+        for (int i = 0; i < word.length(); i++) {
+            final char c = word.charAt(i);
+            if (!nearLetters[c]) {
+                return 0;
+            }
+            if (i > 0 && c == word.charAt(i - 1)) {
+                continue;
+            }
+
+            final int letter = layout.indexOf(c);
+            letterX[length] = layout.getCenterX(letter);
+            letterY[length] = layout.getCenterY(letter);
+            length++;
+        }
+        return length;
+    }
+
+    private int findLettersNear(GestureLayout layout, float x, float y, int[] found) {
+        final float maxDistance = layout.getKeyWidth() * NEAR_KEY_WIDTHS;
+        int count = 0;
+        for (int i = 0; i < layout.getLetterCount() && count < found.length; i++) {
+            if (GesturePath.distance(x, y, layout.getCenterX(i), layout.getCenterY(i)) <= maxDistance) {
+                found[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    private void findLettersNearPath(GestureLayout layout, float[] pathX, float[] pathY) {
+        final float maxDistance = layout.getKeyWidth() * NEAR_KEY_WIDTHS;
+        for (int i = 0; i < layout.getLetterCount(); i++) {
+            final float x = layout.getCenterX(i);
+            final float y = layout.getCenterY(i);
+            boolean isNear = false;
+            for (int p = 1; p < SAMPLES && !isNear; p++) {
+                isNear = distanceToSegment(x, y, pathX[p - 1], pathY[p - 1], pathX[p], pathY[p]) <= maxDistance;
+            }
+            nearLetters[layout.getLetter(i)] = isNear;
+        }
+    }
+
+    private static float distanceToSegment(float x, float y, float x1, float y1, float x2, float y2) {
+        final float dx = x2 - x1;
+        final float dy = y2 - y1;
+        final float squaredLength = dx * dx + dy * dy;
+        float t = squaredLength == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / squaredLength;
+        t = Math.max(0, Math.min(1, t));
+        return GesturePath.distance(x, y, x1 + t * dx, y1 + t * dy);
+    }
+
+    /**
+     * Sorts the numbers of the words of two letters or more by their first and last
+     * letters, skipping the words with letters that are not on the keyboard.
+     */
+    private void buildIndex(Dictionary dictionary, GestureLayout layout) {
+        final int letterCount = layout.getLetterCount();
+        final int wordCount = dictionary.getWordCount();
+        final int[] wordBuckets = new int[wordCount];
+        bucketStarts = new int[letterCount * letterCount + 1];
+
+        for (int i = 0; i < wordCount; i++) {
+            dictionary.getWord(i, word);
+            wordBuckets[i] = -1;
+            if (word.length() < 2 || word.length() > MAX_WORD_LENGTH) {
+                continue;
+            }
+
+            boolean isTypeable = true;
+            for (int c = 0; c < word.length() && isTypeable; c++) {
+                isTypeable = layout.indexOf(word.charAt(c)) != GestureLayout.NO_LETTER;
+            }
+            if (isTypeable) {
+                wordBuckets[i] = layout.indexOf(word.charAt(0)) * letterCount
+                        + layout.indexOf(word.charAt(word.length() - 1));
+                bucketStarts[wordBuckets[i] + 1]++;
+            }
+        }
+
+        for (int b = 0; b < letterCount * letterCount; b++) {
+            bucketStarts[b + 1] += bucketStarts[b];
+        }
+        bucketWords = new int[bucketStarts[letterCount * letterCount]];
+        final int[] filled = new int[letterCount * letterCount];
+        for (int i = 0; i < wordCount; i++) {
+            final int bucket = wordBuckets[i];
+            if (bucket >= 0) {
+                bucketWords[bucketStarts[bucket] + filled[bucket]++] = i;
+            }
+        }
+
+        indexedDictionary = dictionary;
+        indexedLayout = layout;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.util.Arrays;
+import java.util.List;
+
+import android.inputmethodservice.Keyboard.Key;
+
+/**
+ * Centers of the letter keys of a keyboard, the points the path of a gesture goes
+ * through to type a word. It does not change once created, so it can be used from
+ * any thread.
+ */
+final class GestureLayout {
+    static final int NO_LETTER = -1;
+
+    /** The letters of the keyboard, in lower case and sorted. */
+    private final char[] letters;
+    private final float[] centerX;
+    private final float[] centerY;
+    private final float keyWidth;
+
+    private GestureLayout(char[] letters, float[] centerX, float[] centerY, float keyWidth) {
+        this.letters = letters;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.keyWidth = keyWidth;
+    }
+
+    static GestureLayout build(List<Key> keys, int keyWidth) {
+        final char[] found = new char[keys.size()];
+        int count = 0;
+        for (Key key : keys) {
+            final int code = Character.toLowerCase(key.codes[0]);
+            if (key.width > 0 && Character.isLetter(code) && code <= Character.MAX_VALUE) {
+                found[count++] = (char) code;
+            }
+        }
+
+        // A letter on several keys goes through the last one
+        Arrays.sort(found, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || found[unique - 1] != found[i]) {
+                found[unique++] = found[i];
+            }
+        }
+        final char[] letters = Arrays.copyOf(found, unique);
+        final int letterCount = letters.length;
+        final float[] centerX = new float[letterCount];
+        final float[] centerY = new float[letterCount];
+        for (Key key : keys) {
+            final int code = Character.toLowerCase(key.codes[0]);
+            if (key.width > 0 && Character.isLetter(code) && code <= Character.MAX_VALUE) {
+                final int index = Arrays.binarySearch(letters, (char) code);
+                centerX[index] = key.x + key.width / 2f;
+                centerY[index] = key.y + key.height / 2f;
+            }
+        }
+        return new GestureLayout(letters, centerX, centerY, Math.max(1, keyWidth));
+    }
+
+    int getLetterCount() {
+        return letters.length;
+    }
+
+    /**
+     * @return the index of the letter, or {@link #NO_LETTER} if it has no key
+     */
+    int indexOf(char letter) {
+        final int index = Arrays.binarySearch(letters, Character.toLowerCase(letter));
+        return index < 0 ? NO_LETTER : index;
+    }
+
+    char getLetter(int index) {
+        return letters[index];
+    }
+
+    float getCenterX(int index) {
+        return centerX[index];
+    }
+
+    float getCenterY(int index) {
+        return centerY[index];
+    }
+
+    float getKeyWidth() {
+        return keyWidth;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+/**
+ * Points of the path of a finger sliding over the keyboard, in keyboard coordinates.
+ * Points closer than {@link #MIN_DISTANCE} to the previous one are not kept, and
+ * once the path is full the last point is moved instead of adding more.
+ */
+final class GesturePath {
+    static final int CAPACITY = 256;
+    private static final float MIN_DISTANCE = 3;
+
+    private final float[] xs = new float[CAPACITY];
+    private final float[] ys = new float[CAPACITY];
+    private int size;
+    private float length;
+
+    void clear() {
+        size = 0;
+        length = 0;
+    }
+
+    void add(float x, float y) {
+        if (size > 0) {
+            final float distance = distance(xs[size - 1], ys[size - 1], x, y);
+            if (distance < MIN_DISTANCE) {
+                return;
+            }
+            length += distance;
+        }
+
+        if (size == CAPACITY) {
+            size--;
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the length of the path, approximate once the path is full
+     */
+    float getLength() {
+        return length;
+    }
+
+    float getX(int i) {
+        return xs[i];
+    }
+
+    float getY(int i) {
+        return ys[i];
+    }
+
+    /**
+     * Samples the path at points evenly spaced along it.
+     */
+    void resample(int count, float[] resampledX, float[] resampledY) {
+        resample(xs, ys, size, count, resampledX, resampledY);
+    }
+
+    /**
+     * Samples a polyline at points evenly spaced along it, the first and the last
+     * ones included. A polyline of a single point is sampled at that point.
+     */
+    static void resample(float[] xs, float[] ys, int size, int count,
+            float[] resampledX, float[] resampledY) {
+        if (size < 2) {
+            for (int i = 0; i < count; i++) {
+                resampledX[i] = xs[0];
+                resampledY[i] = ys[0];
+            }
+            return;
+        }
+
+        float total = 0;
+        for (int i = 1; i < size; i++) {
+            total += distance(xs[i - 1], ys[i - 1], xs[i], ys[i]);
+        }
+
+        final float step = count > 1 ? total / (count - 1) : 0;
+        int segment = 1;
+        float segmentStart = 0;
+        for (int i = 0; i < count; i++) {
+            final float target = step * i;
+            while (segment < size - 1
+                    && segmentStart + distance(xs[segment - 1], ys[segment - 1], xs[segment], ys[segment]) < target) {
+                segmentStart += distance(xs[segment - 1], ys[segment - 1], xs[segment], ys[segment]);
+                segment++;
+            }
+
+            final float segmentLength = distance(xs[segment - 1], ys[segment - 1], xs[segment], ys[segment]);
+            final float t = segmentLength == 0 ? 0 : Math.min(1, (target - segmentStart) / segmentLength);
+            resampledX[i] = xs[segment - 1] + (xs[segment] - xs[segment - 1]) * t;
+            resampledY[i] = ys[segment - 1] + (ys[segment] - ys[segment - 1]) * t;
+        }
+    }
+
+    static float distance(float x1, float y1, float x2, float y2) {
+        final float dx = x2 - x1;
+        final float dy = y2 - y1;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.util.List;
+
+import android.inputmethodservice.Keyboard.Key;
+
+/**
+ * Resolves touch coordinates to keys on layouts whose rows overlap to form a
+ * hexagonal grid (negative vertical gap and every other row shifted by half a key).
+ * <p>
+ * Every key gets the axial coordinates of its hexagon when the index is built, so
+ * a lookup is a constant amount of arithmetic and does not allocate.
+ */
+final class HexKeyIndex {
+    static final int NO_KEY = -1;
+
+    private static final int[] NO_KEYS = new int[0];
+
+    /**
+     * Maximum distance, in hexagons, between a key center and the grid cell it is
+     * snapped to. Layouts that do not fit the grid are not indexed.
+     */
+    private static final float MAX_GRID_ERROR = 0.25f;
+
+    private final Key[] keys;
+
+    private final float originX;
+    private final float originY;
+    private final float columnPitch;
+    private final float rowPitch;
+
+    private final int rows;
+    private final int firstColumn;
+    private final int columns;
+    private final int[] rowFirstColumn;
+    private final int[] rowLastColumn;
+    private final int[] cells;
+
+    /**
+     * For every key, its own index followed by the indexes of the keys sharing an
+     * edge with it.
+     */
+    private final int[][] neighbourhoods;
+
+    /** The last lookup, repeated by {@link Key#isInside(int, int)} for every near key. */
+    private int lastX = Integer.MIN_VALUE;
+    private int lastY = Integer.MIN_VALUE;
+    private int lastKeyIndex = NO_KEY;
+
+    private HexKeyIndex(Key[] keys, float originX, float originY,
+            float columnPitch, float rowPitch, int rows, int firstColumn, int columns,
+            int[] rowFirstColumn, int[] rowLastColumn, int[] cells, int[][] neighbourhoods) {
+        this.keys = keys;
+        this.originX = originX;
+        this.originY = originY;
+        this.columnPitch = columnPitch;
+        this.rowPitch = rowPitch;
+        this.rows = rows;
+        this.firstColumn = firstColumn;
+        this.columns = columns;
+        this.rowFirstColumn = rowFirstColumn;
+        this.rowLastColumn = rowLastColumn;
+        this.cells = cells;
+        this.neighbourhoods = neighbourhoods;
+    }
+
+    /**
+     * Builds the index for the given keys.
+     *
+     * @return the index, or null if the keys are not laid out as a hexagonal grid
+     */
+    static HexKeyIndex build(List<Key> keyList, int keyWidth, int keyHeight, int verticalGap) {
+        final float rowPitch = keyHeight + verticalGap;
+        if (keyList.isEmpty() || keyWidth <= 0 || verticalGap >= 0 || rowPitch <= 0) {
+            return null;
+        }
+
+        final Key[] keys = keyList.toArray(new Key[keyList.size()]);
+        final float columnPitch = keyWidth;
+        final float originX = keys[0].x + columnPitch / 2;
+        final float originY = keys[0].y + keyHeight / 2f;
+
+        int cellCount = 0;
+        for (Key key : keys) {
+            cellCount += cellsOf(key, columnPitch);
+        }
+
+        // Axial coordinates of every cell, in key order
+        final int[] cellKey = new int[cellCount];
+        final int[] cellQ = new int[cellCount];
+        final int[] cellR = new int[cellCount];
+
+        int cell = 0;
+        int lastRow = 0;
+        int firstColumn = Integer.MAX_VALUE;
+        int lastColumn = Integer.MIN_VALUE;
+        for (int i = 0; i < keys.length; i++) {
+            final Key key = keys[i];
+            final float exactR = (key.y + keyHeight / 2f - originY) / rowPitch;
+            final int r = Math.round(exactR);
+            if (r < 0 || Math.abs(exactR - r) > MAX_GRID_ERROR) {
+                return null;
+            }
+
+            for (int k = cellsOf(key, columnPitch) - 1; k >= 0; k--) {
+                final float centerX = key.x + columnPitch * (k + 0.5f);
+                final float exactQ = (centerX - originX) / columnPitch - r / 2f;
+                final int q = Math.round(exactQ);
+                if (Math.abs(exactQ - q) > MAX_GRID_ERROR) {
+                    return null;
+                }
+
+                cellKey[cell] = i;
+                cellQ[cell] = q;
+                cellR[cell] = r;
+                cell++;
+
+                lastRow = Math.max(lastRow, r);
+                firstColumn = Math.min(firstColumn, toColumn(q, r));
+                lastColumn = Math.max(lastColumn, toColumn(q, r));
+            }
+        }
+
+        final int rows = lastRow + 1;
+        final int columns = lastColumn - firstColumn + 1;
+        final int[] cells = new int[rows * columns];
+        final int[] rowFirstColumn = new int[rows];
+        final int[] rowLastColumn = new int[rows];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = NO_KEY;
+        }
+        for (int r = 0; r < rows; r++) {
+            rowFirstColumn[r] = Integer.MAX_VALUE;
+            rowLastColumn[r] = Integer.MIN_VALUE;
+        }
+
+        for (int i = 0; i < cellCount; i++) {
+            final int r = cellR[i];
+            final int column = toColumn(cellQ[i], r);
+            final int position = r * columns + column - firstColumn;
+            if (cells[position] != NO_KEY) {
+                return null;
+            }
+            cells[position] = cellKey[i];
+            rowFirstColumn[r] = Math.min(rowFirstColumn[r], column);
+            rowLastColumn[r] = Math.max(rowLastColumn[r], column);
+        }
+        for (int r = 0; r < rows; r++) {
+            if (rowFirstColumn[r] > rowLastColumn[r]) {
+                return null;
+            }
+        }
+
+        final int[][] neighbourhoods = buildNeighbourhoods(keys.length, cellKey, cellQ, cellR,
+                cells, rows, firstColumn, columns);
+
+        return new HexKeyIndex(keys, originX, originY, columnPitch, rowPitch, rows,
+                firstColumn, columns, rowFirstColumn, rowLastColumn, cells, neighbourhoods);
+    }
+
+    private static int cellsOf(Key key, float columnPitch) {
+        return Math.max(1, Math.round(key.width / columnPitch));
+    }
+
+    private static int toColumn(int q, int r) {
+        return q + (r >> 1);
+    }
+
+    private static int[][] buildNeighbourhoods(int keyCount, int[] cellKey, int[] cellQ,
+            int[] cellR, int[] cells, int rows, int firstColumn, int columns) {
+        final int[] directionQ = { 1, -1, 0, 1, -1, 0 };
+        final int[] directionR = { 0, 0, -1, -1, 1, 1 };
+
+        final int[][] neighbourhoods = new int[keyCount][];
+        final int[] found = new int[keyCount];
+        for (int key = 0; key < keyCount; key++) {
+            int count = 0;
+            found[count++] = key;
+            for (int i = 0; i < cellKey.length; i++) {
+                if (cellKey[i] != key) {
+                    continue;
+                }
+                for (int d = 0; d < directionQ.length; d++) {
+                    final int r = cellR[i] + directionR[d];
+                    final int column = toColumn(cellQ[i] + directionQ[d], r) - firstColumn;
+                    if (r < 0 || r >= rows || column < 0 || column >= columns) {
+                        continue;
+                    }
+                    final int neighbour = cells[r * columns + column];
+                    if (neighbour != NO_KEY && !contains(found, count, neighbour)) {
+                        found[count++] = neighbour;
+                    }
+                }
+            }
+
+            neighbourhoods[key] = new int[count];
+            System.arraycopy(found, 0, neighbourhoods[key], 0, count);
+        }
+        return neighbourhoods;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the last lookup, that is not valid after the keys change their size or
+     * position.
+     */
+    void clearLastLookup() {
+        lastX = Integer.MIN_VALUE;
+        lastY = Integer.MIN_VALUE;
+        lastKeyIndex = NO_KEY;
+    }
+
+    /**
+     * @return the index of the key whose hexagon contains the point, or the closest
+     * one if the point is outside the grid, or {@link #NO_KEY}
+     */
+    int findKeyIndex(int x, int y) {
+        if (x == lastX && y == lastY) {
+            return lastKeyIndex;
+        }
+
+        final float fractionalR = (y - originY) / rowPitch;
+        final float fractionalQ = (x - originX) / columnPitch - fractionalR / 2;
+        final float fractionalS = -fractionalQ - fractionalR;
+
+        int q = Math.round(fractionalQ);
+        int r = Math.round(fractionalR);
+        final int s = Math.round(fractionalS);
+
+        final float errorQ = Math.abs(q - fractionalQ);
+        final float errorR = Math.abs(r - fractionalR);
+        final float errorS = Math.abs(s - fractionalS);
+        if (errorQ > errorR && errorQ > errorS) {
+            q = -r - s;
+        }
+        else if (errorR > errorS) {
+            r = -q - s;
+        }
+
+        if (r < 0 || r >= rows) {
+            r = r < 0 ? 0 : rows - 1;
+            q = Math.round((x - originX) / columnPitch - r / 2f);
+        }
+
+        int column = toColumn(q, r);
+        if (column < rowFirstColumn[r]) {
+            column = rowFirstColumn[r];
+        }
+        else if (column > rowLastColumn[r]) {
+            column = rowLastColumn[r];
+        }
+
+        int keyIndex = cells[r * columns + column - firstColumn];
+        if (keyIndex != NO_KEY && keys[keyIndex].width == 0) {
+            keyIndex = closestVisibleNeighbour(keyIndex, x, y);
+        }
+
+        lastX = x;
+        lastY = y;
+        lastKeyIndex = keyIndex;
+        return keyIndex;
+    }
+
+    /**
+     * Hidden keys (see {@link LatinKeyboard#setLanguageSwitchKeyVisibility(boolean)}) lend
+     * their hexagon to their neighbours.
+     */
+    private int closestVisibleNeighbour(int keyIndex, int x, int y) {
+        int closest = NO_KEY;
+        int closestDistance = Integer.MAX_VALUE;
+        final int[] neighbourhood = neighbourhoods[keyIndex];
+        for (int i = 1; i < neighbourhood.length; i++) {
+            final Key key = keys[neighbourhood[i]];
+            if (key.width > 0) {
+                final int distance = key.squaredDistanceFrom(x, y);
+                if (distance < closestDistance) {
+                    closestDistance = distance;
+                    closest = neighbourhood[i];
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @return the key whose hexagon contains the point, or null
+     */
+    Key findKey(int x, int y) {
+        final int keyIndex = findKeyIndex(x, y);
+        return keyIndex == NO_KEY ? null : keys[keyIndex];
+    }
+
+    /**
+     * @return the key containing the point followed by its neighbours. The returned
+     * array is shared and must not be modified.
+     */
+    int[] getNearestKeys(int x, int y) {
+        final int keyIndex = findKeyIndex(x, y);
+        return keyIndex == NO_KEY ? NO_KEYS : neighbourhoods[keyIndex];
+    }
+
+    /**
+     * @return the key itself followed by the keys sharing an edge with it. The returned
+     * array is shared and must not be modified.
+     */
+    int[] getNeighbourhood(int keyIndex) {
+        return neighbourhoods[keyIndex];
+    }
+}
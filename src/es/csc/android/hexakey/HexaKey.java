@@ -18,14 +18,20 @@ package es.csc.android.hexakey;
 
 import android.annotation.TargetApi;
 import android.app.Dialog;
+import android.content.ComponentCallbacks2;
 import android.inputmethodservice.InputMethodService;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.KeyboardView;
 import android.os.Build;
 import android.os.IBinder;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import android.text.InputType;
+import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputConnection;
@@ -33,12 +39,25 @@ import android.view.inputmethod.InputMethodManager;
 import android.view.inputmethod.InputMethodSubtype;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import es.csc.android.hexakey.R;
 
 public class HexaKey extends InputMethodService 
-        implements KeyboardView.OnKeyboardActionListener {
+        implements KeyboardView.OnKeyboardActionListener, CommitPipeline.Listener, 
+        		SuggestionEngine.Listener, LatinKeyboardView.GestureTypingListener {
     static final boolean DEBUG = false;
+    static final String TAG = "HexaKey";
+    
+    /**
+     * Number of languages whose keyboards are kept in memory, one for each
+     * subtype declared in res/xml/method.xml.
+     */
+    private static final int KEYBOARD_SET_POOL_CAPACITY = 3;
+    /** Time the delete key has to be held to delete whole words, in milliseconds. */
+    private static final long WORD_DELETE_DELAY = 1000;
 
     private InputMethodManager inputMethodManager;
 
@@ -49,8 +68,37 @@ public class HexaKey extends InputMethodService
     private boolean wasShiftedBeforeRotation;
     
     private LatinKeyboardSet keyboardSet;
+    private LatinKeyboardSetPool keyboardSetPool;
+    private KeyboardBitmapPool keyboardBitmapPool;
+    
+    private WordSeparators wordSeparators;
+    
+    private CommitPipeline commitPipeline;
+    private CapsModeTracker capsModeTracker;
     
-    private String wordSeparators;
+    private CandidateView candidateView;
+    private SuggestionEngine suggestionEngine;
+    private boolean isPredictionOn;
+    /** The letters typed since the last separator, whose completions are suggested. */
+    private final StringBuilder composingWord = new StringBuilder();
+    /** Where each letter of the composing word was touched, to correct it. */
+    private final TouchSequence composingTouches = new TouchSequence();
+    /** The word that replaces the composing word when a separator is typed, or null. */
+    private String autoCorrection;
+    /** The last word learned, if only a space was typed after it, or null. */
+    private String previousWord;
+    /** The word learned before previousWord, or null. */
+    private String wordBeforePrevious;
+    /** Whether the next word starts a sentence, to predict it. */
+    private boolean isSentenceStart;
+    private boolean arePredictionsShown;
+    private boolean isCapsLockUpdatePending;
+    /** When the delete key was pressed, 0 if it is not held. */
+    private long deletePressTime;
+    
+    /** Creates the keyboards in the background, see {@link LatinKeyboardSet#prepare}. */
+    private ExecutorService keyboardExecutor;
+    private long createTime;
     
     /**
      * Main initialization of the input method component.  Be sure to call
@@ -60,7 +108,48 @@ public class HexaKey extends InputMethodService
     public void onCreate() {
         super.onCreate();
         inputMethodManager = (InputMethodManager)getSystemService(INPUT_METHOD_SERVICE);
-        wordSeparators = getResources().getString(R.string.word_separators);
+        wordSeparators = new WordSeparators(getResources().getString(R.string.word_separators));
+        LatencyTracer.setEnabled(PreferenceManager.getDefaultSharedPreferences(this)
+                .getBoolean(ImePreferences.PREF_TRACE_LATENCY, false));
+        commitPipeline = new CommitPipeline(this, this);
+        capsModeTracker = new CapsModeTracker();
+        suggestionEngine = new SuggestionEngine(this, this);
+        keyboardSetPool = new LatinKeyboardSetPool(KEYBOARD_SET_POOL_CAPACITY);
+        
+        // Enough for the bitmaps of the keyboard in both orientations
+        final DisplayMetrics metrics = getResources().getDisplayMetrics();
+        keyboardBitmapPool = new KeyboardBitmapPool(metrics.widthPixels * metrics.heightPixels * 4);
+        
+        createTime = SystemClock.uptimeMillis();
+        
+        // Warm up: the keyboards are created before the input view is first shown
+        keyboardExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "HexaKey keyboards");
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        keyboardSet = keyboardSetPool.get(this, inputMethodManager.getCurrentInputMethodSubtype());
+        keyboardSet.prepare(keyboardExecutor);
+        lastDisplayWidth = getMaxWidth();
+    }
+    
+    @Override
+    public void onDestroy() {
+        keyboardExecutor.shutdownNow();
+        suggestionEngine.close();
+        keyboardBitmapPool.trim();
+        super.onDestroy();
+    }
+    
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            keyboardBitmapPool.trim();
+        }
     }
     
     /**
@@ -71,10 +160,13 @@ public class HexaKey extends InputMethodService
     public void onInitializeInterface() {
         if (keyboardSet == null) {
             final InputMethodSubtype subtype = inputMethodManager.getCurrentInputMethodSubtype();
-        	keyboardSet = new LatinKeyboardSet(this, subtype);
+        	keyboardSet = keyboardSetPool.get(this, subtype);
+        	keyboardSet.prepare(keyboardExecutor);
         }
         else if (isScreenSizeChange()) {
-        	keyboardSet.recreateKeyboards();
+        	// The current set is the most recently used one of the pool
+        	keyboardSetPool.relayoutKeyboards();
+        	keyboardSet.prepare(keyboardExecutor);
         }
         
         lastDisplayWidth = getMaxWidth();
@@ -94,6 +186,17 @@ public class HexaKey extends InputMethodService
     public void onStartInput(EditorInfo attribute, boolean restarting) {
         super.onStartInput(attribute, restarting);
         
+        capsModeTracker.start(getCurrentInputConnection(), 
+        		attribute.initialSelStart, attribute.initialSelEnd);
+        
+        resetComposingWord();
+        forgetPreviousWords(attribute.initialSelStart <= 0);
+        isPredictionOn = isPredictionAllowed(attribute);
+        suggestionEngine.setPredictionMemory(1024 * Integer.parseInt(
+                PreferenceManager.getDefaultSharedPreferences(this).getString(
+                        ImePreferences.PREF_PREDICTION_MEMORY, ImePreferences.DEFAULT_PREDICTION_MEMORY)));
+        suggestionEngine.setLocale(inputMethodManager.getCurrentInputMethodSubtype().getLocale());
+        
         isRotation = restarting;
         wasShiftedBeforeRotation = inputView == null? false : inputView.isShifted();
         
@@ -119,20 +222,62 @@ public class HexaKey extends InputMethodService
         inputView = (LatinKeyboardView) getLayoutInflater()
         				.inflate(R.layout.input, null);
         inputView.autoAdjustPadding(getMaxWidth());
+        inputView.setBitmapPool(keyboardBitmapPool);
         inputView.setOnKeyboardActionListener(this);
         
+        if (DEBUG && createTime != 0) {
+        	logTimeToFirstFrame(inputView);
+        }
+        
         return inputView;
     }
     
+    /**
+     * Logs the time from the creation of the service to the first frame of its first view.
+     */
+    private void logTimeToFirstFrame(final View view) {
+    	final long startTime = createTime;
+    	view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+			@Override
+			public boolean onPreDraw() {
+				view.getViewTreeObserver().removeOnPreDrawListener(this);
+				Log.d(TAG, "Time to first frame: " 
+						+ (SystemClock.uptimeMillis() - startTime) + "ms");
+				return true;
+			}
+		});
+    	createTime = 0;
+    }
+    
     /**
      * Called by the framework when your view for showing candidates needs to
      * be generated, like {@link #onCreateInputView}.
      */
     @Override 
     public View onCreateCandidatesView() {
-       return null;
+        candidateView = new CandidateView(this);
+        candidateView.setService(this);
+        return candidateView;
     }    
     
+    /**
+     * The words are not suggested for passwords, addresses and numbers, or if the
+     * editor asks for it.
+     */
+    private boolean isPredictionAllowed(EditorInfo attribute) {
+    	if ((attribute.inputType & InputType.TYPE_MASK_CLASS) != InputType.TYPE_CLASS_TEXT) {
+    		return false;
+    	}
+    	
+    	final int variation = attribute.inputType & InputType.TYPE_MASK_VARIATION;
+    	return variation != InputType.TYPE_TEXT_VARIATION_PASSWORD
+    			&& variation != InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD
+    			&& variation != InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD
+    			&& variation != InputType.TYPE_TEXT_VARIATION_EMAIL_ADDRESS
+    			&& variation != InputType.TYPE_TEXT_VARIATION_URI
+    			&& (attribute.inputType & InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS) == 0;
+    }
+    
     @Override 
     public void onStartInputView(EditorInfo attribute, boolean restarting) {
         super.onStartInputView(attribute, restarting);
@@ -149,6 +294,14 @@ public class HexaKey extends InputMethodService
         
         final InputMethodSubtype subtype = inputMethodManager.getCurrentInputMethodSubtype();
         inputView.setSubtypeOnSpaceKey(subtype);
+        inputView.setGestureTypingListener(isPredictionOn ? this : null);
+        if (isPredictionOn) {
+        	suggestionEngine.prepareGestures(keyboardSet.getCurrentKeyboard().getGestureLayout());
+        }
+        
+        if (DEBUG) {
+        	Log.d(TAG, "Start input view: " + keyboardBitmapPool);
+        }
     }
     
     @TargetApi(Build.VERSION_CODES.KITKAT) 
@@ -159,10 +312,12 @@ public class HexaKey extends InputMethodService
 	        nextKeyboard.setLanguageSwitchKeyVisibility(shouldSupportLanguageSwitchKey);
     	}
         inputView.setKeyboard(nextKeyboard);
+        SingleCharacters.prepare(nextKeyboard);
     }
 
     @Override
     public void onFinishInputView (boolean finishingInput) {
+    	commitPipeline.flush();
     	isRotation = false;
         keyboardSet.resetStatus();
         inputView.setShifted(false);
@@ -175,8 +330,12 @@ public class HexaKey extends InputMethodService
      */
     @Override 
     public void onFinishInput() {
+    	commitPipeline.flush();
         super.onFinishInput();
         
+        resetComposingWord();
+        setCandidatesViewShown(false);
+        
         if (inputView != null) {
             inputView.closing();
         }
@@ -185,6 +344,7 @@ public class HexaKey extends InputMethodService
     @Override
     public void onCurrentInputMethodSubtypeChanged(InputMethodSubtype subtype) {
         inputView.setSubtypeOnSpaceKey(subtype);
+        suggestionEngine.setLocale(subtype.getLocale());
     }
 
     /**
@@ -194,8 +354,13 @@ public class HexaKey extends InputMethodService
     public void onUpdateSelection(int oldSelStart, int oldSelEnd,
             int newSelStart, int newSelEnd,
             int candidatesStart, int candidatesEnd) {
+    	commitPipeline.flush();
         super.onUpdateSelection(oldSelStart, oldSelEnd, newSelStart, newSelEnd,
                 candidatesStart, candidatesEnd);
+        if (!capsModeTracker.onUpdateSelection(newSelStart, newSelEnd)) {
+        	// The cursor is not after the typed word anymore
+        	resetComposingWord();
+        }
     }
     
     /**
@@ -241,9 +406,8 @@ public class HexaKey extends InputMethodService
 		
 		EditorInfo ei = getCurrentInputEditorInfo();
 		if (ei != null && ei.inputType != InputType.TYPE_NULL) {
-			// For some weird reason, sometimes the result is false in the first call and true in the second...
-		    firstLetterAndCapital = getCurrentInputConnection().getCursorCapsMode(attr.inputType) != 0
-		    						|| getCurrentInputConnection().getCursorCapsMode(attr.inputType) != 0;		 
+		    firstLetterAndCapital = 
+		    		capsModeTracker.getCursorCapsMode(getCurrentInputConnection(), attr.inputType) != 0;		 
 		}
 		return firstLetterAndCapital;
 	}
@@ -252,10 +416,31 @@ public class HexaKey extends InputMethodService
      * Helper to send a key down / key up pair to the current editor.
      */
     private void keyDownUp(int keyEventCode) {
-        getCurrentInputConnection().sendKeyEvent(
-                new KeyEvent(KeyEvent.ACTION_DOWN, keyEventCode));
-        getCurrentInputConnection().sendKeyEvent(
-                new KeyEvent(KeyEvent.ACTION_UP, keyEventCode));
+        commitPipeline.sendKey(keyEventCode);
+        if (keyEventCode == KeyEvent.KEYCODE_DEL) {
+        	capsModeTracker.onDelete();
+        }
+    }
+    
+    private void commitText(String text) {
+    	commitPipeline.commitText(text);
+    	capsModeTracker.onTextCommitted(text);
+    }
+    
+    /**
+     * The caps lock state depends on the text of the editor, so it is updated
+     * once the pending keys are committed.
+     */
+    private void requestCapsLockUpdate() {
+    	isCapsLockUpdatePending = true;
+    }
+    
+    public void onCommitted() {
+    	capsModeTracker.onCommitted();
+    	if (isCapsLockUpdatePending) {
+    		isCapsLockUpdatePending = false;
+    		updateCapsLockState(getCurrentInputEditorInfo());
+    	}
     }
     
     /**
@@ -265,12 +450,15 @@ public class HexaKey extends InputMethodService
         switch (keyCode) {
             case '\n':
                 keyDownUp(KeyEvent.KEYCODE_ENTER);
+                // The editor decides what enter does
+                capsModeTracker.invalidate();
                 break;
             default:
                 if (keyCode >= '0' && keyCode <= '9') {
                     keyDownUp(keyCode - '0' + KeyEvent.KEYCODE_0);
+                    capsModeTracker.onTextCommitted(SingleCharacters.valueOf(keyCode));
                 } else {
-                    getCurrentInputConnection().commitText(String.valueOf((char) keyCode), 1);
+                    commitText(SingleCharacters.valueOf(keyCode));
                 }
                 break;
         }
@@ -279,9 +467,22 @@ public class HexaKey extends InputMethodService
     // Implementation of KeyboardViewListener
 
     public void onKey(int primaryCode, int[] keyCodes) {
+        if (LatencyTracer.enabled) {
+            LatencyTracer.keyDispatched();
+        }
         if (isWordSeparator(primaryCode)) {
+            if (composingWord.length() > 0) {
+                learnWord(autoCorrection != null ? autoCorrection : composingWord);
+            }
+            if (primaryCode != ' ') {
+                forgetPreviousWords(primaryCode == '.' || primaryCode == '!' || primaryCode == '?'
+                        || primaryCode == '\n');
+            }
+            applyAutoCorrection();
+            resetComposingWord();
             sendKey(primaryCode);
-            updateCapsLockState(getCurrentInputEditorInfo());
+            requestCapsLockUpdate();
+            updatePredictions();
         } 
         else if (primaryCode == Keyboard.KEYCODE_DELETE) {
             handleBackspace();
@@ -307,11 +508,19 @@ public class HexaKey extends InputMethodService
     }
 
     public void onText(CharSequence text) {
+        commitPipeline.flush();
         InputConnection ic = getCurrentInputConnection();
         if (ic == null) return;
+        if (composingWord.length() > 0) {
+            learnWord(composingWord);
+            resetComposingWord();
+        }
+        forgetPreviousWords(false);
+        clearPredictions();
         ic.beginBatchEdit();
         ic.commitText(text, 0);
         ic.endBatchEdit();
+        capsModeTracker.invalidate();
         updateCapsLockState(getCurrentInputEditorInfo());
     }
     
@@ -322,11 +531,56 @@ public class HexaKey extends InputMethodService
         } else if (isExtractViewShown()) {
             setCandidatesViewShown(true);
         }
+        if (candidateView != null) {
+        	candidateView.setSuggestions(suggestions, typedWordValid);
+        }
     }
     
     private void handleBackspace() {
+        if (deletePressTime != 0 && SystemClock.uptimeMillis() - deletePressTime >= WORD_DELETE_DELAY
+                && deleteWordBeforeCursor()) {
+            return;
+        }
+        
         keyDownUp(KeyEvent.KEYCODE_DEL);
-        updateCapsLockState(getCurrentInputEditorInfo());
+        requestCapsLockUpdate();
+        
+        if (composingWord.length() > 0) {
+        	composingWord.setLength(composingWord.length() - 1);
+        	composingTouches.removeLast();
+        	updateSuggestions();
+        }
+        else {
+        	forgetPreviousWords(false);
+        	clearPredictions();
+        }
+    }
+
+    /**
+     * Deletes the word before the cursor, and the spaces after it, with a single
+     * deleteSurroundingText, instead of a key event per character.
+     *
+     * @return false if nothing was deleted because the text before the cursor is
+     * not known
+     */
+    private boolean deleteWordBeforeCursor() {
+        // The local copy of the text already has the queued keys; if it must be read
+        // from the editor, the editor must have them too
+        if (!capsModeTracker.isValid()) {
+            commitPipeline.flush();
+        }
+        final int length = capsModeTracker.getLastWordLength(getCurrentInputConnection());
+        if (length == 0) {
+            return false;
+        }
+        
+        commitPipeline.deleteTextBeforeCursor(length);
+        capsModeTracker.onTextDeleted(length);
+        requestCapsLockUpdate();
+        resetComposingWord();
+        forgetPreviousWords(false);
+        clearPredictions();
+        return true;
     }
 
     private void handleShift() {
@@ -351,12 +605,205 @@ public class HexaKey extends InputMethodService
             }
         }
                         
-        getCurrentInputConnection().commitText(
-                    String.valueOf((char) primaryCode), 1);
+        commitText(SingleCharacters.valueOf(primaryCode));
         
         if (isAlphabet(primaryCode)) {            
-        	updateCapsLockState(getCurrentInputEditorInfo());
+        	requestCapsLockUpdate();
         }
+        
+        if (isPredictionOn && isAlphabet(primaryCode)) {
+        	composingWord.append((char) primaryCode);
+        	if (inputView != null && isTouchOf(inputView.getKeyboard(), primaryCode)) {
+        		final LatinKeyboard keyboard = (LatinKeyboard) inputView.getKeyboard();
+        		composingTouches.add(primaryCode, inputView.getLastTouchX(), 
+        				inputView.getLastTouchY(), keyboard.getSpatialModel());
+        	}
+        	else {
+        		composingTouches.add(primaryCode);
+        	}
+        	updateSuggestions();
+        }
+        else {
+        	resetComposingWord();
+        	forgetPreviousWords(false);
+        	clearPredictions();
+        }
+    }
+    
+    /**
+     * @return whether the last touch of the view is on the key of the character, so
+     * its neighbours are the alternatives of the character
+     */
+    private boolean isTouchOf(Keyboard keyboard, int primaryCode) {
+    	if (!(keyboard instanceof LatinKeyboard)) {
+    		return false;
+    	}
+    	final Keyboard.Key key = ((LatinKeyboard) keyboard).findKey(inputView.getLastTouchX(), 
+    			inputView.getLastTouchY());
+    	return key != null 
+    			&& Character.toLowerCase(key.codes[0]) == Character.toLowerCase(primaryCode);
+    }
+    
+    private void updateSuggestions() {
+    	autoCorrection = null;
+    	if (composingWord.length() > 0) {
+    		suggestionEngine.requestSuggestions(composingWord, composingTouches);
+    	}
+    	else {
+    		suggestionEngine.cancel();
+    		setSuggestions(null, false, false);
+    	}
+    }
+    
+    private void resetComposingWord() {
+    	if (composingWord.length() > 0) {
+    		composingWord.setLength(0);
+    		composingTouches.clear();
+    		updateSuggestions();
+    	}
+    }
+    
+    public void onSuggestions(List<String> suggestions, boolean typedWordValid, String correction) {
+    	arePredictionsShown = false;
+    	autoCorrection = correction;
+    	setSuggestions(suggestions, false, typedWordValid);
+    }
+    
+    public void onGesture(GesturePath path) {
+    	if (inputView.getKeyboard() instanceof LatinKeyboard) {
+    		final LatinKeyboard keyboard = (LatinKeyboard) inputView.getKeyboard();
+    		suggestionEngine.requestGesture(path, keyboard.getGestureLayout());
+    	}
+    }
+    
+    /**
+     * Commits the most likely word of the gesture, after a space if a word was being
+     * composed, and keeps it as the composing word so the other words of the gesture
+     * can replace it from the candidates view.
+     */
+    public void onGestureWords(List<String> words) {
+    	if (words.isEmpty()) {
+    		return;
+    	}
+    	
+    	if (composingWord.length() > 0) {
+    		learnWord(composingWord);
+    		resetComposingWord();
+    		commitText(SingleCharacters.valueOf(' '));
+    	}
+    	
+    	String word = words.get(0);
+    	if (inputView != null && inputView.isShifted()) {
+    		word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    		for (int i = 0; i < words.size(); i++) {
+    			words.set(i, SuggestionEngine.matchCase(words.get(i), word));
+    		}
+    	}
+    	commitText(word);
+    	requestCapsLockUpdate();
+    	
+    	composingWord.append(word);
+    	for (int i = 0; i < word.length(); i++) {
+    		composingTouches.add(word.charAt(i));
+    	}
+    	autoCorrection = null;
+    	arePredictionsShown = false;
+    	setSuggestions(words, false, true);
+    }
+    
+    /**
+     * Replaces the composing word with its correction, if one was found for it, before
+     * the separator is sent. A separator typed before the correction arrives leaves the
+     * word as typed.
+     */
+    private void applyAutoCorrection() {
+    	if (autoCorrection == null || composingWord.length() == 0) {
+    		return;
+    	}
+    	
+    	commitPipeline.deleteTextBeforeCursor(composingWord.length());
+    	capsModeTracker.onTextDeleted(composingWord.length());
+    	commitText(autoCorrection);
+    }
+    
+    /**
+     * Replaces the typed word with the suggestion picked from the candidates view,
+     * or adds the prediction picked, followed by a space.
+     */
+    public void pickSuggestion(String suggestion) {
+    	if (composingWord.length() > 0) {
+    		commitPipeline.deleteTextBeforeCursor(composingWord.length());
+    		capsModeTracker.onTextDeleted(composingWord.length());
+    	}
+    	else if (!arePredictionsShown) {
+    		return;
+    	}
+    	
+    	commitText(suggestion);
+    	commitText(SingleCharacters.valueOf(' '));
+    	requestCapsLockUpdate();
+    	learnWord(suggestion);
+    	resetComposingWord();
+    	updatePredictions();
+    }
+    
+    /**
+     * Shows the words that may follow a word and a space, or start a sentence, or
+     * clears the predictions shown. The predictions are discarded if something is
+     * typed before they arrive.
+     */
+    private void updatePredictions() {
+    	if (isPredictionOn && (previousWord != null || isSentenceStart)) {
+    		suggestionEngine.requestPredictions(wordBeforePrevious, previousWord);
+    	}
+    	else {
+    		clearPredictions();
+    	}
+    }
+    
+    private void clearPredictions() {
+    	suggestionEngine.cancel();
+    	if (arePredictionsShown) {
+    		arePredictionsShown = false;
+    		setSuggestions(null, false, false);
+    	}
+    }
+    
+    public void onPredictions(List<String> words) {
+    	if (words.isEmpty()) {
+    		clearPredictions();
+    		return;
+    	}
+    	
+    	if (inputView != null && inputView.isShifted()) {
+    		for (int i = 0; i < words.size(); i++) {
+    			final String word = words.get(i);
+    			words.set(i, Character.toUpperCase(word.charAt(0)) + word.substring(1));
+    		}
+    	}
+    	arePredictionsShown = true;
+    	setSuggestions(words, false, true);
+    }
+    
+    /**
+     * Forgets the words typed before, that are no longer the context of the next one.
+     */
+    private void forgetPreviousWords(boolean startsSentence) {
+    	previousWord = null;
+    	wordBeforePrevious = null;
+    	isSentenceStart = startsSentence;
+    }
+    
+    /**
+     * Adds a committed word to the user history, after the previous one. The words
+     * are only composed, and so learned, when predictions are on, never in passwords.
+     */
+    private void learnWord(CharSequence word) {
+    	final String learned = word.toString();
+    	suggestionEngine.learnWord(learned, previousWord);
+    	wordBeforePrevious = previousWord;
+    	previousWord = learned;
+    	isSentenceStart = false;
     }
     
     private boolean isAlphabet(int code) {
@@ -368,6 +815,7 @@ public class HexaKey extends InputMethodService
     }
 
     private void handleClose() {
+        commitPipeline.flush();
         requestHideSelf(0);
         inputView.closing();
     }
@@ -390,25 +838,27 @@ public class HexaKey extends InputMethodService
         final InputMethodSubtype newSubtype = inputMethodManager.getCurrentInputMethodSubtype();
         
         if (previousSubtype != newSubtype) {        	
-        	keyboardSet = new LatinKeyboardSet(this, newSubtype);
+        	keyboardSet = keyboardSetPool.get(this, newSubtype);
+        	keyboardSet.prepare(keyboardExecutor);
         	setLatinKeyboard(keyboardSet.getCurrentKeyboard());
+        	
+        	if (DEBUG) {
+        		Log.d(TAG, "Language switch: " + keyboardSetPool);
+        	}
         }
     }
     
-    private String getWordSeparators() {
-        return wordSeparators;
-    }
-    
     public boolean isWordSeparator(int code) {
-        String separators = getWordSeparators();
-        return separators.contains(String.valueOf((char)code));
+        return wordSeparators.contains(code);
     }
 
     public void swipeRight() {
     }
     
     public void swipeLeft() {
-        handleBackspace();
+        if (!deleteWordBeforeCursor()) {
+            handleBackspace();
+        }
     }
 
     public void swipeDown() {
@@ -419,8 +869,18 @@ public class HexaKey extends InputMethodService
     }
     
     public void onPress(int primaryCode) {
+        if (primaryCode == Keyboard.KEYCODE_DELETE) {
+            deletePressTime = SystemClock.uptimeMillis();
+        }
+        else if (primaryCode == Keyboard.KEYCODE_MODE_CHANGE) {
+            // The symbols are created while the key is down instead of on its release
+            keyboardSet.prepareModeChange(keyboardExecutor);
+        }
     }
     
     public void onRelease(int primaryCode) {
+        if (primaryCode == Keyboard.KEYCODE_DELETE) {
+            deletePressTime = 0;
+        }
     }
 }
@@ -0,0 +1,195 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package es.csc.android.hexakey;
+
+import java.util.HashMap;
+import java.util.List;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Typeface;
+import android.inputmethodservice.Keyboard.Key;
+import android.util.SparseArray;
+
+/**
+ * Draws the keys of a keyboard as hexagons, replacing the nine-patch background that
+ * {@link android.inputmethodservice.KeyboardView} stretches for every key.
+ * <p>
+ * The hexagon of every key size is a {@link Path} built once. The keys are drawn in 
+ * passes that share the paint: first all the faces, then the labels of one character,
+ * the longer labels and the icons, so the text of a size is drawn in a row.
+ */
+final class HexagonRenderer {
+    private final SparseArray<Path> hexagons = new SparseArray<Path>(2);
+    private final float faceInset;
+    private final Paint facePaint;
+    private final Paint keyTextPaint;
+    private final Paint labelTextPaint;
+    /** Upper case versions of the labels drawn shifted, created the first time. */
+    private final HashMap<String, String> upperCaseLabels = new HashMap<String, String>();
+    /** Which keys of the keyboard being drawn are inside the clip, reused between draws. */
+    private boolean[] isVisible = new boolean[0];
+
+    HexagonRenderer(Resources res) {
+        faceInset = res.getDimension(R.dimen.key_face_inset);
+        
+        facePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        facePaint.setColor(res.getColor(R.color.key_face));
+        
+        keyTextPaint = createTextPaint(res, R.dimen.key_text_size);
+        // KeyboardView draws the labels of more than one character in bold
+        labelTextPaint = createTextPaint(res, R.dimen.label_text_size);
+        labelTextPaint.setTypeface(Typeface.DEFAULT_BOLD);
+    }
+
+    private static Paint createTextPaint(Resources res, int textSizeResId) {
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(res.getColor(R.color.key_text));
+        paint.setTextAlign(Paint.Align.CENTER);
+        paint.setTextSize(res.getDimension(textSizeResId));
+        return paint;
+    }
+
+    /**
+     * @return the hexagon of the keys of the given size, with its top vertex at (width / 2, 0),
+     * shared by all the keys of that size
+     */
+    Path getHexagon(int width, int height) {
+        final int size = (width << 16) | height;
+        Path hexagon = hexagons.get(size);
+        if (hexagon == null) {
+            final float left = faceInset;
+            final float right = width - faceInset;
+            final float top = faceInset;
+            final float bottom = height - faceInset;
+            // The slanted sides cover a quarter of the height, the rows overlap as much
+            final float slant = height / 4f;
+            
+            hexagon = new Path();
+            hexagon.moveTo(width / 2f, top);
+            hexagon.lineTo(right, slant + faceInset / 2);
+            hexagon.lineTo(right, height - slant - faceInset / 2);
+            hexagon.lineTo(width / 2f, bottom);
+            hexagon.lineTo(left, height - slant - faceInset / 2);
+            hexagon.lineTo(left, slant + faceInset / 2);
+            hexagon.close();
+            hexagons.put(size, hexagon);
+        }
+        return hexagon;
+    }
+
+    /**
+     * Draws the keys whose bounds are not clipped out of the canvas.
+     * 
+     * @param left horizontal position of the keyboard in the canvas
+     * @param top vertical position of the keyboard in the canvas
+     */
+    void drawKeys(Canvas canvas, List<Key> keys, int left, int top, boolean isShifted) {
+        final int count = keys.size();
+        findVisibleKeys(canvas, keys, left, top);
+        
+        for (int i = 0; i < count; i++) {
+            final Key key = keys.get(i);
+            if (isVisible[i]) {
+                canvas.save();
+                canvas.translate(left + key.x, top + key.y);
+                canvas.drawPath(getHexagon(key.width, key.height), facePaint);
+                canvas.restore();
+            }
+        }
+        
+        for (int i = 0; i < count; i++) {
+            final Key key = keys.get(i);
+            if (isVisible[i] && key.icon == null && isKeyText(key)) {
+                drawLabel(canvas, key, left, top, isShifted, keyTextPaint);
+            }
+        }
+        
+        for (int i = 0; i < count; i++) {
+            final Key key = keys.get(i);
+            if (isVisible[i] && key.icon == null && key.label != null && !isKeyText(key)) {
+                drawLabel(canvas, key, left, top, isShifted, labelTextPaint);
+            }
+        }
+        
+        for (int i = 0; i < count; i++) {
+            final Key key = keys.get(i);
+            if (isVisible[i] && key.icon != null) {
+                final int iconWidth = key.icon.getIntrinsicWidth();
+                final int iconHeight = key.icon.getIntrinsicHeight();
+                canvas.save();
+                canvas.translate(left + key.x + (key.width - iconWidth) / 2, 
+                        top + key.y + (key.height - iconHeight) / 2);
+                key.icon.setBounds(0, 0, iconWidth, iconHeight);
+                key.icon.draw(canvas);
+                canvas.restore();
+            }
+        }
+    }
+
+    private void findVisibleKeys(Canvas canvas, List<Key> keys, int left, int top) {
+        if (isVisible.length < keys.size()) {
+            isVisible = new boolean[keys.size()];
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            final Key key = keys.get(i);
+            final int keyLeft = left + key.x;
+            final int keyTop = top + key.y;
+            isVisible[i] = key.width > 0 && key.height > 0 && !canvas.quickReject(keyLeft, keyTop, 
+                    keyLeft + key.width, keyTop + key.height, Canvas.EdgeType.AA);
+        }
+    }
+
+    /**
+     * @return whether the label of the key is drawn with the size of the characters,
+     * as KeyboardView does for the labels of one character
+     */
+    private static boolean isKeyText(Key key) {
+        return key.label != null && key.label.length() < 2 && key.codes.length < 2;
+    }
+
+    /**
+     * @return whether the label is drawn in upper case when the keyboard is shifted, 
+     * as KeyboardView does with the labels of up to two characters
+     */
+    static boolean isCaseSensitive(CharSequence label) {
+        return label != null && label.length() < 3 && Character.isLowerCase(label.charAt(0));
+    }
+
+    private void drawLabel(Canvas canvas, Key key, int left, int top, boolean isShifted,
+            Paint paint) {
+        CharSequence label = key.label;
+        if (isShifted && isCaseSensitive(label)) {
+            label = getUpperCaseLabel(label);
+        }
+        
+        final float x = left + key.x + key.width / 2f;
+        final float y = top + key.y + (key.height + paint.getTextSize() - paint.descent()) / 2;
+        canvas.drawText(label, 0, label.length(), x, y, paint);
+    }
+
+    private String getUpperCaseLabel(CharSequence label) {
+        final String lowerCaseLabel = label.toString();
+        String upperCaseLabel = upperCaseLabels.get(lowerCaseLabel);
+        if (upperCaseLabel == null) {
+            upperCaseLabel = lowerCaseLabel.toUpperCase();
+            upperCaseLabels.put(lowerCaseLabel, upperCaseLabel);
+        }
+        return upperCaseLabel;
+    }
+}
@@ -18,8 +18,12 @@ package es.csc.android.hexakey;
 
 import es.csc.android.hexakey.R;
 
+import java.io.File;
+import java.io.IOException;
+
 import android.content.Intent;
 import android.os.Bundle;
+import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import es.csc.android.hexakey.inputmethodcommon.InputMethodSettingsFragment;
 
@@ -27,6 +31,14 @@ import es.csc.android.hexakey.inputmethodcommon.InputMethodSettingsFragment;
  * Displays the IME preferences inside the input method setting.
  */
 public class ImePreferences extends PreferenceActivity {
+    static final String PREF_TRACE_LATENCY = "trace_latency";
+    /** Memory of the language model of each language, in KB, as a string. */
+    static final String PREF_PREDICTION_MEMORY = "prediction_memory";
+    static final String DEFAULT_PREDICTION_MEMORY = "2048";
+    private static final String PREF_LATENCY_REPORT = "latency_report";
+    private static final String PREF_DUMP_LATENCY = "dump_latency";
+    private static final String LATENCY_FILE_NAME = "latency.csv";
+    
     @Override
     public Intent getIntent() {
         final Intent modIntent = new Intent(super.getIntent());
@@ -52,6 +64,78 @@ public class ImePreferences extends PreferenceActivity {
 
             // Load the preferences from an XML resource
             addPreferencesFromResource(R.xml.ime_preferences);
+            
+            // The keyboard runs in the same process, so it sees the change at once
+            findPreference(PREF_TRACE_LATENCY).setOnPreferenceChangeListener(
+                    new Preference.OnPreferenceChangeListener() {
+                @Override
+                public boolean onPreferenceChange(Preference preference, Object newValue) {
+                    LatencyTracer.setEnabled((Boolean) newValue);
+                    updateLatencyReport();
+                    return true;
+                }
+            });
+            findPreference(PREF_LATENCY_REPORT).setOnPreferenceClickListener(
+                    new Preference.OnPreferenceClickListener() {
+                @Override
+                public boolean onPreferenceClick(Preference preference) {
+                    updateLatencyReport();
+                    return true;
+                }
+            });
+            findPreference(PREF_DUMP_LATENCY).setOnPreferenceClickListener(
+                    new Preference.OnPreferenceClickListener() {
+                @Override
+                public boolean onPreferenceClick(Preference preference) {
+                    dumpLatency(preference);
+                    return true;
+                }
+            });
+        }
+        
+        @Override
+        public void onResume() {
+            super.onResume();
+            updateLatencyReport();
+        }
+        
+        private void updateLatencyReport() {
+            final int[] kindNames = { R.string.latency_touch_to_key, R.string.latency_touch_to_commit,
+                    R.string.latency_draw, R.string.latency_keyboard_set, 
+                    R.string.latency_touch_to_highlight };
+            final int[] percentiles = { 50, 95, 99 };
+            final long[] durations = new long[percentiles.length];
+            final StringBuilder report = new StringBuilder();
+            for (int kind = 0; kind < LatencyTracer.KINDS; kind++) {
+                final String name = getString(kindNames[kind]);
+                final int count = LatencyTracer.getPercentiles(kind, percentiles, durations);
+                if (report.length() > 0) {
+                    report.append('\n');
+                }
+                if (count == 0) {
+                    report.append(getString(R.string.latency_no_samples, name));
+                }
+                else {
+                    report.append(getString(R.string.latency_percentiles, name, 
+                            durations[0] / 1e6, durations[1] / 1e6, durations[2] / 1e6, count));
+                }
+            }
+            findPreference(PREF_LATENCY_REPORT).setSummary(report);
+        }
+        
+        private void dumpLatency(Preference preference) {
+            File directory = getActivity().getExternalFilesDir(null);
+            if (directory == null) {
+                directory = getActivity().getFilesDir();
+            }
+            final File file = new File(directory, LATENCY_FILE_NAME);
+            try {
+                LatencyTracer.dump(file);
+                preference.setSummary(getString(R.string.dump_latency_done, file.getPath()));
+            }
+            catch (IOException e) {
+                preference.setSummary(getString(R.string.dump_latency_failed, e.getMessage()));
+            }
         }
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.Bitmap;
+
+/**
+ * Bitmaps with the size of the keyboard area, where {@link LatinKeyboardView} renders
+ * the key faces. Released bitmaps are kept for the next view that needs the same size,
+ * e.g. after a rotation and back, up to a maximum number of bytes.
+ */
+final class KeyboardBitmapPool {
+    private static final Bitmap.Config CONFIG = Bitmap.Config.ARGB_8888;
+
+    private final int maxFreeBytes;
+    private final List<Bitmap> freeBitmaps = new ArrayList<Bitmap>();
+
+    private int freeBytes;
+    private int usedBytes;
+    private int allocationCount;
+
+    KeyboardBitmapPool(int maxFreeBytes) {
+        this.maxFreeBytes = maxFreeBytes;
+    }
+
+    /**
+     * @return a bitmap of the given size, with undefined content
+     */
+    Bitmap acquire(int width, int height) {
+        Bitmap bitmap = null;
+        for (int i = freeBitmaps.size() - 1; i >= 0; i--) {
+            final Bitmap candidate = freeBitmaps.get(i);
+            if (candidate.getWidth() == width && candidate.getHeight() == height) {
+                bitmap = freeBitmaps.remove(i);
+                freeBytes -= bitmap.getByteCount();
+                break;
+            }
+        }
+
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, CONFIG);
+            allocationCount++;
+        }
+
+        usedBytes += bitmap.getByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Gives back a bitmap obtained with {@link #acquire(int, int)}. The oldest free
+     * bitmaps are recycled if the pool goes over its maximum size.
+     */
+    void release(Bitmap bitmap) {
+        final int bytes = bitmap.getByteCount();
+        usedBytes -= bytes;
+
+        freeBitmaps.add(bitmap);
+        freeBytes += bytes;
+        while (freeBytes > maxFreeBytes) {
+            final Bitmap oldest = freeBitmaps.remove(0);
+            freeBytes -= oldest.getByteCount();
+            oldest.recycle();
+        }
+    }
+
+    /**
+     * Recycles the free bitmaps.
+     */
+    void trim() {
+        for (Bitmap bitmap : freeBitmaps) {
+            bitmap.recycle();
+        }
+        freeBitmaps.clear();
+        freeBytes = 0;
+    }
+
+    /**
+     * @return the memory of the bitmaps in use and of the free ones, in bytes
+     */
+    int getByteCount() {
+        return usedBytes + freeBytes;
+    }
+
+    int getAllocationCount() {
+        return allocationCount;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyboardBitmapPool[used=" + usedBytes + "B, free=" + freeBytes
+                + "B, allocations=" + allocationCount + "]";
+    }
+}
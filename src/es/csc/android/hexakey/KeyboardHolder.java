@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import android.content.Context;
+
+/**
+ * Creates the keyboard of a layout only once, either in the background after
+ * {@link #prepare(Executor)} or on the first thread that asks for it.
+ */
+final class KeyboardHolder {
+    private final int xmlLayoutResId;
+    private final FutureTask<LatinKeyboard> task;
+
+    KeyboardHolder(final Context context, final int xmlLayoutResId) {
+        this.xmlLayoutResId = xmlLayoutResId;
+        task = new FutureTask<LatinKeyboard>(new Callable<LatinKeyboard>() {
+            @Override
+            public LatinKeyboard call() {
+                if (!LatencyTracer.enabled) {
+                    return LatinKeyboard.create(context, xmlLayoutResId);
+                }
+                
+                final long startTime = System.nanoTime();
+                final LatinKeyboard keyboard = LatinKeyboard.create(context, xmlLayoutResId);
+                LatencyTracer.record(LatencyTracer.KEYBOARD, startTime);
+                return keyboard;
+            }
+        });
+    }
+
+    int getLayoutResId() {
+        return xmlLayoutResId;
+    }
+
+    /**
+     * Queues the creation of the keyboard on the executor, unless it is already created.
+     */
+    void prepare(Executor executor) {
+        if (!task.isDone()) {
+            executor.execute(task);
+        }
+    }
+
+    boolean isReady() {
+        return task.isDone();
+    }
+
+    /**
+     * @return the keyboard, creating it in the calling thread if its creation has not
+     * started yet or waiting for it if it is in progress
+     */
+    LatinKeyboard get() {
+        // Does nothing if the task already run or is running in the background
+        task.run();
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times the keystrokes, from the finger going down to the key being dispatched and to
+ * its text being sent to the editor, the frames of the keyboard, the creation of the
+ * keyboards and the touches until their key is highlighted, keeping the last 
+ * {@link #CAPACITY} samples.
+ * <p>
+ * Every instrumented point checks {@link #enabled} before anything else, so it costs
+ * a single branch while tracing is off. The samples are written to a ring buffer
+ * without locks; a sample being written while they are read may be missed.
+ */
+final class LatencyTracer {
+    static final int TOUCH_TO_KEY = 0;
+    static final int TOUCH_TO_COMMIT = 1;
+    static final int DRAW = 2;
+    static final int KEYBOARD = 3;
+    static final int TOUCH_TO_HIGHLIGHT = 4;
+    static final int KINDS = 5;
+
+    private static final String[] KIND_NAMES = {
+        "touch_to_key", "touch_to_commit", "draw", "keyboard", "touch_to_highlight" };
+
+    /** Number of samples kept, a power of two. */
+    static final int CAPACITY = 4096;
+
+    /** Every sample is the kind in the highest byte and the duration in nanoseconds. */
+    private static final int KIND_SHIFT = 56;
+    private static final long DURATION_MASK = (1L << KIND_SHIFT) - 1;
+
+    /** Whether the samples are recorded. Only changed from the main thread. */
+    static boolean enabled;
+
+    private static final AtomicLongArray samples = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong sampleCount = new AtomicLong();
+
+    /** When the finger of the last key went down, 0 once the key is dispatched. */
+    private static long touchDownTime;
+    /** When the finger of the oldest key not sent to the editor went down, or 0. */
+    private static long uncommittedTime;
+
+    private LatencyTracer() {
+    }
+
+    static void setEnabled(boolean isEnabled) {
+        if (isEnabled && !enabled) {
+            clear();
+        }
+        enabled = isEnabled;
+    }
+
+    static void clear() {
+        touchDownTime = 0;
+        uncommittedTime = 0;
+        sampleCount.set(0);
+    }
+
+    static void touchDown() {
+        touchDownTime = System.nanoTime();
+    }
+
+    static void keyDispatched() {
+        if (touchDownTime != 0) {
+            record(TOUCH_TO_KEY, touchDownTime);
+            if (uncommittedTime == 0) {
+                uncommittedTime = touchDownTime;
+            }
+            touchDownTime = 0;
+        }
+    }
+
+    static void committed() {
+        if (uncommittedTime != 0) {
+            record(TOUCH_TO_COMMIT, uncommittedTime);
+            uncommittedTime = 0;
+        }
+    }
+
+    /**
+     * Records the time from startTime, a value of {@link System#nanoTime()}, to now.
+     */
+    static void record(int kind, long startTime) {
+        final long duration = Math.min(DURATION_MASK, Math.max(0, System.nanoTime() - startTime));
+        final long index = sampleCount.getAndIncrement();
+        samples.lazySet((int) (index & (CAPACITY - 1)), ((long) kind << KIND_SHIFT) | duration);
+    }
+
+    /**
+     * @param percentiles the percentiles wanted, between 0 and 100
+     * @param durations receives the duration of every percentile, in nanoseconds
+     * @return the number of samples of the kind
+     */
+    static int getPercentiles(int kind, int[] percentiles, long[] durations) {
+        final long[] kindDurations = getDurations(kind);
+        Arrays.sort(kindDurations);
+        for (int i = 0; i < percentiles.length; i++) {
+            durations[i] = kindDurations.length == 0 ? 0 : kindDurations[Math.max(0,
+                    (int) Math.ceil(kindDurations.length * percentiles[i] / 100.0) - 1)];
+        }
+        return kindDurations.length;
+    }
+
+    private static long[] getDurations(int kind) {
+        final int count = (int) Math.min(CAPACITY, sampleCount.get());
+        final long[] durations = new long[count];
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            final long sample = samples.get(i);
+            if ((int) (sample >>> KIND_SHIFT) == kind) {
+                durations[found++] = sample & DURATION_MASK;
+            }
+        }
+        return Arrays.copyOf(durations, found);
+    }
+
+    /**
+     * Writes the samples as CSV, one "kind,nanoseconds" line per sample.
+     */
+    static void dump(File file) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("kind,nanoseconds\n");
+            for (int kind = 0; kind < KINDS; kind++) {
+                for (long duration : getDurations(kind)) {
+                    writer.write(KIND_NAMES[kind] + "," + duration + "\n");
+                }
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+}
@@ -25,12 +25,15 @@ import android.content.res.Resources;
 import android.content.res.XmlResourceParser;
 import android.graphics.drawable.Drawable;
 import android.inputmethodservice.Keyboard;
+import android.util.DisplayMetrics;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputMethodManager;
 
 public class LatinKeyboard extends Keyboard {
 
     static final int KEYCODE_LANGUAGE_SWITCH = -101;
+    /** Geometries kept by a compiled keyboard, enough for portrait and landscape. */
+    private static final int MAX_GEOMETRIES = 2;
     
 	private List<Key> enterKeys;
     private Key spaceKey;
@@ -57,9 +60,42 @@ public class LatinKeyboard extends Keyboard {
      * {@link #languageSwitchKey} is changed.
      */
     private Key savedLanguageSwitchKey;
+    /**
+     * Maps touches to the hexagon under them. Null when the layout is not a hexagonal grid,
+     * in which case the default rectangular lookup of {@link Keyboard} is used.
+     */
+    private HexKeyIndex hexIndex;
+    /** Created the first time a word is typed on the keyboard. */
+    private SpatialModel spatialModel;
+    /** Created the first time a gesture is made on the keyboard. */
+    private GestureLayout gestureLayout;
+    
+    /**
+     * True if the keys come from a {@link CompiledLayout} instead of the XML parsed by
+     * {@link Keyboard}, which then knows nothing about the size of the keyboard or its
+     * shift keys.
+     */
+    private boolean isCompiled;
+    private CompiledLayout compiledLayout;
+    /** Sizes and positions of the keys for the current display size. */
+    private Geometry geometry;
+    /** The geometries already resolved, the most recently used last. */
+    private List<Geometry> geometries;
+    private List<Key> shiftKeys;
+    private int shiftKeyIndex = -1;
     
     public LatinKeyboard(Context context, int xmlLayoutResId) {
         super(context, xmlLayoutResId);
+        hexIndex = HexKeyIndex.build(getKeys(), getKeyWidth(), getKeyHeight(), getVerticalGap());
+    }
+
+    /**
+     * Creates the keyboard from a precompiled layout, without parsing its XML.
+     */
+    public LatinKeyboard(Context context, CompiledLayout layout) {
+        super(context, R.xml.compiled_keyboard);
+        loadCompiledLayout(context.getResources(), layout);
+        hexIndex = HexKeyIndex.build(getKeys(), getKeyWidth(), getKeyHeight(), getVerticalGap());
     }
 
     public LatinKeyboard(Context context, int layoutTemplateResId, 
@@ -67,10 +103,27 @@ public class LatinKeyboard extends Keyboard {
         super(context, layoutTemplateResId, characters, columns, horizontalPadding);
     }
 
+    /**
+     * Creates the keyboard of a layout, from its compiled version when there is one.
+     */
+    static LatinKeyboard create(Context context, int xmlLayoutResId) {
+        final CompiledLayout layout = CompiledLayouts.get(xmlLayoutResId);
+        if (layout == null) {
+            return new LatinKeyboard(context, xmlLayoutResId);
+        }
+        
+        return new LatinKeyboard(context, layout);
+    }
+
     @Override
     protected Key createKeyFromXml(Resources res, Row parent, int x, int y, 
             XmlResourceParser parser) {
-        Key key = new LatinKey(res, parent, x, y, parser);
+        Key key = new LatinKey(res, parent, x, y, parser, this);
+        registerSpecialKey(parent, key);
+        return key;
+    }
+    
+    private void registerSpecialKey(Row parent, Key key) {
         if (key.codes[0] == 10) {
         	if (enterKeys == null) {
         		enterKeys = new ArrayList<Key>(2);
@@ -82,13 +135,229 @@ public class LatinKeyboard extends Keyboard {
         } 
         else if (key.codes[0] == Keyboard.KEYCODE_MODE_CHANGE) {
             modeChangeKey = key;
-            savedModeChangeKey = new LatinKey(res, parent, x, y, parser);
+            savedModeChangeKey = new LatinKey(parent, key, this);
         } 
         else if (key.codes[0] == LatinKeyboard.KEYCODE_LANGUAGE_SWITCH) {
             languageSwitchKey = key;
-            savedLanguageSwitchKey = new LatinKey(res, parent, x, y, parser);
+            savedLanguageSwitchKey = new LatinKey(parent, key, this);
         }
-        return key;
+    }
+    
+    /**
+     * Adds the keys of a compiled layout, placing and sizing them the same way 
+     * {@link Keyboard} does when it parses the XML.
+     */
+    private void loadCompiledLayout(Resources res, CompiledLayout layout) {
+        isCompiled = true;
+        compiledLayout = layout;
+        geometries = new ArrayList<Geometry>(MAX_GEOMETRIES);
+        
+        final Geometry newGeometry = resolveGeometry(res);
+        setGeometry(newGeometry);
+        geometries.add(newGeometry);
+        
+        final List<Key> keys = getKeys();
+        shiftKeys = new ArrayList<Key>(2);
+        
+        int index = 0;
+        for (int rowLength : layout.rowLengths) {
+            final Row row = new Row(this);
+            row.defaultWidth = getKeyWidth();
+            row.defaultHeight = getKeyHeight();
+            row.defaultHorizontalGap = getHorizontalGap();
+            row.verticalGap = getVerticalGap();
+            
+            for (int i = 0; i < rowLength; i++, index++) {
+                final Key key = new LatinKey(res, row, newGeometry, layout, index, this);
+                keys.add(key);
+                if (key.codes[0] == KEYCODE_SHIFT) {
+                    if (shiftKeyIndex < 0) {
+                        shiftKeyIndex = keys.size() - 1;
+                    }
+                    shiftKeys.add(key);
+                    getModifierKeys().add(key);
+                }
+                else if (key.codes[0] == KEYCODE_ALT) {
+                    getModifierKeys().add(key);
+                }
+                registerSpecialKey(row, key);
+            }
+        }
+    }
+    
+    /**
+     * Resolves the sizes of the compiled layout for the current configuration and 
+     * places the keys, the same way {@link Keyboard} does when it parses the XML.
+     */
+    private Geometry resolveGeometry(Resources res) {
+        final CompiledLayout layout = compiledLayout;
+        final DisplayMetrics dm = res.getDisplayMetrics();
+        final Geometry newGeometry = new Geometry(dm.widthPixels, dm.heightPixels, 
+                layout.getKeyCount());
+        final int displayWidth = newGeometry.displayWidth;
+        final int displayHeight = newGeometry.displayHeight;
+        
+        newGeometry.keyWidth = layout.resolveKeyboardSize(res, CompiledLayout.KEYBOARD_KEY_WIDTH,
+                displayWidth, displayWidth / 10);
+        newGeometry.keyHeight = layout.resolveKeyboardSize(res, CompiledLayout.KEYBOARD_KEY_HEIGHT,
+                displayHeight, 50);
+        newGeometry.horizontalGap = layout.resolveKeyboardSize(res, 
+                CompiledLayout.KEYBOARD_HORIZONTAL_GAP, displayWidth, 0);
+        newGeometry.verticalGap = layout.resolveKeyboardSize(res, 
+                CompiledLayout.KEYBOARD_VERTICAL_GAP, displayHeight, 0);
+        
+        final int[] keyBounds = newGeometry.keyBounds;
+        int index = 0;
+        int y = 0;
+        for (int rowLength : layout.rowLengths) {
+            int x = 0;
+            for (int i = 0; i < rowLength; i++, index++) {
+                final int width = layout.resolveKeySize(res, index, CompiledLayout.KEY_WIDTH, 
+                        displayWidth, newGeometry.keyWidth);
+                final int gap = layout.resolveKeySize(res, index, CompiledLayout.KEY_GAP, 
+                        displayWidth, newGeometry.horizontalGap);
+                
+                final int offset = index * Geometry.KEY_BOUNDS;
+                keyBounds[offset + Geometry.X] = x + gap;
+                keyBounds[offset + Geometry.Y] = y;
+                keyBounds[offset + Geometry.WIDTH] = width;
+                keyBounds[offset + Geometry.HEIGHT] = layout.resolveKeySize(res, index, 
+                        CompiledLayout.KEY_HEIGHT, displayHeight, newGeometry.keyHeight);
+                keyBounds[offset + Geometry.GAP] = gap;
+                
+                x += gap + width;
+                newGeometry.totalWidth = Math.max(newGeometry.totalWidth, x);
+            }
+            y += newGeometry.verticalGap + newGeometry.keyHeight;
+        }
+        newGeometry.totalHeight = y - newGeometry.verticalGap;
+        return newGeometry;
+    }
+    
+    private void setGeometry(Geometry newGeometry) {
+        geometry = newGeometry;
+        setKeyWidth(newGeometry.keyWidth);
+        setKeyHeight(newGeometry.keyHeight);
+        setHorizontalGap(newGeometry.horizontalGap);
+        setVerticalGap(newGeometry.verticalGap);
+    }
+    
+    /**
+     * Places and sizes the keys again for the current configuration, e.g. after a 
+     * rotation, without creating them again. The geometries of the last display sizes 
+     * are kept, so rotating back and forth does not resolve them again.
+     * 
+     * @return false if the keyboard cannot be laid out again and must be created again,
+     * because it does not come from a compiled hexagonal layout
+     */
+    boolean relayout(Resources res) {
+        if (!isCompiled || hexIndex == null) {
+            return false;
+        }
+        
+        final DisplayMetrics dm = res.getDisplayMetrics();
+        if (geometry.isFor(dm.widthPixels, dm.heightPixels)) {
+            return true;
+        }
+        
+        // What depends on the positions of the keys goes with the old geometry
+        geometry.hexIndex = hexIndex;
+        geometry.spatialModel = spatialModel;
+        geometry.gestureLayout = gestureLayout;
+        
+        Geometry newGeometry = null;
+        for (int i = 0; i < geometries.size(); i++) {
+            if (geometries.get(i).isFor(dm.widthPixels, dm.heightPixels)) {
+                newGeometry = geometries.remove(i);
+                break;
+            }
+        }
+        if (newGeometry == null) {
+            newGeometry = resolveGeometry(res);
+            if (geometries.size() == MAX_GEOMETRIES) {
+                geometries.remove(0);
+            }
+        }
+        geometries.add(newGeometry);
+        
+        setGeometry(newGeometry);
+        final List<Key> keys = getKeys();
+        for (int i = 0; i < keys.size(); i++) {
+            newGeometry.place(keys.get(i), i);
+        }
+        if (modeChangeKey != null) {
+            savedModeChangeKey.x = modeChangeKey.x;
+            savedModeChangeKey.width = modeChangeKey.width;
+        }
+        if (languageSwitchKey != null) {
+            savedLanguageSwitchKey.width = languageSwitchKey.width;
+        }
+        
+        hexIndex = newGeometry.hexIndex;
+        if (hexIndex == null) {
+            hexIndex = HexKeyIndex.build(keys, getKeyWidth(), getKeyHeight(), getVerticalGap());
+        }
+        else {
+            hexIndex.clearLastLookup();
+        }
+        spatialModel = newGeometry.spatialModel;
+        gestureLayout = newGeometry.gestureLayout;
+        return hexIndex != null;
+    }
+    
+    @Override
+    public int getHeight() {
+        return isCompiled ? geometry.totalHeight : super.getHeight();
+    }
+    
+    @Override
+    public int getMinWidth() {
+        return isCompiled ? geometry.totalWidth : super.getMinWidth();
+    }
+    
+    @Override
+    public boolean setShifted(boolean shiftState) {
+        if (shiftKeys != null) {
+            for (Key shiftKey : shiftKeys) {
+                shiftKey.on = shiftState;
+            }
+        }
+        return super.setShifted(shiftState);
+    }
+    
+    SpatialModel getSpatialModel() {
+        if (spatialModel == null) {
+            spatialModel = new SpatialModel(this, getKeyWidth());
+        }
+        return spatialModel;
+    }
+    
+    GestureLayout getGestureLayout() {
+        if (gestureLayout == null) {
+            gestureLayout = GestureLayout.build(getKeys(), getKeyWidth());
+        }
+        return gestureLayout;
+    }
+    
+    /**
+     * @return the key whose hexagon contains the point, or null if there is none or
+     * the layout is not a hexagonal grid
+     */
+    Key findKey(int x, int y) {
+        return hexIndex == null ? null : hexIndex.findKey(x, y);
+    }
+    
+    @Override
+    public int getShiftKeyIndex() {
+        return isCompiled ? shiftKeyIndex : super.getShiftKeyIndex();
+    }
+
+    @Override
+    public int[] getNearestKeys(int x, int y) {
+        if (hexIndex == null) {
+            return super.getNearestKeys(x, y);
+        }
+        return hexIndex.getNearestKeys(x, y);
     }
 
     /**
@@ -112,6 +381,9 @@ public class LatinKeyboard extends Keyboard {
             languageSwitchKey.icon = null;
             languageSwitchKey.iconPreview = null;
         }
+        if (hexIndex != null) {
+            hexIndex.clearLastLookup();
+        }
     }
 
     /**
@@ -165,18 +437,116 @@ public class LatinKeyboard extends Keyboard {
 
     static class LatinKey extends Keyboard.Key {
         
+        private final LatinKeyboard keyboard;
+        
         public LatinKey(Resources res, Keyboard.Row parent, int x, int y,
-                XmlResourceParser parser) {
+                XmlResourceParser parser, LatinKeyboard keyboard) {
             super(res, parent, x, y, parser);
+            this.keyboard = keyboard;
+        }
+        
+        /**
+         * Creates the key at the given index of a compiled layout, placed by the geometry.
+         */
+        public LatinKey(Resources res, Keyboard.Row parent, Geometry geometry,
+                CompiledLayout layout, int index, LatinKeyboard keyboard) {
+            super(parent);
+            this.keyboard = keyboard;
+            
+            geometry.place(this, index);
+            codes = layout.getCodes(index);
+            label = layout.labels[index];
+            edgeFlags = layout.getKeyField(index, CompiledLayout.KEY_EDGE_FLAGS) | parent.rowEdgeFlags;
+            sticky = layout.hasFlag(index, CompiledLayout.FLAG_STICKY);
+            modifier = layout.hasFlag(index, CompiledLayout.FLAG_MODIFIER);
+            repeatable = layout.hasFlag(index, CompiledLayout.FLAG_REPEATABLE);
+            
+            final int iconResId = layout.getKeyField(index, CompiledLayout.KEY_ICON);
+            if (iconResId != 0) {
+                icon = res.getDrawable(iconResId);
+                icon.setBounds(0, 0, icon.getIntrinsicWidth(), icon.getIntrinsicHeight());
+            }
+        }
+        
+        /**
+         * Creates a copy of the size, position and appearance of a key.
+         */
+        public LatinKey(Keyboard.Row parent, Key key, LatinKeyboard keyboard) {
+            super(parent);
+            this.keyboard = keyboard;
+            
+            codes = key.codes;
+            label = key.label;
+            icon = key.icon;
+            iconPreview = key.iconPreview;
+            x = key.x;
+            y = key.y;
+            width = key.width;
+            height = key.height;
+            gap = key.gap;
+            edgeFlags = key.edgeFlags;
         }
         
         /**
          * Overriding this method so that we can reduce the target area for the key that
-         * closes the keyboard. 
+         * closes the keyboard, and so that hexagonal layouts use the shape of the keys
+         * instead of their bounding rectangles. 
          */
         @Override
         public boolean isInside(int x, int y) {
-            return super.isInside(x, codes[0] == KEYCODE_CANCEL ? y - 10 : y);
+            final int adjustedY = codes[0] == KEYCODE_CANCEL ? y - 10 : y;
+            if (keyboard.hexIndex != null) {
+                return keyboard.hexIndex.findKey(x, adjustedY) == this;
+            }
+            return super.isInside(x, adjustedY);
+        }
+    }
+    
+    /**
+     * Sizes and positions of the keys of a compiled layout for a display size, with 
+     * what is built from them.
+     */
+    private static final class Geometry {
+        // Fields of every key in the keyBounds array
+        static final int X = 0;
+        static final int Y = 1;
+        static final int WIDTH = 2;
+        static final int HEIGHT = 3;
+        static final int GAP = 4;
+        static final int KEY_BOUNDS = 5;
+        
+        final int displayWidth;
+        final int displayHeight;
+        final int[] keyBounds;
+        int keyWidth;
+        int keyHeight;
+        int horizontalGap;
+        int verticalGap;
+        int totalWidth;
+        int totalHeight;
+        
+        // Kept while the keyboard uses other geometry
+        HexKeyIndex hexIndex;
+        SpatialModel spatialModel;
+        GestureLayout gestureLayout;
+        
+        Geometry(int displayWidth, int displayHeight, int keyCount) {
+            this.displayWidth = displayWidth;
+            this.displayHeight = displayHeight;
+            keyBounds = new int[keyCount * KEY_BOUNDS];
+        }
+        
+        boolean isFor(int width, int height) {
+            return displayWidth == width && displayHeight == height;
+        }
+        
+        void place(Key key, int index) {
+            final int offset = index * KEY_BOUNDS;
+            key.x = keyBounds[offset + X];
+            key.y = keyBounds[offset + Y];
+            key.width = keyBounds[offset + WIDTH];
+            key.height = keyBounds[offset + HEIGHT];
+            key.gap = keyBounds[offset + GAP];
         }
     }
 
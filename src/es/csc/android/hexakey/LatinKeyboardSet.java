@@ -14,6 +14,9 @@
 
 package es.csc.android.hexakey;
 
+import java.util.Map;
+import java.util.concurrent.Executor;
+
 import android.content.Context;
 import android.content.res.Resources;
 import android.text.InputType;
@@ -24,47 +27,98 @@ public class LatinKeyboardSet {
 	public static final int LETTERS_KEYBOARD = 1;
 	public static final int NUMBERS_KEYBOARD = 2;
 	
-	private static LetterRecourcesCache letterResourcesCache;
-	
 	private Context context;
+	private String locale;
 	private int lettersResourceId;
 	
-    private LatinKeyboard lettersKeyboard;
-    private LatinKeyboard symbolsKeyboard;
-    private LatinKeyboard symbolsShiftedKeyboard;
-    private LatinKeyboard numbersKeyboard;
+    private KeyboardHolder lettersKeyboard;
+    private KeyboardHolder symbolsKeyboard;
+    private KeyboardHolder symbolsShiftedKeyboard;
+    private KeyboardHolder numbersKeyboard;
     
-    private LatinKeyboard defaultKeyboard;
-    private LatinKeyboard currentKeyboard;
+    private KeyboardHolder defaultKeyboard;
+    private KeyboardHolder currentKeyboard;
         
-    private long lastShiftTime;
-    private boolean capsLock;
-    
-    static {
-    	letterResourcesCache = new LetterRecourcesCache();
-    }
+    private final CapsLockDetector capsLockDetector = new CapsLockDetector();
     
 	public LatinKeyboardSet(Context context, InputMethodSubtype subtype) {
+		this(context, subtype, 
+				new KeyboardHolder(context, R.xml.symbols),
+				new KeyboardHolder(context, R.xml.symbols_shift),
+				new KeyboardHolder(context, R.xml.numbers));
+	}
+	
+	/**
+	 * Creates the set for another language, reusing the keyboards that do not depend 
+	 * on the locale (symbols and numbers) from an existing set.
+	 */
+	public LatinKeyboardSet(Context context, InputMethodSubtype subtype, LatinKeyboardSet shared) {
+		this(context, subtype, 
+				shared.symbolsKeyboard, shared.symbolsShiftedKeyboard, shared.numbersKeyboard);
+	}
+	
+	private LatinKeyboardSet(Context context, InputMethodSubtype subtype,
+			KeyboardHolder symbolsKeyboard, KeyboardHolder symbolsShiftedKeyboard, 
+			KeyboardHolder numbersKeyboard) {
 		this.context = context;
 		
-		lettersResourceId = letterResourcesCache.get(context, subtype);
-        lettersKeyboard = new LatinKeyboard(context, lettersResourceId);        					
+		locale = subtype.getLocale();
+		lettersResourceId = LetterLayouts.get(locale);
+        lettersKeyboard = new KeyboardHolder(context, lettersResourceId);        					
         						
-        symbolsKeyboard = new LatinKeyboard(context, R.xml.symbols);
-        symbolsShiftedKeyboard = new LatinKeyboard(context, R.xml.symbols_shift);
+        this.symbolsKeyboard = symbolsKeyboard;
+        this.symbolsShiftedKeyboard = symbolsShiftedKeyboard;
         
-        numbersKeyboard = new LatinKeyboard(context, R.xml.numbers);
+        this.numbersKeyboard = numbersKeyboard;
         
         defaultKeyboard = currentKeyboard = lettersKeyboard;
 	}
 	
-	public void recreateKeyboards() {
-		LatinKeyboard newLettersKeyboard = new LatinKeyboard(context, lettersResourceId);        					
+	public String getLocale() {
+		return locale;
+	}
+	
+	/**
+	 * Creates the current keyboard and the letters in the background. Until a keyboard 
+	 * is ready, asking for it waits for its creation. The symbols and numbers keyboards 
+	 * are only created when they are first needed or by {@link #prepareModeChange(Executor)}, 
+	 * most sessions never use them.
+	 */
+	public void prepare(Executor executor) {
+		currentKeyboard.prepare(executor);
+		lettersKeyboard.prepare(executor);
+	}
+	
+	/**
+	 * Creates in the background the keyboards that the mode change key leads to, 
+	 * while it is pressed.
+	 */
+	public void prepareModeChange(Executor executor) {
+		if (currentKeyboard == lettersKeyboard) {
+			symbolsKeyboard.prepare(executor);
+			symbolsShiftedKeyboard.prepare(executor);
+		}
+		else {
+			lettersKeyboard.prepare(executor);
+		}
+	}
+	
+	/**
+	 * Lays out the keyboards again for a new screen size. The keyboards already created
+	 * keep their keys, only resized and moved. The others are replaced with new ones, 
+	 * created when they are first needed or by {@link #prepare(Executor)}, so the ones 
+	 * never used are not created again.
+	 * 
+	 * @param relaidOut the holders already laid out again, e.g. by other sets that share
+	 * them, mapped to the holders that replace them; receives the ones of this set
+	 */
+	void relayoutKeyboards(Map<KeyboardHolder, KeyboardHolder> relaidOut) {
+		KeyboardHolder newLettersKeyboard = relayout(lettersKeyboard, relaidOut);
 		
-		LatinKeyboard newSymbolsKeyboard = new LatinKeyboard(context, R.xml.symbols);
-		LatinKeyboard newSymbolsShiftedKeyboard = new LatinKeyboard(context, R.xml.symbols_shift);
+		KeyboardHolder newSymbolsKeyboard = relayout(symbolsKeyboard, relaidOut);
+		KeyboardHolder newSymbolsShiftedKeyboard = relayout(symbolsShiftedKeyboard, relaidOut);
         
-		LatinKeyboard newNumbersKeyboard = new LatinKeyboard(context, R.xml.numbers);
+		KeyboardHolder newNumbersKeyboard = relayout(numbersKeyboard, relaidOut);
 		
 		updateDefaultKeyboard(newLettersKeyboard, newNumbersKeyboard);
 		
@@ -76,9 +130,28 @@ public class LatinKeyboardSet {
 		symbolsShiftedKeyboard = newSymbolsShiftedKeyboard;
 		numbersKeyboard = newNumbersKeyboard;	
 	}
+	
+	/**
+	 * @return the same holder if its keyboard was laid out again, or a new one for 
+	 * the same layout, only once for every holder
+	 */
+	private KeyboardHolder relayout(KeyboardHolder keyboard, 
+			Map<KeyboardHolder, KeyboardHolder> relaidOut) {
+		KeyboardHolder newKeyboard = relaidOut.get(keyboard);
+		if (newKeyboard == null) {
+			if (keyboard.isReady() && keyboard.get().relayout(context.getResources())) {
+				newKeyboard = keyboard;
+			}
+			else {
+				newKeyboard = new KeyboardHolder(context, keyboard.getLayoutResId());
+			}
+			relaidOut.put(keyboard, newKeyboard);
+		}
+		return newKeyboard;
+	}
 
-	private void updateDefaultKeyboard(LatinKeyboard newLettersKeyboard,
-			LatinKeyboard newNumbersKeyboard) {
+	private void updateDefaultKeyboard(KeyboardHolder newLettersKeyboard,
+			KeyboardHolder newNumbersKeyboard) {
 		if (defaultKeyboard == lettersKeyboard) {
 			defaultKeyboard = newLettersKeyboard;
 		}
@@ -87,10 +160,10 @@ public class LatinKeyboardSet {
 		}
 	}
 
-	private void updateCurrentKeyboard(LatinKeyboard newLettersKeyboard,
-			LatinKeyboard newSymbolsKeyboard,
-			LatinKeyboard newSymbolsShiftedKeyboard,
-			LatinKeyboard newNumbersKeyboard) {
+	private void updateCurrentKeyboard(KeyboardHolder newLettersKeyboard,
+			KeyboardHolder newSymbolsKeyboard,
+			KeyboardHolder newSymbolsShiftedKeyboard,
+			KeyboardHolder newNumbersKeyboard) {
 		
 		if (currentKeyboard == lettersKeyboard) {
 			this.currentKeyboard = newLettersKeyboard;
@@ -108,11 +181,25 @@ public class LatinKeyboardSet {
 	
 	public void resetStatus() {
 		currentKeyboard = defaultKeyboard;
-		capsLock = false;
+		capsLockDetector.cancelCapsLock();
 	}
 	
+	/**
+	 * Puts a reused set back in the state of a newly created one.
+	 */
+	public void restart() {
+		if (lettersKeyboard.isReady()) {
+			lettersKeyboard.get().setShifted(false);
+		}
+		defaultKeyboard = currentKeyboard = lettersKeyboard;
+		capsLockDetector.reset();
+	}
+	
+	/**
+	 * @return the current keyboard, waiting for its creation if it is not ready yet
+	 */
 	public LatinKeyboard getCurrentKeyboard() {
-		return currentKeyboard;
+		return currentKeyboard.get();
 	}
 
 	public void updateKeyboardType(EditorInfo attribute) {
@@ -174,7 +261,7 @@ public class LatinKeyboardSet {
 	}
 
 	public void setImeOptions(Resources res, int options) {
-		currentKeyboard.setImeOptions(res, options);	
+		currentKeyboard.get().setImeOptions(res, options);	
 	}
 
 	public void changeKeyboardMode() {
@@ -185,11 +272,11 @@ public class LatinKeyboardSet {
 			currentKeyboard = lettersKeyboard;
 		}		
 		
-		currentKeyboard.setShifted(false);
+		currentKeyboard.get().setShifted(false);
 	}
 	
 	public boolean isCapsLockEnabled() {
-		return capsLock;
+		return capsLockDetector.isCapsLock();
 	}
 
 	/**
@@ -204,29 +291,15 @@ public class LatinKeyboardSet {
         } 
         else if (currentKeyboard == symbolsKeyboard) {
         	currentKeyboard = symbolsShiftedKeyboard;
-        	symbolsShiftedKeyboard.setShifted(true);
+        	symbolsShiftedKeyboard.get().setShifted(true);
         } 
         else {
         	currentKeyboard = symbolsKeyboard;
-            symbolsKeyboard.setShifted(true);
+            symbolsKeyboard.get().setShifted(true);
         }
 	}
 	
     private void checkToggleCapsLock() {
-    	long now = System.currentTimeMillis();
-    	if (capsLock) {
-    		capsLock = false;
-    		lastShiftTime = 0;
-    	}
-    	else {
-    		if (lettersKeyboard.isShifted() && (lastShiftTime + 400 > now)) {
-	            capsLock = true;
-	            lastShiftTime = 0;
-	    	}
-	    	else {
-	        	capsLock = false;
-	            lastShiftTime = now;
-	        }
-    	}
+    	capsLockDetector.onShift(lettersKeyboard.get().isShifted(), System.currentTimeMillis());
     }
 }
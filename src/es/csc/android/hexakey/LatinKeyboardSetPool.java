@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.view.inputmethod.InputMethodSubtype;
+
+/**
+ * Keeps the keyboard sets of the last used languages, so switching between them
+ * does not inflate the layouts again. The least recently used set is discarded
+ * when the pool is full.
+ * <p>
+ * The sets created by the pool share the symbols and numbers keyboards, that
+ * do not depend on the locale.
+ */
+public class LatinKeyboardSetPool {
+	private final LinkedHashMap<String, LatinKeyboardSet> keyboardSets;
+
+	private int hitCount;
+	private int missCount;
+
+	public LatinKeyboardSetPool(final int capacity) {
+		keyboardSets = new LinkedHashMap<String, LatinKeyboardSet>(capacity + 1, 1f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, LatinKeyboardSet> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the set of keyboards for the subtype, in the state of a newly created set
+	 */
+	public LatinKeyboardSet get(Context context, InputMethodSubtype subtype) {
+		LatinKeyboardSet keyboardSet = keyboardSets.get(subtype.getLocale());
+		if (keyboardSet != null) {
+			hitCount++;
+			keyboardSet.restart();
+		}
+		else {
+			missCount++;
+			keyboardSet = createKeyboardSet(context, subtype);
+			keyboardSets.put(keyboardSet.getLocale(), keyboardSet);
+		}
+		return keyboardSet;
+	}
+
+	private LatinKeyboardSet createKeyboardSet(Context context, InputMethodSubtype subtype) {
+		Iterator<LatinKeyboardSet> pooledSets = keyboardSets.values().iterator();
+		if (pooledSets.hasNext()) {
+			return new LatinKeyboardSet(context, subtype, pooledSets.next());
+		}
+		else {
+			return new LatinKeyboardSet(context, subtype);
+		}
+	}
+
+	/**
+	 * Adds a set created outside the pool, replacing the one of the same locale.
+	 */
+	public void put(LatinKeyboardSet keyboardSet) {
+		keyboardSets.put(keyboardSet.getLocale(), keyboardSet);
+	}
+
+	/**
+	 * Lays out the keyboards of all the sets again for a new screen size. The keyboards
+	 * shared by the sets are laid out or replaced once, and stay shared.
+	 * 
+	 * @see LatinKeyboardSet#relayoutKeyboards(Map)
+	 */
+	public void relayoutKeyboards() {
+		final Map<KeyboardHolder, KeyboardHolder> relaidOut = 
+				new IdentityHashMap<KeyboardHolder, KeyboardHolder>();
+		for (LatinKeyboardSet keyboardSet : keyboardSets.values()) {
+			keyboardSet.relayoutKeyboards(relaidOut);
+		}
+	}
+
+	public int size() {
+		return keyboardSets.size();
+	}
+
+	public int getHitCount() {
+		return hitCount;
+	}
+
+	public int getMissCount() {
+		return missCount;
+	}
+
+	@Override
+	public String toString() {
+		return "LatinKeyboardSetPool[size=" + keyboardSets.size()
+				+ ", hits=" + hitCount + ", misses=" + missCount + "]";
+	}
+}
@@ -19,65 +19,277 @@ package es.csc.android.hexakey;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.Keyboard.Key;
 import android.inputmethodservice.KeyboardView;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
+import android.view.MotionEvent;
 import android.view.inputmethod.InputMethodSubtype;
 
+import java.util.List;
+
 public class LatinKeyboardView extends KeyboardView {
+    
+    interface GestureTypingListener {
+        /**
+         * Called when the finger that slid over the letters goes up. The path is
+         * reused for the next gesture.
+         */
+        void onGesture(GesturePath path);
+    }
 
     static final int KEYCODE_OPTIONS = -100;
     static final int DEFAULT_BACKGROUND_COLOR = 0xff000000;
+    /** Distance, in key widths, the finger must slide from a letter to start a gesture. */
+    private static final float GESTURE_START_KEY_WIDTHS = 1f;
+    /** Slowest slide, in dips per second, taken as a swipe instead of a gesture. */
+    private static final float SWIPE_MIN_VELOCITY = 1000f;
+    /** Longest path of a swipe, relative to the distance from its start. */
+    private static final float SWIPE_MAX_PATH_RATIO = 1.1f;
+    /** How far ahead, in milliseconds, the highlight follows a sliding finger. */
+    private static final float HIGHLIGHT_LOOKAHEAD_MS = 16f;
+    /** Farthest the highlight is placed ahead of the finger, in key widths. */
+    private static final float MAX_HIGHLIGHT_LOOKAHEAD_KEY_WIDTHS = 0.5f;
     
     private boolean isBackgroundColorCaptured = false;
     private int backgroundColor;
     
     private boolean isBackgroundCaptured = false;
     
+    /*
+     * KeyboardView dims the keys while the popup keyboard of a long press is shown, 
+     * drawing over them in its onDraw, that this view replaces.
+     */
+    private boolean isMiniKeyboardShown;
+    private final int miniKeyboardDimColor;
+    
+    /*
+     * The key faces are rendered once into a bitmap that is used as the background,
+     * so the parts of the neighbour hexagons cleared when a single key is redrawn
+     * are still visible. They are drawn by the renderer instead of KeyboardView, whose
+     * own buffer is never created.
+     */
+    private HexagonRenderer renderer;
+    private KeyboardBitmapPool bitmapPool;
+    private Bitmap keyFaces;
+    private Canvas keyFacesCanvas;
+    private BitmapDrawable keyFacesBackground;
+    
+    /*
+     * What was drawn for each key of the keyboard, so only the keys whose label, icon
+     * or state changed are redrawn.
+     */
+    private CharSequence[] drawnLabels;
+    private Drawable[] drawnIcons;
+    private boolean[] drawnOn;
+    private boolean[] drawnUpperCase;
+    /** Size of the drawn keyboard, that changes when it is laid out again. */
+    private int drawnWidth;
+    private int drawnHeight;
+    /** Bounds of the drawn keys, that change when the language switch key is hidden. */
+    private int[] drawnKeyX;
+    private int[] drawnKeyWidths;
+    /** Bounds of the keys that changed since they were drawn, reused. */
+    private final Rect changedArea = new Rect();
+    
+    /** Where the last key sent by KeyboardView was touched, in keyboard coordinates. */
+    private int lastTouchX;
+    private int lastTouchY;
+    /*
+     * When a second finger goes down, KeyboardView sends the key of the first one
+     * where it was last seen while alone, before any finger goes up, so that position 
+     * and the number of fingers of the last event are kept as KeyboardView does.
+     */
+    private int lastPointerCount = 1;
+    private int singlePointerX;
+    private int singlePointerY;
+    
+    private GestureTypingListener gestureListener;
+    private final GesturePath gesturePath = new GesturePath();
+    /** Whether the finger went down on a letter, so it may start a gesture. */
+    private boolean isGestureTracked;
+    /** Whether the finger slid far enough to be a gesture instead of a key press. */
+    private boolean isGesture;
+    private float gestureStartX;
+    private float gestureStartY;
+    private Paint gestureTrailPaint;
+    
+    /*
+     * The pressed key is highlighted by the view as soon as the finger goes down,
+     * drawing a bitmap of the hexagon rendered once for every key size.
+     */
+    private final SparseArray<Bitmap> highlights = new SparseArray<Bitmap>(2);
+    private Key highlightedKey;
+    private int highlightPointerId = -1;
+    /** When the finger of the highlighted key went down, 0 once the highlight is drawn. */
+    private long highlightTouchTime;
+    
 
     public LatinKeyboardView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        renderer = new HexagonRenderer(context.getResources());
+        bitmapPool = new KeyboardBitmapPool(0);
+        miniKeyboardDimColor = context.getResources().getColor(R.color.mini_keyboard_dim);
     }
 
     public LatinKeyboardView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
+        renderer = new HexagonRenderer(context.getResources());
+        bitmapPool = new KeyboardBitmapPool(0);
+        miniKeyboardDimColor = context.getResources().getColor(R.color.mini_keyboard_dim);
+    }
+    
+    /**
+     * Enables gesture typing, sliding the finger over the letters, or disables it if
+     * the listener is null.
+     */
+    void setGestureTypingListener(GestureTypingListener listener) {
+        gestureListener = listener;
+        if (listener == null) {
+            isGestureTracked = false;
+            isGesture = false;
+        }
+    }
+    
+    /**
+     * Sets the pool of the bitmaps for the key faces, shared with the views created
+     * later, e.g. after a rotation.
+     */
+    void setBitmapPool(KeyboardBitmapPool bitmapPool) {
+    	releaseKeyFaces();
+    	this.bitmapPool = bitmapPool;
     }
     
     @Override
     public void onDraw (Canvas canvas) {
-    	if(!isBackgroundCaptured) {
+    	if (LatencyTracer.enabled) {
+    		final long startTime = System.nanoTime();
+    		drawKeyboard(canvas);
+    		LatencyTracer.record(LatencyTracer.DRAW, startTime);
+    	}
+    	else {
+    		drawKeyboard(canvas);
+    	}
+    }
+    
+    private void drawKeyboard(Canvas canvas) {
+    	if (!isBackgroundCaptured && getWidth() > 0 && getHeight() > 0) {
     		if (!isBackgroundColorCaptured) {
     			isBackgroundColorCaptured = true;
     			captureBackgroundColor();
     		}
     		
     		isBackgroundCaptured = true;
-
-            Bitmap bitmap = createBitmapForCanvas(canvas);   
-            
-            canvas.setBitmap(bitmap);
-            
-            setBackgroundColor(canvas);
-            
-            super.onDraw(canvas);
-                                   
-            BitmapDrawable newBackground = getKeyboardScreenshot(bitmap);                        
-            this.setBackground(newBackground);                       
+    		captureKeyFaces();
+    		// The background of this frame was drawn before the key faces
+    		canvas.drawBitmap(keyFaces, 0, 0, null);
     	}
-    	else {
-    		super.onDraw(canvas);
+    	
+    	if (highlightedKey != null) {
+    		drawHighlight(canvas, highlightedKey);
+    	}
+    	if (isMiniKeyboardShown) {
+    		canvas.drawColor(miniKeyboardDimColor);
+    	}
+    	if (isGesture) {
+    		drawGestureTrail(canvas);
+    	}
+    }
+    
+    private void drawGestureTrail(Canvas canvas) {
+    	if (gestureTrailPaint == null) {
+    		gestureTrailPaint = new Paint();
+    		gestureTrailPaint.setAntiAlias(true);
+    		gestureTrailPaint.setColor(getResources().getColor(R.color.gesture_trail));
+    		gestureTrailPaint.setStrokeWidth(getResources().getDimension(R.dimen.gesture_trail_width));
+    		gestureTrailPaint.setStrokeCap(Paint.Cap.ROUND);
+    	}
+    	
+    	final float left = getPaddingLeft();
+    	final float top = getPaddingTop();
+    	for (int i = 1; i < gesturePath.size(); i++) {
+    		canvas.drawLine(left + gesturePath.getX(i - 1), top + gesturePath.getY(i - 1), 
+    				left + gesturePath.getX(i), top + gesturePath.getY(i), gestureTrailPaint);
     	}
     }
 
-	private Bitmap createBitmapForCanvas(Canvas canvas) {
-		int width = Math.max(1, canvas.getWidth());
-		int height = Math.max(1, canvas.getHeight()); 				
+	private void drawHighlight(Canvas canvas, Key key) {
+		canvas.drawBitmap(getHighlight(key.width, key.height), 
+				getPaddingLeft() + key.x, getPaddingTop() + key.y, null);
 		
-		return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		if (highlightTouchTime != 0) {
+			LatencyTracer.record(LatencyTracer.TOUCH_TO_HIGHLIGHT, highlightTouchTime);
+			highlightTouchTime = 0;
+		}
+	}
+	
+	/**
+	 * @return the highlight of the keys of the given size, a translucent hexagon
+	 */
+	private Bitmap getHighlight(int width, int height) {
+		final int size = (width << 16) | height;
+		Bitmap highlight = highlights.get(size);
+		if (highlight == null) {
+			final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+			paint.setColor(getResources().getColor(R.color.key_highlight));
+			
+			highlight = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+			new Canvas(highlight).drawPath(renderer.getHexagon(width, height), paint);
+			highlights.put(size, highlight);
+		}
+		return highlight;
+	}
+	
+	private void releaseHighlights() {
+		for (int i = 0; i < highlights.size(); i++) {
+			highlights.valueAt(i).recycle();
+		}
+		highlights.clear();
+	}
+
+	private void captureKeyFaces() {
+		if (keyFaces == null 
+				|| keyFaces.getWidth() != getWidth() || keyFaces.getHeight() != getHeight()) {
+			releaseKeyFaces();
+			
+			keyFaces = bitmapPool.acquire(getWidth(), getHeight());
+			keyFacesCanvas = new Canvas(keyFaces);
+			keyFacesBackground = new BitmapDrawable(getResources(), keyFaces);
+		}
+		
+		keyFacesCanvas.drawColor(backgroundColor, PorterDuff.Mode.SRC);
+		drawKeyFaces(keyFacesCanvas);
+		
+		if (getBackground() != keyFacesBackground) {
+			setBackground(keyFacesBackground);
+		}
+		else {
+			keyFacesBackground.invalidateSelf();
+		}
+	}
+
+	private void releaseKeyFaces() {
+		if (keyFaces != null) {
+			if (getBackground() == keyFacesBackground) {
+				setBackground(new ColorDrawable(backgroundColor));
+			}
+			
+			bitmapPool.release(keyFaces);
+			keyFaces = null;
+			keyFacesCanvas = null;
+			keyFacesBackground = null;
+		}
+		isBackgroundCaptured = false;
 	}
 
 	private void captureBackgroundColor() {
@@ -90,44 +302,451 @@ public class LatinKeyboardView extends KeyboardView {
 			backgroundColor = DEFAULT_BACKGROUND_COLOR;
 		}
 	}
+
+	private void drawKeyFaces(Canvas canvas) {
+		final Keyboard keyboard = getKeyboard();
+		if (keyboard != null) {
+			renderer.drawKeys(canvas, keyboard.getKeys(), getPaddingLeft(), getPaddingTop(), 
+					keyboard.isShifted());
+		}
+	}
+
+	@Override
+	public void setKeyboard(Keyboard keyboard) {
+		if (keyboard == getKeyboard() && drawnLabels != null && isBackgroundCaptured
+				&& keyboard.getMinWidth() == drawnWidth && keyboard.getHeight() == drawnHeight
+				&& haveSameBounds(keyboard.getKeys())) {
+			// The same keyboard, maybe with other enter label or shift state
+			invalidateChangedKeys();
+			return;
+		}
+		
+		highlightedKey = null;
+		super.setKeyboard(keyboard);
+		saveDrawnKeys();
+	}
 	
-	private void setBackgroundColor(Canvas canvas) {
-		int alpha = (backgroundColor & 0xf0000000) >> 24;
-		int red = (backgroundColor & 0x00f00000) >> 16;
-		int green = (backgroundColor & 0x0000f000) >> 8;
-		int blue = (backgroundColor & 0x000000f0);
+	/**
+	 * @return whether the keys are where they were drawn, with the same width
+	 */
+	private boolean haveSameBounds(List<Key> keys) {
+		if (keys.size() != drawnKeyX.length) {
+			return false;
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			final Key key = keys.get(i);
+			if (key.x != drawnKeyX[i] || key.width != drawnKeyWidths[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Same as the method of KeyboardView, but redraws only the keys that change.
+	 */
+	@Override
+	public boolean setShifted(boolean shifted) {
+		final Keyboard keyboard = getKeyboard();
+		if (keyboard == null || !keyboard.setShifted(shifted)) {
+			return false;
+		}
 		
-		canvas.drawARGB(alpha, red, green, blue);
+		invalidateChangedKeys();
+		return true;
 	}
-
-	private BitmapDrawable getKeyboardScreenshot(Bitmap bitmap) {
-		Bitmap KeyboardScreenshot = null;
-		if (isPortraitOrientation(bitmap)) {
-			KeyboardScreenshot = bitmap;
+	
+	/**
+	 * Redraws the keys whose label, icon or state changed since they were drawn.
+	 */
+	void invalidateChangedKeys() {
+		final Keyboard keyboard = getKeyboard();
+		if (keyboard == null || drawnLabels == null) {
+			return;
 		}
-		else {
-			KeyboardScreenshot = cutKeyboardArea(bitmap);				
+		
+		final List<Key> keys = keyboard.getKeys();
+		final boolean isShifted = keyboard.isShifted();
+		changedArea.setEmpty();
+		for (int i = 0; i < keys.size(); i++) {
+			saveChangedKey(i, keys.get(i), isShifted);
+		}
+		updateKeyFaces();
+	}
+	
+	/**
+	 * Called by KeyboardView when a key is pressed or released. The key is only redrawn
+	 * if its face changed; the pressed key is highlighted over the key faces instead.
+	 */
+	@Override
+	public void invalidateKey(int keyIndex) {
+		final Keyboard keyboard = getKeyboard();
+		if (keyboard == null || drawnLabels == null 
+				|| keyIndex < 0 || keyIndex >= drawnLabels.length) {
+			return;
+		}
+		changedArea.setEmpty();
+		saveChangedKey(keyIndex, keyboard.getKeys().get(keyIndex), keyboard.isShifted());
+		updateKeyFaces();
+	}
+	
+	@Override
+	public void invalidateAllKeys() {
+		// KeyboardView invalidates all the keys when it dismisses the popup keyboard
+		isMiniKeyboardShown = false;
+		isBackgroundCaptured = false;
+		invalidate();
+	}
+	
+	/**
+	 * Saves the new face of the key, if it changed since it was drawn, and adds its
+	 * bounds to the changed area.
+	 */
+	private void saveChangedKey(int index, Key key, boolean isShifted) {
+		final boolean isUpperCase = isShifted && HexagonRenderer.isCaseSensitive(key.label);
+		if (TextUtils.equals(key.label, drawnLabels[index]) && key.icon == drawnIcons[index]
+				&& key.on == drawnOn[index] && isUpperCase == drawnUpperCase[index]) {
+			return;
 		}
 		
-		return new BitmapDrawable(getResources(), KeyboardScreenshot);
+		drawnLabels[index] = key.label;
+		drawnIcons[index] = key.icon;
+		drawnOn[index] = key.on;
+		drawnUpperCase[index] = isUpperCase;
+		
+		final int left = getPaddingLeft() + key.x;
+		final int top = getPaddingTop() + key.y;
+		changedArea.union(left, top, left + key.width, top + key.height);
+		invalidateArea(key);
 	}
 	
-
+	private void saveDrawnKeys() {
+		final Keyboard keyboard = getKeyboard();
+		if (keyboard == null) {
+			drawnLabels = null;
+			return;
+		}
+		
+		final List<Key> keys = keyboard.getKeys();
+		final int count = keys.size();
+		if (drawnLabels == null || drawnLabels.length != count) {
+			drawnLabels = new CharSequence[count];
+			drawnIcons = new Drawable[count];
+			drawnOn = new boolean[count];
+			drawnUpperCase = new boolean[count];
+			drawnKeyX = new int[count];
+			drawnKeyWidths = new int[count];
+		}
+		
+		drawnWidth = keyboard.getMinWidth();
+		drawnHeight = keyboard.getHeight();
+		final boolean isShifted = keyboard.isShifted();
+		for (int i = 0; i < count; i++) {
+			final Key key = keys.get(i);
+			drawnLabels[i] = key.label;
+			drawnIcons[i] = key.icon;
+			drawnOn[i] = key.on;
+			drawnUpperCase[i] = isShifted && HexagonRenderer.isCaseSensitive(key.label);
+			drawnKeyX[i] = key.x;
+			drawnKeyWidths[i] = key.width;
+		}
+	}
+	
+	/**
+	 * Redraws the changed area of the key faces in a single pass, with the parts of 
+	 * the neighbours that overlap it. The bitmap is only read when the invalidated 
+	 * keys are drawn, so the background is not invalidated as a whole.
+	 */
+	private void updateKeyFaces() {
+		if (changedArea.isEmpty() || !isBackgroundCaptured || keyFacesCanvas == null) {
+			return;
+		}
+		
+		keyFacesCanvas.save();
+		keyFacesCanvas.clipRect(changedArea);
+		keyFacesCanvas.drawColor(backgroundColor, PorterDuff.Mode.SRC);
+		drawKeyFaces(keyFacesCanvas);
+		keyFacesCanvas.restore();
+	}
 
 	public void clearBackground() {
 		isBackgroundCaptured = false;
 	}
-
-	private boolean isPortraitOrientation(Bitmap bitmap) {
-		return bitmap.getWidth() < 700;
+	
+	@Override
+	public void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		isBackgroundCaptured = false;
+		releaseHighlights();
 	}
 	
-	private Bitmap cutKeyboardArea(Bitmap bitmap) {
-		return Bitmap.createBitmap(bitmap, 
-									0, bitmap.getHeight() - getHeight(),
-									getWidth(), getHeight());
+	@Override
+	public void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		releaseKeyFaces();
+		releaseHighlights();
 	}
 
+    /**
+     * Keeps the position where KeyboardView sends the key, traces when the finger
+     * goes down and highlights the key under it.
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent me) {
+        final int action = me.getActionMasked();
+        if (LatencyTracer.enabled 
+                && (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN)) {
+            LatencyTracer.touchDown();
+        }
+        trackTouchPosition(me);
+        
+        if (gestureListener != null && handleGesture(me)) {
+            setHighlightedKey(null);
+            return true;
+        }
+        trackHighlight(me);
+        return super.onTouchEvent(me);
+    }
+    
+    /**
+     * Follows the positions KeyboardView sends the keys at: the first finger on its
+     * own goes up where it is, and it is released where it was last seen alone when 
+     * a second finger goes down.
+     */
+    private void trackTouchPosition(MotionEvent me) {
+        final int pointerCount = me.getPointerCount();
+        if (pointerCount == 1) {
+            final int x = (int) me.getX() - getPaddingLeft();
+            final int y = (int) me.getY() - getPaddingTop();
+            if (lastPointerCount == 1) {
+                singlePointerX = x;
+                singlePointerY = y;
+            }
+            if (me.getActionMasked() == MotionEvent.ACTION_UP) {
+                lastTouchX = x;
+                lastTouchY = y;
+            }
+        }
+        else if (lastPointerCount == 1) {
+            lastTouchX = singlePointerX;
+            lastTouchY = singlePointerY;
+        }
+        lastPointerCount = pointerCount;
+    }
+    
+    /**
+     * Highlights the key under the last finger that went down in the same frame the
+     * touch is delivered, instead of after KeyboardView handles it. While the finger 
+     * slides, the highlight goes ahead of it, where the historical samples of the 
+     * event say it is going.
+     */
+    private void trackHighlight(MotionEvent me) {
+        switch (me.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                final int pointerIndex = me.getActionIndex();
+                highlightPointerId = me.getPointerId(pointerIndex);
+                setHighlightedKey(findKeyAt(me.getX(pointerIndex) - getPaddingLeft(), 
+                        me.getY(pointerIndex) - getPaddingTop()));
+                if (LatencyTracer.enabled && highlightedKey != null) {
+                    // From the time of the touch itself, not of its delivery to the view
+                    highlightTouchTime = System.nanoTime() 
+                            - (SystemClock.uptimeMillis() - me.getEventTime()) * 1000000L;
+                }
+                break;
+            }
+                
+            case MotionEvent.ACTION_MOVE: {
+                final int pointerIndex = me.findPointerIndex(highlightPointerId);
+                if (pointerIndex < 0 || highlightedKey == null) {
+                    break;
+                }
+                
+                float x = me.getX(pointerIndex) - getPaddingLeft();
+                float y = me.getY(pointerIndex) - getPaddingTop();
+                final long elapsedTime = me.getHistorySize() == 0 ? 0 
+                        : me.getEventTime() - me.getHistoricalEventTime(0);
+                if (elapsedTime > 0) {
+                    final float scale = HIGHLIGHT_LOOKAHEAD_MS / elapsedTime;
+                    float dx = (me.getX(pointerIndex) - me.getHistoricalX(pointerIndex, 0)) * scale;
+                    float dy = (me.getY(pointerIndex) - me.getHistoricalY(pointerIndex, 0)) * scale;
+                    
+                    final float maxDistance = highlightedKey.width * MAX_HIGHLIGHT_LOOKAHEAD_KEY_WIDTHS;
+                    final float distance = (float) Math.hypot(dx, dy);
+                    if (distance > maxDistance) {
+                        dx *= maxDistance / distance;
+                        dy *= maxDistance / distance;
+                    }
+                    x += dx;
+                    y += dy;
+                }
+                setHighlightedKey(findKeyAt(x, y));
+                break;
+            }
+                
+            case MotionEvent.ACTION_POINTER_UP:
+                if (me.getPointerId(me.getActionIndex()) == highlightPointerId) {
+                    setHighlightedKey(null);
+                }
+                break;
+                
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                setHighlightedKey(null);
+                break;
+                
+            default:
+                break;
+        }
+    }
+    
+    private void setHighlightedKey(Key key) {
+        if (key != null && (key.width <= 0 || key.height <= 0)) {
+            key = null;
+        }
+        if (key == highlightedKey) {
+            return;
+        }
+        
+        if (highlightedKey != null) {
+            invalidateArea(highlightedKey);
+        }
+        highlightedKey = key;
+        highlightTouchTime = 0;
+        if (key != null) {
+            invalidateArea(key);
+        }
+    }
+    
+    private void invalidateArea(Key key) {
+        final int left = getPaddingLeft() + key.x;
+        final int top = getPaddingTop() + key.y;
+        invalidate(left, top, left + key.width, top + key.height);
+    }
+    
+    /**
+     * Follows the finger that goes down on a letter. Once it slides far enough, the
+     * key press is cancelled and the events are not handled by KeyboardView until
+     * the finger goes up, unless the slide is a swipe, that is left to KeyboardView.
+     *
+     * @return whether the event is part of a gesture
+     */
+    private boolean handleGesture(MotionEvent me) {
+        final float x = me.getX() - getPaddingLeft();
+        final float y = me.getY() - getPaddingTop();
+        
+        switch (me.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                isGesture = false;
+                isGestureTracked = isLetterAt(x, y);
+                gesturePath.clear();
+                gesturePath.add(x, y);
+                gestureStartX = x;
+                gestureStartY = y;
+                return false;
+                
+            case MotionEvent.ACTION_MOVE:
+                if (!isGestureTracked) {
+                    return false;
+                }
+                for (int i = 0; i < me.getHistorySize(); i++) {
+                    gesturePath.add(me.getHistoricalX(i) - getPaddingLeft(), 
+                            me.getHistoricalY(i) - getPaddingTop());
+                }
+                gesturePath.add(x, y);
+                
+                if (!isGesture) {
+                    final LatinKeyboard keyboard = (LatinKeyboard) getKeyboard();
+                    final float startDistance = GesturePath.distance(gestureStartX, gestureStartY, x, y);
+                    if (startDistance < keyboard.getGestureLayout().getKeyWidth() * GESTURE_START_KEY_WIDTHS) {
+                        return false;
+                    }
+                    if (isSwipe(me, startDistance)) {
+                        // KeyboardView sends it to swipeLeft, swipeDown... when the finger goes up
+                        isGestureTracked = false;
+                        return false;
+                    }
+                    
+                    isGesture = true;
+                    final MotionEvent cancel = MotionEvent.obtain(me);
+                    cancel.setAction(MotionEvent.ACTION_CANCEL);
+                    super.onTouchEvent(cancel);
+                    cancel.recycle();
+                }
+                invalidate();
+                return true;
+                
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // Typing with two fingers
+                isGestureTracked = isGesture;
+                return isGesture;
+                
+            case MotionEvent.ACTION_UP:
+                isGestureTracked = false;
+                if (!isGesture) {
+                    return false;
+                }
+                
+                gesturePath.add(x, y);
+                isGesture = false;
+                invalidate();
+                gestureListener.onGesture(gesturePath);
+                return true;
+                
+            case MotionEvent.ACTION_CANCEL:
+                isGestureTracked = false;
+                if (isGesture) {
+                    isGesture = false;
+                    invalidate();
+                    return true;
+                }
+                return false;
+                
+            default:
+                return isGesture;
+        }
+    }
+    
+    /**
+     * @return whether the finger went straight and fast from where it went down, as 
+     * in a fling, and not along the letters of a word
+     */
+    private boolean isSwipe(MotionEvent me, float startDistance) {
+        final long duration = me.getEventTime() - me.getDownTime();
+        final float swipeDistance = SWIPE_MIN_VELOCITY * getResources().getDisplayMetrics().density 
+                * duration / 1000f;
+        return startDistance >= swipeDistance 
+                && gesturePath.getLength() <= startDistance * SWIPE_MAX_PATH_RATIO;
+    }
+    
+    private boolean isLetterAt(float x, float y) {
+        final Key key = findKeyAt(x, y);
+        return key != null && Character.isLetter(key.codes[0]);
+    }
+    
+    /**
+     * @return the hexagonal key at the position, relative to the keyboard, or null
+     */
+    private Key findKeyAt(float x, float y) {
+        if (!(getKeyboard() instanceof LatinKeyboard)) {
+            return null;
+        }
+        return ((LatinKeyboard) getKeyboard()).findKey((int) x, (int) y);
+    }
+    
+    /**
+     * @return the horizontal position of the last key sent, relative to the keyboard
+     */
+    int getLastTouchX() {
+        return lastTouchX;
+    }
+    
+    /**
+     * @return the vertical position of the last key sent, relative to the keyboard
+     */
+    int getLastTouchY() {
+        return lastTouchY;
+    }
 
     @Override
     protected boolean onLongPress(Key key) {
@@ -135,9 +754,12 @@ public class LatinKeyboardView extends KeyboardView {
             getOnKeyboardActionListener().onKey(KEYCODE_OPTIONS, null);
             return true;
         } 
-        else {
-            return super.onLongPress(key);
+        else if (super.onLongPress(key)) {
+            // Shown after KeyboardView invalidated all the keys for it
+            isMiniKeyboardShown = true;
+            return true;
         }
+        return false;
     }
 	
 	public void autoAdjustPadding(int maxWidth) {
@@ -149,6 +771,6 @@ public class LatinKeyboardView extends KeyboardView {
 	}
 
     void setSubtypeOnSpaceKey(final InputMethodSubtype subtype) {
-        invalidateAllKeys();
+        invalidateChangedKeys();
     }
 }
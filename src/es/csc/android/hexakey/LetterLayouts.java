@@ -0,0 +1,79 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package es.csc.android.hexakey;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Letters layout of each locale: res/xml/letters_&lt;locale&gt;, or letters_default if
+ * the locale has none. The layouts and the locales of the subtypes of res/xml/method.xml
+ * are known from {@link CompiledLayouts}, so no resource is ever looked up by name.
+ * <p>
+ * The layouts of the subtypes are found once, when the class is loaded. The map is
+ * never modified; a locale that is not of a subtype replaces it with a copy that has
+ * it, so it is read from any thread without locking.
+ */
+final class LetterLayouts {
+    private static final String DEFAULT_LOCALE = "default";
+
+    private static volatile Map<String, Integer> layouts;
+
+    static {
+        final Map<String, Integer> subtypeLayouts = new HashMap<String, Integer>();
+        for (String locale : CompiledLayouts.SUBTYPE_LOCALES) {
+            subtypeLayouts.put(locale, find(locale));
+        }
+        layouts = Collections.unmodifiableMap(subtypeLayouts);
+    }
+
+    private LetterLayouts() {
+    }
+
+    /**
+     * @return the id of the letters layout of the locale
+     */
+    static int get(String locale) {
+        final Integer layout = layouts.get(locale);
+        return layout != null ? layout : add(locale);
+    }
+
+    private static synchronized int add(String locale) {
+        final Map<String, Integer> current = layouts;
+        Integer layout = current.get(locale);
+        if (layout == null) {
+            layout = find(locale);
+            final Map<String, Integer> copy = new HashMap<String, Integer>(current);
+            copy.put(locale, layout);
+            layouts = Collections.unmodifiableMap(copy);
+        }
+        return layout;
+    }
+
+    private static int find(String locale) {
+        int defaultLayout = 0;
+        for (int i = 0; i < CompiledLayouts.LETTERS_LOCALES.length; i++) {
+            if (CompiledLayouts.LETTERS_LOCALES[i].equals(locale)) {
+                return CompiledLayouts.LETTERS_LAYOUTS[i];
+            }
+            if (CompiledLayouts.LETTERS_LOCALES[i].equals(DEFAULT_LOCALE)) {
+                defaultLayout = CompiledLayouts.LETTERS_LAYOUTS[i];
+            }
+        }
+        return defaultLayout;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package es.csc.android.hexakey;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Language model of the words that follow one or two others, read from a file built
+ * by the NgramBuilder tool (see tools/). The contexts are the previous word, or the
+ * two previous ones, identified by a 64 bit hash of their text, and each one has
+ * its most likely next words with their quantized cost, the negative logarithm of
+ * their probability in units of 1 / {@link #COST_SCALE}.
+ * <p>
+ * The file has a header, the words and the contexts, most frequent first:
+ * <pre>
+ * int magic, int version, int wordCount, int contextCount
+ * wordCount x (byte length, the chars)
+ * contextCount x (long hash, byte count, count x (char word number, byte cost))
+ * </pre>
+ * Only the contexts that fit in the memory budget are read, into primitive arrays.
+ * It does not change once read, so it can be used from any thread.
+ */
+final class NgramModel {
+    static final int MAGIC = 0x48584E47;
+    static final int VERSION = 1;
+    static final float COST_SCALE = 16;
+    /** Cost added to the words predicted from the previous word alone. */
+    static final int BACKOFF_COST = (int) (2 * COST_SCALE);
+
+    /** Separates the words of a context when they are hashed, it is not in any word. */
+    private static final char WORD_END = '\uffff';
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Estimated bytes of a context in the tables, without its predictions. */
+    private static final int CONTEXT_BYTES = 2 * (8 + 4);
+    private static final int PREDICTION_BYTES = 3;
+
+    private final char[] characters;
+    /** Where each word starts in characters, plus where the last one ends. */
+    private final int[] wordStarts;
+
+    /** Open addressing table of the contexts, 0 being an empty slot. */
+    private final long[] contextKeys;
+    /** For each slot, where its predictions start shifted 8 bits, and their count. */
+    private final int[] contextPredictions;
+    private final char[] predictedWords;
+    private final byte[] predictedCosts;
+
+    private NgramModel(char[] characters, int[] wordStarts, long[] contextKeys,
+            int[] contextPredictions, char[] predictedWords, byte[] predictedCosts) {
+        this.characters = characters;
+        this.wordStarts = wordStarts;
+        this.contextKeys = contextKeys;
+        this.contextPredictions = contextPredictions;
+        this.predictedWords = predictedWords;
+        this.predictedCosts = predictedCosts;
+    }
+
+    /**
+     * Reads the model, skipping the least frequent contexts that do not fit in the
+     * given number of bytes.
+     */
+    static NgramModel read(InputStream stream, int memoryBudget) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a language model of version " + VERSION);
+        }
+        final int wordCount = in.readInt();
+        final int contextCount = in.readInt();
+
+        final int[] wordStarts = new int[wordCount + 1];
+        char[] characters = new char[wordCount * 8];
+        int charactersLength = 0;
+        for (int i = 0; i < wordCount; i++) {
+            final int length = in.readUnsignedByte();
+            if (charactersLength + length > characters.length) {
+                characters = Arrays.copyOf(characters, Math.max(characters.length * 2, charactersLength + length));
+            }
+            for (int c = 0; c < length; c++) {
+                characters[charactersLength++] = in.readChar();
+            }
+            wordStarts[i + 1] = charactersLength;
+        }
+        characters = Arrays.copyOf(characters, charactersLength);
+
+        int budget = memoryBudget - charactersLength * 2 - wordStarts.length * 4;
+        long[] keys = new long[Math.min(contextCount, 1024)];
+        int[] counts = new int[keys.length];
+        char[] words = new char[keys.length * 4];
+        byte[] costs = new byte[words.length];
+        int loaded = 0;
+        int predictionCount = 0;
+        for (int i = 0; i < contextCount; i++) {
+            final long key = in.readLong();
+            final int count = in.readUnsignedByte();
+            budget -= CONTEXT_BYTES + count * PREDICTION_BYTES;
+            if (budget < 0) {
+                break;
+            }
+
+            if (loaded == keys.length) {
+                keys = Arrays.copyOf(keys, loaded * 2);
+                counts = Arrays.copyOf(counts, loaded * 2);
+            }
+            if (predictionCount + count > words.length) {
+                words = Arrays.copyOf(words, Math.max(words.length * 2, predictionCount + count));
+                costs = Arrays.copyOf(costs, words.length);
+            }
+            keys[loaded] = key(key);
+            counts[loaded] = count;
+            loaded++;
+            for (int p = 0; p < count; p++) {
+                words[predictionCount] = in.readChar();
+                costs[predictionCount] = in.readByte();
+                predictionCount++;
+            }
+        }
+
+        int slots = 2;
+        while (slots < loaded * 2) {
+            slots *= 2;
+        }
+        final long[] contextKeys = new long[slots];
+        final int[] contextPredictions = new int[slots];
+        int start = 0;
+        for (int i = 0; i < loaded; i++) {
+            final int slot = findSlot(contextKeys, keys[i]);
+            contextKeys[slot] = keys[i];
+            contextPredictions[slot] = (start << 8) | counts[i];
+            start += counts[i];
+        }
+        return new NgramModel(characters, wordStarts, contextKeys, contextPredictions,
+                Arrays.copyOf(words, predictionCount), Arrays.copyOf(costs, predictionCount));
+    }
+
+    /**
+     * Finds the words most likely to follow the previous ones, from the two previous
+     * words and then from the previous one alone.
+     *
+     * @param wordBeforePrevious the word before the previous one, or null
+     * @param previousWord the previous word, or null at the start of a sentence
+     * @param words receives the words, lowest cost first
+     * @param costs receives the cost of each word
+     * @return the number of words found, at most the length of the arrays
+     */
+    int predict(CharSequence wordBeforePrevious, CharSequence previousWord, String[] words, int[] costs) {
+        int count = 0;
+        if (wordBeforePrevious != null && previousWord != null) {
+            count = addPredictions(hash(hash(FNV_OFFSET, wordBeforePrevious), previousWord), 0,
+                    words, costs, count);
+        }
+        return addPredictions(hash(FNV_OFFSET, previousWord), count > 0 ? BACKOFF_COST : 0,
+                words, costs, count);
+    }
+
+    private int addPredictions(long hash, int backoffCost, String[] words, int[] costs, int count) {
+        final int slot = findSlot(contextKeys, key(hash));
+        if (contextKeys[slot] == 0) {
+            return count;
+        }
+
+        final int start = contextPredictions[slot] >>> 8;
+        final int end = start + (contextPredictions[slot] & 0xff);
+        final int maxResults = Math.min(words.length, costs.length);
+        for (int i = start; i < end; i++) {
+            final int cost = (predictedCosts[i] & 0xff) + backoffCost;
+            final String word = getWord(predictedWords[i]);
+            count = insert(word, cost, words, costs, count, maxResults);
+        }
+        return count;
+    }
+
+    /**
+     * Adds a word to the results sorted by cost, unless it is there with a lower
+     * cost or all the results have a lower cost.
+     *
+     * @return the new number of results
+     */
+    static int insert(String word, int cost, String[] words, int[] costs, int count, int maxResults) {
+        for (int i = 0; i < count; i++) {
+            if (words[i].equals(word)) {
+                if (costs[i] <= cost) {
+                    return count;
+                }
+                System.arraycopy(words, i + 1, words, i, count - i - 1);
+                System.arraycopy(costs, i + 1, costs, i, count - i - 1);
+                count--;
+                break;
+            }
+        }
+        if (count == maxResults && cost >= costs[count - 1]) {
+            return count;
+        }
+
+        int i = count < maxResults ? count++ : count - 1;
+        while (i > 0 && costs[i - 1] > cost) {
+            words[i] = words[i - 1];
+            costs[i] = costs[i - 1];
+            i--;
+        }
+        words[i] = word;
+        costs[i] = cost;
+        return count;
+    }
+
+    private String getWord(int number) {
+        return new String(characters, wordStarts[number], wordStarts[number + 1] - wordStarts[number]);
+    }
+
+    /**
+     * Hashes a word of a context, in lower case, after the words already hashed. The
+     * beginning of a sentence is a null word, hashed as an empty one.
+     */
+    static long hash(long hash, CharSequence word) {
+        if (word != null) {
+            for (int i = 0; i < word.length(); i++) {
+                hash = (hash ^ Character.toLowerCase(word.charAt(i))) * FNV_PRIME;
+            }
+        }
+        return (hash ^ WORD_END) * FNV_PRIME;
+    }
+
+    private static long key(long hash) {
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static int findSlot(long[] keys, long key) {
+        final int mask = keys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
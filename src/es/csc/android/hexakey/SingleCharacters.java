@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.util.List;
+
+import android.inputmethodservice.Keyboard;
+
+/**
+ * Shared strings of one character, so committing a key does not allocate.
+ */
+final class SingleCharacters {
+    /** Covers ASCII, Latin-1 and Latin Extended-A/B, where the letters of the layouts are. */
+    private static final int CACHE_SIZE = 0x250;
+
+    private static final String[] strings = new String[CACHE_SIZE];
+
+    private SingleCharacters() {
+    }
+
+    /**
+     * Creates the strings of the characters of the keys, in lower and upper case.
+     */
+    static void prepare(Keyboard keyboard) {
+        final List<Keyboard.Key> keys = keyboard.getKeys();
+        for (int i = 0; i < keys.size(); i++) {
+            final int[] codes = keys.get(i).codes;
+            for (int j = 0; j < codes.length; j++) {
+                valueOf(codes[j]);
+                valueOf(Character.toUpperCase(codes[j]));
+            }
+        }
+    }
+
+    /**
+     * @return the string of the character, the same instance for every call if the
+     * character is cached
+     */
+    static String valueOf(int code) {
+        if (code < 0 || code >= CACHE_SIZE) {
+            return String.valueOf((char) code);
+        }
+
+        String string = strings[code];
+        if (string == null) {
+            string = String.valueOf((char) code).intern();
+            strings[code] = string;
+        }
+        return string;
+    }
+}
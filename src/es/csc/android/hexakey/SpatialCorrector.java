@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+/**
+ * Finds the dictionary word the touches of a typed word most likely meant, combining
+ * the likelihood of every letter given by the {@link SpatialModel} with the frequency
+ * of the word.
+ * <p>
+ * The words are built letter by letter keeping only the {@link #BEAM_SIZE} best
+ * prefixes that start some word, so the cost is bounded by the length of the word,
+ * whatever the size of the dictionary. All the buffers are allocated once; it must
+ * be used from one thread at a time.
+ */
+final class SpatialCorrector {
+    static final int BEAM_SIZE = 8;
+
+    /** Weight of the frequency of the word against the likelihood of the touches. */
+    private static final float LANGUAGE_WEIGHT = 1f;
+    /** Log probability given to a word that is not in the dictionary. */
+    private static final float UNKNOWN_WORD_SCORE = (float) Math.log(0.5 / Dictionary.MAX_FREQUENCY);
+    /** How much more likely than the typed word a correction must be, as a log ratio. */
+    private static final float CONFIDENCE_MARGIN = (float) Math.log(4);
+
+    private static final int MAX_LENGTH = TouchSequence.MAX_LENGTH;
+
+    private char[][] beam = new char[BEAM_SIZE][MAX_LENGTH];
+    private float[] beamScores = new float[BEAM_SIZE];
+    private int beamCount;
+
+    private char[][] nextBeam = new char[BEAM_SIZE][MAX_LENGTH];
+    private float[] nextBeamScores = new float[BEAM_SIZE];
+    private int nextBeamCount;
+
+    private final StringBuilder candidate = new StringBuilder(MAX_LENGTH);
+
+    /**
+     * @return the word that should replace the typed one, in lower case, or null if
+     * the typed word is in the dictionary or no word is likely enough
+     */
+    String correct(TouchSequence touches, Dictionary dictionary) {
+        final int length = touches.length();
+        if (length < 2 || !touches.isComplete()) {
+            return null;
+        }
+
+        // Score of the typed word: its letters and the frequency of the word
+        candidate.setLength(0);
+        float typedScore = 0;
+        for (int i = 0; i < length; i++) {
+            candidate.append((char) touches.getCode(i, 0));
+            typedScore += touches.getScore(i, 0);
+        }
+        final int typedFrequency = dictionary.getFrequency(candidate);
+        if (typedFrequency > 0) {
+            return null;
+        }
+        typedScore += UNKNOWN_WORD_SCORE * LANGUAGE_WEIGHT;
+
+        beamCount = 1;
+        beamScores[0] = 0;
+        for (int position = 0; position < length && beamCount > 0; position++) {
+            nextBeamCount = 0;
+            for (int b = 0; b < beamCount; b++) {
+                for (int a = 0; a < touches.getAlternativeCount(position); a++) {
+                    final float score = beamScores[b] + touches.getScore(position, a);
+                    if (nextBeamCount == BEAM_SIZE && score <= nextBeamScores[BEAM_SIZE - 1]) {
+                        continue;
+                    }
+
+                    candidate.setLength(0);
+                    candidate.append(beam[b], 0, position);
+                    candidate.append((char) touches.getCode(position, a));
+                    if (dictionary.hasPrefix(candidate)) {
+                        addToNextBeam(beam[b], position, (char) touches.getCode(position, a), score);
+                    }
+                }
+            }
+            swapBeams();
+        }
+
+        int best = -1;
+        float bestScore = typedScore + CONFIDENCE_MARGIN;
+        for (int b = 0; b < beamCount; b++) {
+            candidate.setLength(0);
+            candidate.append(beam[b], 0, length);
+            final int frequency = dictionary.getFrequency(candidate);
+            if (frequency == 0) {
+                continue;
+            }
+
+            final float score = beamScores[b]
+                    + LANGUAGE_WEIGHT * (float) Math.log((double) frequency / Dictionary.MAX_FREQUENCY);
+            if (score > bestScore) {
+                best = b;
+                bestScore = score;
+            }
+        }
+        return best < 0 ? null : new String(beam[best], 0, length);
+    }
+
+    /**
+     * Inserts the prefix in the next beam, sorted by score, dropping the worst one
+     * if the beam is full.
+     */
+    private void addToNextBeam(char[] prefix, int prefixLength, char letter, float score) {
+        int i = nextBeamCount < BEAM_SIZE ? nextBeamCount++ : BEAM_SIZE - 1;
+        final char[] slot = nextBeam[i];
+        while (i > 0 && nextBeamScores[i - 1] < score) {
+            nextBeam[i] = nextBeam[i - 1];
+            nextBeamScores[i] = nextBeamScores[i - 1];
+            i--;
+        }
+
+        System.arraycopy(prefix, 0, slot, 0, prefixLength);
+        slot[prefixLength] = letter;
+        nextBeam[i] = slot;
+        nextBeamScores[i] = score;
+    }
+
+    private void swapBeams() {
+        final char[][] words = beam;
+        beam = nextBeam;
+        nextBeam = words;
+
+        final float[] scores = beamScores;
+        beamScores = nextBeamScores;
+        nextBeamScores = scores;
+
+        beamCount = nextBeamCount;
+    }
+}
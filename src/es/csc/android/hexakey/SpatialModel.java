@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.util.List;
+
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+
+/**
+ * Likelihood of the letters a touch may have meant: the letter of the touched hexagon
+ * and those of its neighbours, by the distance from the touch to their centers.
+ * The touches are assumed to spread around the center of the key as a normal
+ * distribution.
+ */
+final class SpatialModel {
+    /** The touched key and its six neighbours. */
+    static final int MAX_ALTERNATIVES = 7;
+
+    /** Standard deviation of the touches around the center of a key, in key widths. */
+    private static final float SIGMA_KEY_WIDTHS = 0.5f;
+
+    private final Keyboard keyboard;
+    private final List<Key> keys;
+    private final float inverseTwoSigmaSquared;
+
+    SpatialModel(Keyboard keyboard, int keyWidth) {
+        this.keyboard = keyboard;
+        keys = keyboard.getKeys();
+
+        final float sigma = Math.max(1, keyWidth) * SIGMA_KEY_WIDTHS;
+        inverseTwoSigmaSquared = 1 / (2 * sigma * sigma);
+    }
+
+    /**
+     * Finds the letters the touch may have meant. The typed letter is the first one
+     * even if the touch is closer to another key, e.g. because the key was selected
+     * when the finger went down.
+     *
+     * @param code the letter typed, in lower case
+     * @param codes receives the letters, in lower case
+     * @param scores receives the log likelihood of each letter, normalized so the
+     * likelihoods of all the letters add up to 1
+     * @param offset position of the first letter in the arrays
+     * @return the number of letters, between 1 and {@link #MAX_ALTERNATIVES}
+     */
+    int getAlternatives(int x, int y, int code, int[] codes, float[] scores, int offset) {
+        codes[offset] = code;
+        scores[offset] = 0;
+        int count = 1;
+
+        final int[] nearestKeys = keyboard.getNearestKeys(x, y);
+        for (int i = 0; i < nearestKeys.length; i++) {
+            final Key key = keys.get(nearestKeys[i]);
+            final int keyCode = Character.toLowerCase(key.codes[0]);
+            if (key.width == 0 || !Character.isLetter(keyCode)) {
+                continue;
+            }
+
+            final float score = -key.squaredDistanceFrom(x, y) * inverseTwoSigmaSquared;
+            if (keyCode == code) {
+                scores[offset] = score;
+            }
+            else if (count < MAX_ALTERNATIVES && !contains(codes, offset, count, keyCode)) {
+                codes[offset + count] = keyCode;
+                scores[offset + count] = score;
+                count++;
+            }
+        }
+
+        normalize(scores, offset, count);
+        return count;
+    }
+
+    private static boolean contains(int[] codes, int offset, int count, int code) {
+        for (int i = offset; i < offset + count; i++) {
+            if (codes[i] == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Turns the scores into log probabilities, subtracting the log of the sum of
+     * their exponentials.
+     */
+    private static void normalize(float[] scores, int offset, int count) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = offset; i < offset + count; i++) {
+            max = Math.max(max, scores[i]);
+        }
+
+        double sum = 0;
+        for (int i = offset; i < offset + count; i++) {
+            sum += Math.exp(scores[i] - max);
+        }
+
+        final float logSum = max + (float) Math.log(sum);
+        for (int i = offset; i < offset + count; i++) {
+            scores[i] -= logSum;
+        }
+    }
+}
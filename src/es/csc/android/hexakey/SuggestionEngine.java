@@ -0,0 +1,434 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Looks up the completions and the correction of the word being typed on a background
+ * thread. Every request cancels the previous ones: their results are not delivered,
+ * even if the lookup already finished.
+ * <p>
+ * It also keeps the {@link UserHistory} of each language, where the words the user
+ * types are learned, and writes it on the same thread. The next words are predicted
+ * from the history and from the {@link NgramModel} of the language, loaded the first
+ * time a prediction is requested.
+ */
+final class SuggestionEngine {
+    interface Listener {
+        /**
+         * Called in the main thread with the suggestions for the last request.
+         *
+         * @param suggestions the typed word first, then the correction, if any, and
+         * the completions
+         * @param typedWordValid whether the typed word is in the dictionary
+         * @param correction the word that should replace the typed one, or null
+         */
+        void onSuggestions(List<String> suggestions, boolean typedWordValid, String correction);
+
+        /**
+         * Called in the main thread with the words of the last gesture.
+         *
+         * @param words the words the gesture may mean, most likely first, maybe none
+         */
+        void onGestureWords(List<String> words);
+
+        /**
+         * Called in the main thread with the words that may follow the last ones.
+         *
+         * @param words the words predicted, most likely first, maybe none
+         */
+        void onPredictions(List<String> words);
+    }
+
+    static final int MAX_SUGGESTIONS = 5;
+
+    /** Times a word has to be typed to be taken as valid, even if it is not in the dictionary. */
+    private static final int LEARNED_COUNT = 2;
+    private static final String HISTORY_DIRECTORY = "history";
+    private static final String HISTORY_SUFFIX = ".log";
+    private static final String NGRAMS_RAW_PREFIX = "ngrams_";
+    private static final String DEFAULT_LOCALE = "default";
+
+    private final Context context;
+    private final Listener listener;
+
+    private final HandlerThread thread;
+    private final Handler workerHandler;
+    private final Handler mainHandler;
+
+    /** Identifies the last request, the results of the previous ones are discarded. */
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile String locale;
+    /** Bytes each language model may take, 0 to predict only from the user history. */
+    private volatile int predictionMemory;
+
+    // Used only from the worker thread
+    private final DictionaryCache dictionaries = new DictionaryCache();
+    private final SpatialCorrector corrector = new SpatialCorrector();
+    private final GestureDecoder gestureDecoder = new GestureDecoder();
+    private final HashMap<String, UserHistory> histories = new HashMap<String, UserHistory>();
+    private final HashMap<String, NgramModel> models = new HashMap<String, NgramModel>();
+    private final int[] costs = new int[MAX_SUGGESTIONS];
+    private final String[] nextWords = new String[MAX_SUGGESTIONS];
+    private final int[] nextCounts = new int[MAX_SUGGESTIONS];
+    private final String[] words = new String[MAX_SUGGESTIONS];
+    private final int[] frequencies = new int[MAX_SUGGESTIONS];
+
+    SuggestionEngine(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+
+        thread = new HandlerThread("HexaKey suggestions", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        workerHandler = new Handler(thread.getLooper());
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Sets the language of the words, loading its dictionary and user history in
+     * the background.
+     */
+    void setLocale(final String locale) {
+        this.locale = locale;
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                dictionaries.get(context, locale);
+                getHistory(locale);
+            }
+        });
+    }
+
+    /**
+     * Sets the bytes each language model may take, dropping the models loaded with
+     * other size.
+     */
+    void setPredictionMemory(int bytes) {
+        if (bytes == predictionMemory) {
+            return;
+        }
+
+        predictionMemory = bytes;
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                models.clear();
+            }
+        });
+    }
+
+    /**
+     * Adds a word typed by the user to the history of the current language.
+     *
+     * @param previousWord the word typed just before, or null
+     */
+    void learnWord(final String word, final String previousWord) {
+        final String wordLocale = locale;
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final UserHistory history = getHistory(wordLocale);
+                if (history == null) {
+                    return;
+                }
+
+                try {
+                    history.addWord(word, previousWord);
+                }
+                catch (IOException e) {
+                    Log.w(HexaKey.TAG, "Can not write the user history", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param touches the letters of the typed word with their alternatives, or null
+     * if it has to be taken as typed
+     */
+    void requestSuggestions(CharSequence typedWord, TouchSequence touches) {
+        final int requestGeneration = generation.incrementAndGet();
+        final String word = typedWord.toString();
+        final TouchSequence touchesCopy = touches == null ? null : touches.copy();
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (requestGeneration != generation.get()) {
+                    return;
+                }
+
+                final Dictionary dictionary = dictionaries.get(context, locale);
+                final UserHistory history = getHistory(locale);
+                final boolean typedWordValid = (dictionary != null && dictionary.getFrequency(word) > 0)
+                        || (history != null && history.getCount(word) >= LEARNED_COUNT);
+                String correction = null;
+                if (dictionary != null && !typedWordValid && touchesCopy != null
+                        && touchesCopy.length() == word.length()) {
+                    correction = corrector.correct(touchesCopy, dictionary);
+                }
+
+                final String matchedCorrection = correction == null ? null : matchCase(correction, word);
+                final List<String> suggestions = findSuggestions(word, matchedCorrection);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (requestGeneration == generation.get()) {
+                            listener.onSuggestions(suggestions, typedWordValid, matchedCorrection);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Looks up the words that may follow the last ones typed.
+     *
+     * @param wordBeforePrevious the word before the previous one, or null
+     * @param previousWord the last word, or null at the start of a sentence
+     */
+    void requestPredictions(final String wordBeforePrevious, final String previousWord) {
+        final int requestGeneration = generation.incrementAndGet();
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (requestGeneration != generation.get()) {
+                    return;
+                }
+
+                final List<String> predictions = findPredictions(wordBeforePrevious, previousWord);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (requestGeneration == generation.get()) {
+                            listener.onPredictions(predictions);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Prepares in the background the lookup of the gestures made on a keyboard with
+     * the given layout, that is slow the first time.
+     */
+    void prepareGestures(final GestureLayout layout) {
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final Dictionary dictionary = dictionaries.get(context, locale);
+                if (dictionary != null) {
+                    gestureDecoder.prepare(layout, dictionary);
+                }
+            }
+        });
+    }
+
+    /**
+     * Looks up the words of a gesture made on a keyboard with the given layout.
+     */
+    void requestGesture(GesturePath path, final GestureLayout layout) {
+        final int requestGeneration = generation.incrementAndGet();
+        final float[] pathX = new float[GestureDecoder.SAMPLES];
+        final float[] pathY = new float[GestureDecoder.SAMPLES];
+        path.resample(GestureDecoder.SAMPLES, pathX, pathY);
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (requestGeneration != generation.get()) {
+                    return;
+                }
+
+                final Dictionary dictionary = dictionaries.get(context, locale);
+                final List<String> gestureWords = new ArrayList<String>(MAX_SUGGESTIONS);
+                if (dictionary != null) {
+                    final int count = gestureDecoder.decode(pathX, pathY, layout, dictionary, words);
+                    for (int i = 0; i < count; i++) {
+                        gestureWords.add(words[i]);
+                    }
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (requestGeneration == generation.get()) {
+                            listener.onGestureWords(gestureWords);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Discards the results of the pending requests.
+     */
+    void cancel() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Stops the thread once the words already learned are written.
+     */
+    void close() {
+        cancel();
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (UserHistory history : histories.values()) {
+                    try {
+                        if (history != null) {
+                            history.close();
+                        }
+                    }
+                    catch (IOException e) {
+                        Log.w(HexaKey.TAG, "Can not close the user history", e);
+                    }
+                }
+                histories.clear();
+                thread.quit();
+            }
+        });
+    }
+
+    /**
+     * @return the history of the locale, or null if it can not be opened
+     */
+    private UserHistory getHistory(String locale) {
+        if (histories.containsKey(locale)) {
+            return histories.get(locale);
+        }
+
+        UserHistory history = null;
+        try {
+            history = UserHistory.open(new File(context.getDir(HISTORY_DIRECTORY, Context.MODE_PRIVATE),
+                    locale + HISTORY_SUFFIX));
+        }
+        catch (IOException e) {
+            Log.w(HexaKey.TAG, "Can not open the user history", e);
+        }
+        histories.put(locale, history);
+        return history;
+    }
+
+    private List<String> findSuggestions(String typedWord, String correction) {
+        final List<String> suggestions = new ArrayList<String>(MAX_SUGGESTIONS + 2);
+        suggestions.add(typedWord);
+        if (correction != null) {
+            suggestions.add(correction);
+        }
+
+        final Dictionary dictionary = dictionaries.get(context, locale);
+        if (dictionary == null) {
+            return suggestions;
+        }
+
+        final int count = dictionary.getCompletions(typedWord, words, frequencies);
+        for (int i = 0; i < count; i++) {
+            final String suggestion = matchCase(words[i], typedWord);
+            if (!suggestion.equals(typedWord) && !suggestion.equals(correction)) {
+                suggestions.add(suggestion);
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Merges the words predicted by the language model with the words the user typed
+     * after the previous one, with the cost of their frequency in the history.
+     */
+    private List<String> findPredictions(String wordBeforePrevious, String previousWord) {
+        final NgramModel model = getModel(locale);
+        int count = model == null ? 0 : model.predict(wordBeforePrevious, previousWord, words, costs);
+
+        final UserHistory history = getHistory(locale);
+        if (history != null && previousWord != null) {
+            final int total = history.getCount(previousWord);
+            final int found = history.getNextWords(previousWord, nextWords, nextCounts);
+            for (int i = 0; i < found; i++) {
+                final double probability = (double) nextCounts[i] / Math.max(total, nextCounts[i]);
+                final int cost = (int) (-Math.log(probability) * NgramModel.COST_SCALE);
+                count = NgramModel.insert(nextWords[i], cost, words, costs, count, MAX_SUGGESTIONS);
+            }
+        }
+
+        final List<String> predictions = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            predictions.add(words[i]);
+        }
+        return predictions;
+    }
+
+    /**
+     * @return the language model of the locale, or of the default one if it has none,
+     * or null if there is no model or no memory for it
+     */
+    private NgramModel getModel(String locale) {
+        if (models.containsKey(locale)) {
+            return models.get(locale);
+        }
+
+        NgramModel model = null;
+        final int memory = predictionMemory;
+        int resourceId = context.getResources().getIdentifier(NGRAMS_RAW_PREFIX + locale, "raw", context.getPackageName());
+        if (resourceId == 0) {
+            resourceId = context.getResources().getIdentifier(NGRAMS_RAW_PREFIX + DEFAULT_LOCALE, "raw", context.getPackageName());
+        }
+        if (resourceId != 0 && memory > 0) {
+            try {
+                final InputStream in = context.getResources().openRawResource(resourceId);
+                try {
+                    model = NgramModel.read(in, memory);
+                }
+                finally {
+                    in.close();
+                }
+            }
+            catch (IOException e) {
+                Log.w(HexaKey.TAG, "Can not load the language model", e);
+            }
+        }
+        models.put(locale, model);
+        return model;
+    }
+
+    /**
+     * Capitalizes the suggestion if the typed word starts with an upper case letter,
+     * or all of it if the typed word has more than one letter, all upper case.
+     */
+    static String matchCase(String suggestion, String typedWord) {
+        if (typedWord.length() == 0 || !Character.isUpperCase(typedWord.charAt(0))) {
+            return suggestion;
+        }
+        if (typedWord.length() > 1 && typedWord.equals(typedWord.toUpperCase())) {
+            return suggestion.toUpperCase();
+        }
+        return Character.toUpperCase(suggestion.charAt(0)) + suggestion.substring(1);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+/**
+ * The letters of the word being typed, each one with the letters its touch may have
+ * meant according to the {@link SpatialModel}. Words longer than
+ * {@link #MAX_LENGTH} keep only the typed letters.
+ */
+final class TouchSequence {
+    static final int MAX_LENGTH = 24;
+
+    private static final int ALTERNATIVES = SpatialModel.MAX_ALTERNATIVES;
+
+    private final int[] codes;
+    private final float[] scores;
+    private final int[] counts;
+    private int length;
+
+    TouchSequence() {
+        this(MAX_LENGTH);
+    }
+
+    private TouchSequence(int capacity) {
+        codes = new int[capacity * ALTERNATIVES];
+        scores = new float[capacity * ALTERNATIVES];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Adds a letter typed by touching the keyboard at the given point.
+     */
+    void add(int code, int x, int y, SpatialModel model) {
+        if (length < counts.length) {
+            counts[length] = model.getAlternatives(x, y, Character.toLowerCase(code),
+                    codes, scores, length * ALTERNATIVES);
+        }
+        length++;
+    }
+
+    /**
+     * Adds a letter whose touch is not known, that has no alternatives.
+     */
+    void add(int code) {
+        if (length < counts.length) {
+            codes[length * ALTERNATIVES] = Character.toLowerCase(code);
+            scores[length * ALTERNATIVES] = 0;
+            counts[length] = 1;
+        }
+        length++;
+    }
+
+    void removeLast() {
+        if (length > 0) {
+            length--;
+        }
+    }
+
+    void clear() {
+        length = 0;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * @return whether the alternatives of all the letters are known
+     */
+    boolean isComplete() {
+        return length <= counts.length;
+    }
+
+    int getAlternativeCount(int position) {
+        return counts[position];
+    }
+
+    int getCode(int position, int alternative) {
+        return codes[position * ALTERNATIVES + alternative];
+    }
+
+    float getScore(int position, int alternative) {
+        return scores[position * ALTERNATIVES + alternative];
+    }
+
+    /**
+     * @return a copy to be used in another thread
+     */
+    TouchSequence copy() {
+        final int capacity = Math.min(length, counts.length);
+        final TouchSequence copy = new TouchSequence(capacity);
+        System.arraycopy(codes, 0, copy.codes, 0, capacity * ALTERNATIVES);
+        System.arraycopy(scores, 0, copy.scores, 0, capacity * ALTERNATIVES);
+        System.arraycopy(counts, 0, copy.counts, 0, capacity);
+        copy.length = length;
+        return copy;
+    }
+}
@@ -0,0 +1,554 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * The words typed by the user in a language, and the pairs of consecutive words,
+ * with how many times each one was typed. The words are in lower case.
+ * <p>
+ * The counts are kept in open addressing hash tables of primitive arrays, and every
+ * word learned is appended at once to a log, so a crash loses at most the record
+ * being written. The words are numbered in the order they are added; the log has
+ * the text of a word only the first time, then its number. When the log grows to
+ * several times the number of words and bigrams it is rewritten with a record per
+ * each one, and a torn record at its end is dropped when it is opened.
+ * <p>
+ * It is not thread safe, and since it writes to the log it must be used from a
+ * background thread.
+ */
+final class UserHistory {
+    static final int MAX_WORD_LENGTH = 48;
+
+    private static final int MAGIC = 0x48584855;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+
+    /** A new word: the count, the length and the UTF-16 characters of the word. */
+    private static final int RECORD_NEW_WORD = 1;
+    /** The count and the number of a word. */
+    private static final int RECORD_WORD = 2;
+    /** The count and the numbers of the previous word and the word. */
+    private static final int RECORD_BIGRAM = 3;
+
+    /** The log is compacted when it has this many times more records than entries. */
+    private static final int COMPACTION_RATIO = 2;
+    private static final int MIN_COMPACTION_RECORDS = 256;
+
+    private static final int NO_WORD = -1;
+
+    private final File file;
+    private OutputStream log;
+    private int logRecords;
+    /** Encoding buffer of the records, big enough for the longest one. */
+    private final byte[] record = new byte[1 + 5 + 1 + MAX_WORD_LENGTH * 2];
+    private final char[] word = new char[MAX_WORD_LENGTH];
+    private final char[] previousWord = new char[MAX_WORD_LENGTH];
+
+    // Words: their characters in a shared pool, and their numbers plus one by hash
+    private char[] characters = new char[1024];
+    private int charactersLength;
+    private int[] wordStarts = new int[64];
+    private int[] wordLengths = new int[64];
+    private int[] wordCounts = new int[64];
+    private int wordCount;
+    private int[] wordSlots = new int[128];
+
+    // Bigrams: the numbers plus one of both words as the key, 0 being an empty slot
+    private long[] bigramKeys = new long[128];
+    private int[] bigramCounts = new int[128];
+    private int bigramCount;
+
+    private UserHistory(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the history from its log, creating the log if it does not exist or it is
+     * not valid.
+     */
+    static UserHistory open(File file) throws IOException {
+        final UserHistory history = new UserHistory(file);
+        final int validLength = file.exists() ? history.load() : 0;
+        if (validLength < HEADER_SIZE) {
+            history.clear();
+            history.log = new FileOutputStream(file);
+            history.writeHeader();
+        }
+        else {
+            if (validLength < file.length()) {
+                truncate(file, validLength);
+            }
+            history.log = new FileOutputStream(file, true);
+        }
+        return history;
+    }
+
+    /**
+     * Counts a word typed after another one. Words too long are ignored.
+     *
+     * @param previous the word typed before, or null if it is the first one
+     */
+    void addWord(CharSequence typed, CharSequence previous) throws IOException {
+        final int length = toLowerCase(typed, word);
+        if (length == 0) {
+            return;
+        }
+        final int number = learn(word, length, 1);
+
+        final int previousLength = previous == null ? 0 : toLowerCase(previous, previousWord);
+        if (previousLength > 0) {
+            final int previousNumber = learn(previousWord, previousLength, 0);
+            addBigram(previousNumber, number, 1);
+            writeBigram(1, previousNumber, number);
+        }
+
+        if (logRecords > MIN_COMPACTION_RECORDS
+                && logRecords > COMPACTION_RATIO * (wordCount + bigramCount)) {
+            compact();
+        }
+    }
+
+    /**
+     * @return how many times the word was typed, 0 if never
+     */
+    int getCount(CharSequence typed) {
+        final int number = find(word, toLowerCase(typed, word));
+        return number == NO_WORD ? 0 : wordCounts[number];
+    }
+
+    /**
+     * @return how many times the word was typed after the previous one
+     */
+    int getBigramCount(CharSequence previous, CharSequence typed) {
+        final int previousNumber = find(previousWord, toLowerCase(previous, previousWord));
+        final int number = find(word, toLowerCase(typed, word));
+        if (previousNumber == NO_WORD || number == NO_WORD) {
+            return 0;
+        }
+        final int slot = findBigramSlot(bigramKey(previousNumber, number));
+        return bigramKeys[slot] == 0 ? 0 : bigramCounts[slot];
+    }
+
+    /**
+     * Finds the words typed most times after the previous one, going through all the
+     * bigrams.
+     *
+     * @param words receives the words, most typed first
+     * @param counts receives how many times each one was typed after the previous one
+     * @return the number of words found, at most the length of the arrays
+     */
+    int getNextWords(CharSequence previous, String[] words, int[] counts) {
+        final int previousNumber = find(previousWord, toLowerCase(previous, previousWord));
+        if (previousNumber == NO_WORD) {
+            return 0;
+        }
+
+        final int maxResults = Math.min(words.length, counts.length);
+        final long previousKey = (long) (previousNumber + 1) << 32;
+        int count = 0;
+        for (int slot = 0; slot < bigramKeys.length; slot++) {
+            if ((bigramKeys[slot] & 0xffffffff00000000L) != previousKey) {
+                continue;
+            }
+            final int wordCount = bigramCounts[slot];
+            if (count == maxResults && wordCount <= counts[count - 1]) {
+                continue;
+            }
+
+            int i = count < maxResults ? count++ : count - 1;
+            while (i > 0 && counts[i - 1] < wordCount) {
+                words[i] = words[i - 1];
+                counts[i] = counts[i - 1];
+                i--;
+            }
+            final int next = (int) bigramKeys[slot] - 1;
+            words[i] = new String(characters, wordStarts[next], wordLengths[next]);
+            counts[i] = wordCount;
+        }
+        return count;
+    }
+
+    int getWordCount() {
+        return wordCount;
+    }
+
+    void close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * Adds to the count of a word and writes it to the log.
+     *
+     * @return the number of the word
+     */
+    private int learn(char[] chars, int length, int count) throws IOException {
+        final int known = find(chars, length);
+        if (known != NO_WORD) {
+            if (count > 0) {
+                wordCounts[known] += count;
+                writeWord(count, known);
+            }
+            return known;
+        }
+
+        final int number = add(chars, length, count);
+        writeNewWord(count, number);
+        return number;
+    }
+
+    /**
+     * Rewrites the log with a single record per word and bigram, replacing the old
+     * one only once the new one is complete. The words keep their numbers.
+     */
+    void compact() throws IOException {
+        log.close();
+        final File temporary = new File(file.getPath() + ".tmp");
+        log = new FileOutputStream(temporary);
+        try {
+            logRecords = 0;
+            writeHeader();
+            for (int number = 0; number < wordCount; number++) {
+                writeNewWord(wordCounts[number], number);
+            }
+            for (int slot = 0; slot < bigramKeys.length; slot++) {
+                final long key = bigramKeys[slot];
+                if (key != 0) {
+                    writeBigram(bigramCounts[slot], (int) (key >>> 32) - 1, (int) key - 1);
+                }
+            }
+        }
+        finally {
+            log.close();
+        }
+
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+        }
+        log = new FileOutputStream(file, true);
+    }
+
+    private void writeHeader() throws IOException {
+        log.write(new byte[] {
+            (byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC,
+            VERSION });
+    }
+
+    private void writeNewWord(int count, int number) throws IOException {
+        record[0] = RECORD_NEW_WORD;
+        int length = writeVarInt(count, 1);
+        record[length++] = (byte) wordLengths[number];
+        final int start = wordStarts[number];
+        for (int i = start; i < start + wordLengths[number]; i++) {
+            record[length++] = (byte) (characters[i] >>> 8);
+            record[length++] = (byte) characters[i];
+        }
+        writeRecord(length);
+    }
+
+    private void writeWord(int count, int number) throws IOException {
+        record[0] = RECORD_WORD;
+        writeRecord(writeVarInt(number, writeVarInt(count, 1)));
+    }
+
+    private void writeBigram(int count, int previous, int next) throws IOException {
+        record[0] = RECORD_BIGRAM;
+        writeRecord(writeVarInt(next, writeVarInt(previous, writeVarInt(count, 1))));
+    }
+
+    private void writeRecord(int length) throws IOException {
+        log.write(record, 0, length);
+        logRecords++;
+    }
+
+    /**
+     * Encodes a value in the record, seven bits per byte with the high bit set in all
+     * of them but the last one.
+     *
+     * @return the position after the value
+     */
+    private int writeVarInt(int value, int position) {
+        while ((value & ~0x7f) != 0) {
+            record[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        record[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Replays the log.
+     *
+     * @return the length of its valid part, 0 if it is not a log
+     */
+    private int load() throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                final int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    return 0;
+                }
+                read += n;
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        if (bytes.length < HEADER_SIZE || readInt(bytes, 0) != MAGIC || bytes[4] != VERSION) {
+            return 0;
+        }
+
+        // The values are read one after another, the position of the next in values[0]
+        final int[] values = new int[4];
+        values[0] = HEADER_SIZE;
+        while (values[0] < bytes.length) {
+            final int start = values[0];
+            final int type = bytes[values[0]++];
+            if (!readVarInt(bytes, values, 1)) {
+                return start;
+            }
+
+            final int count = values[1];
+            if (type == RECORD_NEW_WORD) {
+                final int position = values[0];
+                final int length = position < bytes.length ? bytes[position] & 0xff : 0;
+                if (length == 0 || length > MAX_WORD_LENGTH || position + 1 + length * 2 > bytes.length) {
+                    return start;
+                }
+                for (int i = 0, b = position + 1; i < length; i++, b += 2) {
+                    word[i] = (char) (((bytes[b] & 0xff) << 8) | (bytes[b + 1] & 0xff));
+                }
+                if (find(word, length) != NO_WORD) {
+                    return start;
+                }
+                add(word, length, count);
+                values[0] = position + 1 + length * 2;
+            }
+            else if (type == RECORD_WORD) {
+                if (!readVarInt(bytes, values, 2) || values[2] >= wordCount) {
+                    return start;
+                }
+                wordCounts[values[2]] += count;
+            }
+            else if (type == RECORD_BIGRAM) {
+                if (!readVarInt(bytes, values, 2) || values[2] >= wordCount
+                        || !readVarInt(bytes, values, 3) || values[3] >= wordCount) {
+                    return start;
+                }
+                addBigram(values[2], values[3], count);
+            }
+            else {
+                return start;
+            }
+            logRecords++;
+        }
+        return values[0];
+    }
+
+    /**
+     * Reads a value at the position in values[0] into values[index], moving the
+     * position after it.
+     *
+     * @return false if the value is not complete or valid
+     */
+    private static boolean readVarInt(byte[] bytes, int[] values, int index) {
+        int position = values[0];
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position == bytes.length) {
+                return false;
+            }
+            final int b = bytes[position++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                values[0] = position;
+                values[index] = value;
+                return value >= 0;
+            }
+        }
+        return false;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        final RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(length);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the length of the word, 0 if it is empty or too long
+     */
+    private static int toLowerCase(CharSequence typed, char[] chars) {
+        final int length = typed.length();
+        if (length > MAX_WORD_LENGTH) {
+            return 0;
+        }
+        for (int i = 0; i < length; i++) {
+            chars[i] = Character.toLowerCase(typed.charAt(i));
+        }
+        return length;
+    }
+
+    /**
+     * @return the slot of the word, or the empty one where it would go
+     */
+    private int findSlot(char[] chars, int length) {
+        final int mask = wordSlots.length - 1;
+        int slot = hash(chars, 0, length) & mask;
+        while (wordSlots[slot] != 0 && !equals(wordSlots[slot] - 1, chars, length)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean equals(int number, char[] chars, int length) {
+        if (wordLengths[number] != length) {
+            return false;
+        }
+        final int start = wordStarts[number];
+        for (int i = 0; i < length; i++) {
+            if (characters[start + i] != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int find(char[] chars, int length) {
+        if (length == 0) {
+            return NO_WORD;
+        }
+        final int slot = wordSlots[findSlot(chars, length)];
+        return slot == 0 ? NO_WORD : slot - 1;
+    }
+
+    /**
+     * Adds a word that is not in the history.
+     *
+     * @return the number of the word
+     */
+    private int add(char[] chars, int length, int count) {
+        final int slot = findSlot(chars, length);
+        if (wordCount == wordStarts.length) {
+            wordStarts = Arrays.copyOf(wordStarts, wordCount * 2);
+            wordLengths = Arrays.copyOf(wordLengths, wordCount * 2);
+            wordCounts = Arrays.copyOf(wordCounts, wordCount * 2);
+        }
+        if (charactersLength + length > characters.length) {
+            characters = Arrays.copyOf(characters, Math.max(characters.length * 2, charactersLength + length));
+        }
+        System.arraycopy(chars, 0, characters, charactersLength, length);
+        final int number = wordCount++;
+        wordStarts[number] = charactersLength;
+        wordLengths[number] = length;
+        wordCounts[number] = count;
+        charactersLength += length;
+        wordSlots[slot] = number + 1;
+
+        if (wordCount * 2 > wordSlots.length) {
+            rehashWords();
+        }
+        return number;
+    }
+
+    private void rehashWords() {
+        wordSlots = new int[wordSlots.length * 2];
+        final int mask = wordSlots.length - 1;
+        for (int number = 0; number < wordCount; number++) {
+            int slot = hash(characters, wordStarts[number], wordLengths[number]) & mask;
+            while (wordSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            wordSlots[slot] = number + 1;
+        }
+    }
+
+    private static int hash(char[] chars, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static long bigramKey(int previous, int next) {
+        return ((long) (previous + 1) << 32) | (next + 1);
+    }
+
+    private int findBigramSlot(long key) {
+        final int mask = bigramKeys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (bigramKeys[slot] != 0 && bigramKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void addBigram(int previous, int next, int count) {
+        final long key = bigramKey(previous, next);
+        final int slot = findBigramSlot(key);
+        if (bigramKeys[slot] != 0) {
+            bigramCounts[slot] += count;
+            return;
+        }
+
+        bigramKeys[slot] = key;
+        bigramCounts[slot] = count;
+        bigramCount++;
+        if (bigramCount * 2 > bigramKeys.length) {
+            final long[] oldKeys = bigramKeys;
+            final int[] oldCounts = bigramCounts;
+            bigramKeys = new long[oldKeys.length * 2];
+            bigramCounts = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    final int newSlot = findBigramSlot(oldKeys[i]);
+                    bigramKeys[newSlot] = oldKeys[i];
+                    bigramCounts[newSlot] = oldCounts[i];
+                }
+            }
+        }
+    }
+
+    private void clear() {
+        charactersLength = 0;
+        wordCount = 0;
+        Arrays.fill(wordSlots, 0);
+        bigramCount = 0;
+        Arrays.fill(bigramKeys, 0);
+        logRecords = 0;
+    }
+}
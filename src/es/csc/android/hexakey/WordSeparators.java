@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey;
+
+import java.util.BitSet;
+
+/**
+ * The characters that end a word, looked up on every key typed.
+ */
+final class WordSeparators {
+    private final BitSet separators = new BitSet();
+
+    WordSeparators(CharSequence characters) {
+        for (int i = 0; i < characters.length(); i++) {
+            separators.set(characters.charAt(i));
+        }
+    }
+
+    boolean contains(int code) {
+        return code >= 0 && separators.get(code);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads UTF-8 text corpora in chunks that can be processed in parallel. Every chunk
+ * holds the characters that start in its range of bytes, so the chunks of a file
+ * cover its text without overlapping.
+ */
+final class Corpus {
+    /** Passed instead of a byte sequence that is not valid UTF-8. */
+    static final int INVALID = -1;
+
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    interface Reader {
+        /**
+         * @param c a Unicode code point, or {@link Corpus#INVALID}
+         */
+        void read(int c);
+    }
+
+    static final class Chunk {
+        final File file;
+        final long start;
+        final long end;
+
+        Chunk(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private Corpus() {
+    }
+
+    static List<Chunk> split(List<File> files) throws IOException {
+        final List<Chunk> chunks = new ArrayList<Chunk>();
+        for (File file : files) {
+            if (!file.isFile()) {
+                throw new IOException("Cannot read " + file);
+            }
+            for (long start = 0; start < file.length(); start += CHUNK_SIZE) {
+                chunks.add(new Chunk(file, start, Math.min(file.length(), start + CHUNK_SIZE)));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Decodes the characters of a chunk, passing them to the reader in order.
+     */
+    static void read(Chunk chunk, Reader reader) throws IOException {
+        final InputStream in = new FileInputStream(chunk.file);
+        try {
+            long skipped = 0;
+            while (skipped < chunk.start) {
+                final long n = in.skip(chunk.start - skipped);
+                if (n <= 0) {
+                    return;
+                }
+                skipped += n;
+            }
+
+            final byte[] buffer = new byte[READ_BUFFER_SIZE];
+            long position = chunk.start;
+            int length = 0;
+            int next = 0;
+            int pending = 0;
+            int c = 0;
+            while (true) {
+                if (next == length) {
+                    length = in.read(buffer);
+                    next = 0;
+                    if (length <= 0) {
+                        return;
+                    }
+                }
+                final int b = buffer[next++] & 0xff;
+                final boolean isContinuation = (b & 0xc0) == 0x80;
+                if (pending > 0 && isContinuation) {
+                    c = (c << 6) | (b & 0x3f);
+                    pending--;
+                    position++;
+                    if (pending > 0) {
+                        continue;
+                    }
+                }
+                else {
+                    // A character starting after the chunk belongs to the next one
+                    if (position >= chunk.end) {
+                        return;
+                    }
+                    position++;
+                    if (isContinuation) {
+                        reader.read(INVALID);
+                        continue;
+                    }
+                    if (b < 0x80) {
+                        c = b;
+                    }
+                    else {
+                        pending = b >= 0xf0 ? 3 : b >= 0xe0 ? 2 : 1;
+                        c = b & (0x3f >> pending);
+                        continue;
+                    }
+                }
+                reader.read(c);
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Builds the binary dictionaries that the app maps in memory (see BinaryDictionary)
+ * from the word lists of tools/dictionaries, one "word frequency" pair per line with
+ * the frequency between 1 and 255. Lines starting with # are ignored.
+ * <p>
+ * Run it from the root of the project every time a word list changes:
+ * <pre>
+ * java -cp tools/bin es.csc.android.hexakey.tools.DictionaryBuilder tools/dictionaries res
+ * </pre>
+ * Every words_&lt;locale&gt;.txt is written to res/raw/words_&lt;locale&gt;.dict.
+ */
+public class DictionaryBuilder {
+    // Must match BinaryDictionary
+    static final int MAGIC = 0x48584443;
+    static final int VERSION = 1;
+    static final int BLOCK_SIZE = 16;
+    static final int MAX_WORD_LENGTH = 255;
+    static final int MAX_FREQUENCY = 255;
+
+    private static final String WORDS_PREFIX = "words_";
+    private static final String TEXT_SUFFIX = ".txt";
+    private static final String DICTIONARY_SUFFIX = ".dict";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: DictionaryBuilder <word lists directory> <res directory>");
+            System.exit(1);
+        }
+
+        final File[] files = new File(args[0]).listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list " + args[0]);
+        }
+        Arrays.sort(files);
+
+        final File rawDirectory = new File(args[1], "raw");
+        if (!rawDirectory.isDirectory() && !rawDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + rawDirectory);
+        }
+
+        for (File file : files) {
+            final String name = file.getName();
+            if (!name.startsWith(WORDS_PREFIX) || !name.endsWith(TEXT_SUFFIX)) {
+                continue;
+            }
+
+            final TreeMap<String, Integer> words = read(file);
+            final File output = new File(rawDirectory,
+                    name.substring(0, name.length() - TEXT_SUFFIX.length()) + DICTIONARY_SUFFIX);
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(output)));
+            try {
+                write(words, out);
+            }
+            finally {
+                out.close();
+            }
+            System.out.println("Built " + words.size() + " words into " + output);
+        }
+    }
+
+    /**
+     * @return the words in lower case, sorted as chars, with the highest frequency
+     * of their repetitions
+     */
+    static TreeMap<String, Integer> read(File file) throws IOException {
+        final TreeMap<String, Integer> words = new TreeMap<String, Integer>();
+        final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    continue;
+                }
+
+                final int space = line.lastIndexOf(' ');
+                final String word;
+                int frequency = 1;
+                if (space <= 0) {
+                    word = line.toLowerCase(Locale.ROOT);
+                }
+                else {
+                    word = line.substring(0, space).trim().toLowerCase(Locale.ROOT);
+                    try {
+                        frequency = Integer.parseInt(line.substring(space + 1));
+                    }
+                    catch (NumberFormatException e) {
+                        throw new IOException(file + ":" + lineNumber + ": invalid frequency");
+                    }
+                }
+                if (word.length() > MAX_WORD_LENGTH) {
+                    throw new IOException(file + ":" + lineNumber + ": word too long");
+                }
+
+                frequency = Math.max(1, Math.min(MAX_FREQUENCY, frequency));
+                final Integer previous = words.get(word);
+                if (previous == null || previous < frequency) {
+                    words.put(word, frequency);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return words;
+    }
+
+    static void write(TreeMap<String, Integer> words, DataOutputStream out) throws IOException {
+        final List<Integer> blockOffsets = new ArrayList<Integer>();
+        final List<Integer> blockFrequencies = new ArrayList<Integer>();
+        final ByteArrayOutputStream wordBytes = new ByteArrayOutputStream();
+        final DataOutputStream wordsOut = new DataOutputStream(wordBytes);
+
+        int index = 0;
+        String previous = "";
+        for (String word : words.keySet()) {
+            final int frequency = words.get(word);
+            int shared = 0;
+            if (index % BLOCK_SIZE == 0) {
+                blockOffsets.add(wordsOut.size());
+                blockFrequencies.add(frequency);
+            }
+            else {
+                final int max = Math.min(previous.length(), word.length());
+                while (shared < max && previous.charAt(shared) == word.charAt(shared)) {
+                    shared++;
+                }
+                final int block = blockFrequencies.size() - 1;
+                blockFrequencies.set(block, Math.max(blockFrequencies.get(block), frequency));
+            }
+
+            wordsOut.writeByte(shared);
+            wordsOut.writeByte(word.length() - shared);
+            wordsOut.writeChars(word.substring(shared));
+            wordsOut.writeByte(frequency);
+
+            previous = word;
+            index++;
+        }
+        wordsOut.flush();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(words.size());
+        out.writeInt(blockOffsets.size());
+        for (int offset : blockOffsets) {
+            out.writeInt(offset);
+        }
+        for (int frequency : blockFrequencies) {
+            out.writeByte(frequency);
+        }
+        wordBytes.writeTo(out);
+    }
+}
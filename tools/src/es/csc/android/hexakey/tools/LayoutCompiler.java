@@ -0,0 +1,478 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Compiles the keyboard layouts of res/xml (letters_*.xml, symbols*.xml and numbers.xml)
+ * into CompiledLayouts.java, that the app turns into keyboards without parsing XML. The
+ * locales of the letters layouts and of the subtypes of res/xml/method.xml are compiled
+ * too, so the app finds the layout of a subtype without looking up resources by name.
+ * <p>
+ * Run it from the root of the project every time a layout changes:
+ * <pre>
+ * java -cp tools/bin es.csc.android.hexakey.tools.LayoutCompiler res src/es/csc/android/hexakey/CompiledLayouts.java
+ * </pre>
+ * Only the attributes used by the layouts of HexaKey are supported; the compilation fails
+ * on any other, so an unsupported layout is never compiled into something different.
+ */
+public class LayoutCompiler {
+    static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+    private static final List<String> KEYBOARD_ATTRIBUTES = Arrays.asList(
+            "keyWidth", "keyHeight", "horizontalGap", "verticalGap");
+    private static final List<String> KEY_ATTRIBUTES = Arrays.asList(
+            "codes", "keyLabel", "keyIcon", "keyEdgeFlags", "isSticky", "isModifier",
+            "isRepeatable", "keyWidth", "keyHeight", "horizontalGap");
+
+    private static final String INDENT = "    ";
+    private static final String LETTERS_PREFIX = "letters_";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: LayoutCompiler <res directory> <output java file>");
+            System.exit(1);
+        }
+
+        final File xmlDirectory = new File(args[0], "xml");
+        final File[] files = xmlDirectory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list " + xmlDirectory);
+        }
+        Arrays.sort(files);
+
+        final List<Layout> layouts = new ArrayList<Layout>();
+        for (File file : files) {
+            if (isKeyboardLayout(file.getName())) {
+                layouts.add(compile(file));
+            }
+        }
+
+        final List<String> subtypeLocales = readSubtypeLocales(new File(xmlDirectory, "method.xml"));
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(args[1]), "UTF-8");
+        try {
+            write(layouts, subtypeLocales, writer);
+        }
+        finally {
+            writer.close();
+        }
+        System.out.println("Compiled " + layouts.size() + " layouts into " + args[1]);
+    }
+
+    static boolean isKeyboardLayout(String fileName) {
+        return fileName.endsWith(".xml") && (fileName.startsWith(LETTERS_PREFIX)
+                || fileName.startsWith("symbols") || fileName.equals("numbers.xml"));
+    }
+
+    static class Layout {
+        String name;
+        List<String> keyboardSizes;
+        final List<Integer> rowLengths = new ArrayList<Integer>();
+        final List<String[]> keys = new ArrayList<String[]>();
+        final List<String> codes = new ArrayList<String>();
+        final List<String> labels = new ArrayList<String>();
+    }
+
+    static Layout compile(File file) throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        final Document document = factory.newDocumentBuilder().parse(file);
+        final Element keyboard = document.getDocumentElement();
+        checkElement(file, keyboard, "Keyboard", KEYBOARD_ATTRIBUTES);
+
+        final Layout layout = new Layout();
+        layout.name = file.getName().substring(0, file.getName().length() - ".xml".length());
+        final List<String> keyboardSizes = new ArrayList<String>();
+        for (String attribute : KEYBOARD_ATTRIBUTES) {
+            keyboardSizes.addAll(Arrays.asList(size(file, keyboard, attribute)));
+        }
+        layout.keyboardSizes = keyboardSizes;
+
+        for (Element row : children(keyboard)) {
+            checkElement(file, row, "Row", new ArrayList<String>());
+            final List<Element> rowKeys = children(row);
+            layout.rowLengths.add(rowKeys.size());
+            for (Element key : rowKeys) {
+                checkElement(file, key, "Key", KEY_ATTRIBUTES);
+                compileKey(file, key, layout);
+            }
+        }
+        return layout;
+    }
+
+    private static void compileKey(File file, Element key, Layout layout) {
+        final String label = key.hasAttributeNS(ANDROID_NS, "keyLabel")
+                ? unescape(key.getAttributeNS(ANDROID_NS, "keyLabel")) : null;
+
+        final List<String> keyCodes = new ArrayList<String>();
+        if (key.hasAttributeNS(ANDROID_NS, "codes")) {
+            for (String code : key.getAttributeNS(ANDROID_NS, "codes").split(",")) {
+                keyCodes.add(Integer.toString(Integer.parseInt(code.trim())));
+            }
+        }
+        else if (label != null && label.length() > 0) {
+            keyCodes.add(Integer.toString(label.charAt(0)));
+        }
+        else {
+            throw new IllegalArgumentException(file + ": key without codes nor label");
+        }
+
+        final List<String> flags = new ArrayList<String>();
+        if (isTrue(key, "isSticky")) {
+            flags.add("FLAG_STICKY");
+        }
+        if (isTrue(key, "isModifier")) {
+            flags.add("FLAG_MODIFIER");
+        }
+        if (isTrue(key, "isRepeatable")) {
+            flags.add("FLAG_REPEATABLE");
+        }
+
+        final String[] widthSize = size(file, key, "keyWidth");
+        final String[] heightSize = size(file, key, "keyHeight");
+        final String[] gapSize = size(file, key, "horizontalGap");
+        layout.keys.add(new String[] {
+                Integer.toString(layout.codes.size()), Integer.toString(keyCodes.size()),
+                edgeFlags(file, key), join(flags, " | ", "0"),
+                reference(file, key, "keyIcon", "drawable"),
+                widthSize[0], widthSize[1], heightSize[0], heightSize[1], gapSize[0], gapSize[1] });
+        layout.codes.addAll(keyCodes);
+        layout.labels.add(label);
+    }
+
+    private static void checkElement(File file, Element element, String tag,
+            List<String> supportedAttributes) {
+        if (!element.getTagName().equals(tag)) {
+            throw new IllegalArgumentException(file + ": unexpected <" + element.getTagName()
+                    + ">, expected <" + tag + ">");
+        }
+        final NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Node attribute = attributes.item(i);
+            if ("xmlns".equals(attribute.getPrefix()) || "xmlns".equals(attribute.getNodeName())) {
+                continue;
+            }
+            if (!ANDROID_NS.equals(attribute.getNamespaceURI())
+                    || !supportedAttributes.contains(attribute.getLocalName())) {
+                throw new IllegalArgumentException(file + ": unsupported attribute "
+                        + attribute.getNodeName() + " in <" + tag + ">");
+            }
+        }
+    }
+
+    /**
+     * @return the locales of the subtypes of the input method, in order
+     */
+    static List<String> readSubtypeLocales(File file) throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        final Document document = factory.newDocumentBuilder().parse(file);
+        final List<String> locales = new ArrayList<String>();
+        for (Element subtype : children(document.getDocumentElement())) {
+            if (subtype.getLocalName().equals("subtype")
+                    && subtype.hasAttributeNS(ANDROID_NS, "imeSubtypeLocale")) {
+                locales.add(subtype.getAttributeNS(ANDROID_NS, "imeSubtypeLocale"));
+            }
+        }
+        return locales;
+    }
+
+    private static List<Element> children(Element parent) {
+        final List<Element> elements = new ArrayList<Element>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+
+    private static boolean isTrue(Element element, String attribute) {
+        return "true".equals(element.getAttributeNS(ANDROID_NS, attribute));
+    }
+
+    /**
+     * @return the kind and value of a size attribute, as expected by CompiledLayout
+     */
+    private static String[] size(File file, Element element, String attribute) {
+        if (!element.hasAttributeNS(ANDROID_NS, attribute)) {
+            return new String[] { "SIZE_DEFAULT", "0" };
+        }
+        final String value = element.getAttributeNS(ANDROID_NS, attribute).trim();
+        if (value.startsWith("@fraction/")) {
+            return new String[] { "SIZE_FRACTION", "R.fraction." + value.substring(10) };
+        }
+        else if (value.startsWith("@dimen/")) {
+            return new String[] { "SIZE_DIMENSION", "R.dimen." + value.substring(7) };
+        }
+        else if (value.matches("-?\\d+px")) {
+            return new String[] { "SIZE_PIXELS", value.substring(0, value.length() - 2) };
+        }
+        throw new IllegalArgumentException(file + ": unsupported size " + attribute + "=\""
+                + value + "\", use px or a @dimen or @fraction resource");
+    }
+
+    private static String reference(File file, Element element, String attribute, String type) {
+        if (!element.hasAttributeNS(ANDROID_NS, attribute)) {
+            return "0";
+        }
+        final String value = element.getAttributeNS(ANDROID_NS, attribute).trim();
+        final String prefix = "@" + type + "/";
+        if (!value.startsWith(prefix)) {
+            throw new IllegalArgumentException(file + ": " + attribute + " must be a " + prefix
+                    + " reference");
+        }
+        return "R." + type + "." + value.substring(prefix.length());
+    }
+
+    private static String edgeFlags(File file, Element key) {
+        final List<String> flags = new ArrayList<String>();
+        final String value = key.getAttributeNS(ANDROID_NS, "keyEdgeFlags");
+        for (String flag : value.split("\\|")) {
+            flag = flag.trim();
+            if (flag.isEmpty()) {
+                continue;
+            }
+            if (!Arrays.asList("left", "right", "top", "bottom").contains(flag)) {
+                throw new IllegalArgumentException(file + ": unknown edge flag " + flag);
+            }
+            flags.add("Keyboard.EDGE_" + flag.toUpperCase(Locale.US));
+        }
+        return join(flags, " | ", "0");
+    }
+
+    /**
+     * Processes escapes, quotes and white space the same way as aapt does with the
+     * string attributes of compiled XML resources.
+     */
+    static String unescape(String value) {
+        final StringBuilder result = new StringBuilder();
+        char quote = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                final char escaped = value.charAt(++i);
+                switch (escaped) {
+                    case 't':
+                        result.append('\t');
+                        break;
+                    case 'n':
+                        result.append('\n');
+                        break;
+                    case 'u':
+                        result.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                        i += 4;
+                        break;
+                    case '#':
+                    case '@':
+                    case '?':
+                    case '"':
+                    case '\'':
+                    case '\\':
+                        result.append(escaped);
+                        break;
+                    default:
+                        // aapt drops unknown escapes
+                        break;
+                }
+            }
+            else if (c == '"' && (quote == 0 || quote == c)) {
+                quote = quote == 0 ? c : 0;
+            }
+            else if (c == '\'' && quote == 0) {
+                throw new IllegalArgumentException("Apostrophe not preceded by \\ in " + value);
+            }
+            else if (Character.isWhitespace(c) && quote == 0) {
+                result.append(' ');
+                while (i + 1 < value.length() && Character.isWhitespace(value.charAt(i + 1))) {
+                    i++;
+                }
+            }
+            else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static String join(List<String> values, String separator, String empty) {
+        if (values.isEmpty()) {
+            return empty;
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (String value : values) {
+            if (builder.length() > 0) {
+                builder.append(separator);
+            }
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    static String javaString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        final StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            }
+            else if (c < 0x20 || c > 0x7e) {
+                builder.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    static void write(List<Layout> layouts, List<String> subtypeLocales, Writer out) throws IOException {
+        out.write("/*\n"
+                + " * Licensed under the Apache License, Version 2.0 (the \"License\");\n"
+                + " * you may not use this file except in compliance with the License.\n"
+                + " * You may obtain a copy of the License at\n"
+                + " *\n"
+                + " *   http://www.apache.org/licenses/LICENSE-2.0\n"
+                + " *\n"
+                + " * Unless required by applicable law or agreed to in writing, software\n"
+                + " * distributed under the License is distributed on an \"AS IS\" BASIS,\n"
+                + " * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.\n"
+                + " * See the License for the specific language governing permissions and\n"
+                + " * limitations under the License.\n"
+                + "*/\n\n"
+                + "package es.csc.android.hexakey;\n\n"
+                + "import static es.csc.android.hexakey.CompiledLayout.*;\n\n"
+                + "import android.inputmethodservice.Keyboard;\n\n"
+                + "/**\n"
+                + " * Keyboard layouts of res/xml compiled by es.csc.android.hexakey.tools.LayoutCompiler.\n"
+                + " * Generated file, do not edit: run the compiler again after changing a layout.\n"
+                + " */\n"
+                + "final class CompiledLayouts {\n");
+
+        for (Layout layout : layouts) {
+            writeLayout(layout, out);
+        }
+
+        final List<String> lettersLocales = new ArrayList<String>();
+        final List<String> lettersLayouts = new ArrayList<String>();
+        for (Layout layout : layouts) {
+            if (layout.name.startsWith(LETTERS_PREFIX)) {
+                lettersLocales.add(javaString(layout.name.substring(LETTERS_PREFIX.length())));
+                lettersLayouts.add("R.xml." + layout.name);
+            }
+        }
+        final List<String> subtypes = new ArrayList<String>();
+        for (String locale : subtypeLocales) {
+            subtypes.add(javaString(locale));
+        }
+        out.write(INDENT + "/** Locales of the letters_&lt;locale&gt; layouts, \"default\" for letters_default. */\n"
+                + INDENT + "static final String[] LETTERS_LOCALES = { " + join(lettersLocales, ", ", "") + " };\n"
+                + INDENT + "static final int[] LETTERS_LAYOUTS = { " + join(lettersLayouts, ", ", "") + " };\n"
+                + INDENT + "/** Locales of the subtypes of res/xml/method.xml. */\n"
+                + INDENT + "static final String[] SUBTYPE_LOCALES = { " + join(subtypes, ", ", "") + " };\n\n");
+
+        out.write(INDENT + "private CompiledLayouts() {\n" + INDENT + "}\n\n");
+        out.write(INDENT + "/**\n"
+                + INDENT + " * @return the compiled version of the layout, or null if it was not compiled\n"
+                + INDENT + " */\n"
+                + INDENT + "static CompiledLayout get(int xmlLayoutResId) {\n");
+        for (Layout layout : layouts) {
+            out.write(INDENT + INDENT + "if (xmlLayoutResId == R.xml." + layout.name + ") {\n"
+                    + INDENT + INDENT + INDENT + "return " + constant(layout) + ";\n"
+                    + INDENT + INDENT + "}\n");
+        }
+        out.write(INDENT + INDENT + "return null;\n" + INDENT + "}\n}\n");
+    }
+
+    private static String constant(Layout layout) {
+        return layout.name.toUpperCase(Locale.US);
+    }
+
+    private static void writeLayout(Layout layout, Writer out) throws IOException {
+        final String indent2 = INDENT + INDENT;
+        final String indent3 = indent2 + INDENT;
+
+        out.write(INDENT + "static final CompiledLayout " + constant(layout)
+                + " = new CompiledLayout(R.xml." + layout.name + ",\n");
+        out.write(indent3 + "new int[] {\n");
+        writeWrapped(layout.keyboardSizes, indent3 + INDENT, out);
+        out.write(indent3 + "},\n");
+
+        final List<String> rowLengths = new ArrayList<String>();
+        for (Integer rowLength : layout.rowLengths) {
+            rowLengths.add(rowLength.toString());
+        }
+        out.write(indent3 + "new int[] { " + join(rowLengths, ", ", "") + " },\n");
+
+        out.write(indent3 + "new int[] {\n");
+        out.write(indent3 + INDENT + "// codes offset, codes length, edge flags, flags, icon,"
+                + " width, height, gap\n");
+        for (int i = 0; i < layout.keys.size(); i++) {
+            out.write(indent3 + INDENT + join(Arrays.asList(layout.keys.get(i)), ", ", "")
+                    + (i + 1 < layout.keys.size() ? ",\n" : "\n"));
+        }
+        out.write(indent3 + "},\n");
+
+        out.write(indent3 + "new int[] {\n");
+        writeWrapped(layout.codes, indent3 + INDENT, out);
+        out.write(indent3 + "},\n");
+
+        final List<String> labels = new ArrayList<String>();
+        for (String label : layout.labels) {
+            labels.add(javaString(label));
+        }
+        out.write(indent3 + "new String[] {\n");
+        writeWrapped(labels, indent3 + INDENT, out);
+        out.write(indent3 + "});\n\n");
+    }
+
+    private static void writeWrapped(List<String> values, String indent, Writer out)
+            throws IOException {
+        final int maxLineLength = 100;
+        StringBuilder line = new StringBuilder(indent);
+        for (int i = 0; i < values.size(); i++) {
+            final String value = values.get(i) + (i + 1 < values.size() ? "," : "");
+            if (line.length() > indent.length()
+                    && line.length() + 1 + value.length() > maxLineLength) {
+                out.write(line.toString() + "\n");
+                line = new StringBuilder(indent);
+            }
+            if (line.length() > indent.length()) {
+                line.append(' ');
+            }
+            line.append(value);
+        }
+        out.write(line.toString() + "\n");
+    }
+}
@@ -0,0 +1,571 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Reorders the letters of a layout to minimize the distance a single finger travels
+ * typing a text corpus, and writes the result as res/xml/letters_&lt;locale&gt;.xml.
+ * <p>
+ * Run it from the root of the project with one or more UTF-8 text files:
+ * <pre>
+ * java -cp tools/bin es.csc.android.hexakey.tools.LayoutOptimizer res es corpus.txt
+ * </pre>
+ * The current letters_&lt;locale&gt;.xml, or letters_default.xml if there is none, is
+ * the template: only the letter keys are moved, and everything else, the space
+ * included, stays where it is. The travel between two keys is the distance between
+ * their centers, in key widths, with the rows a regular hexagon apart.
+ * <p>
+ * The corpus is read in chunks and the permutations are searched by several simulated
+ * annealing chains, both in parallel on a fork-join pool. Rerun LayoutCompiler after writing a layout.
+ */
+public class LayoutOptimizer {
+    private static final String LETTERS_PREFIX = "letters_";
+    private static final String DEFAULT_LOCALE = "default";
+
+    private static final int NO_SYMBOL = -1;
+    private static final double ROW_HEIGHT = Math.sqrt(3) / 2;
+
+    /** Final temperature of every chain, relative to the initial one. */
+    private static final double COOLING = 1e-4;
+    private static final int TEMPERATURE_SAMPLES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int chains = Runtime.getRuntime().availableProcessors();
+        int iterations = 2000000;
+        int rounds = 4;
+        long seed = 1;
+        int argument = 0;
+        for (; argument < args.length && args[argument].startsWith("-"); argument += 2) {
+            if (argument + 1 == args.length) {
+                usage();
+            }
+            final String option = args[argument];
+            final long value = Long.parseLong(args[argument + 1]);
+            if (option.equals("-chains")) {
+                chains = (int) value;
+            }
+            else if (option.equals("-iterations")) {
+                iterations = (int) value;
+            }
+            else if (option.equals("-rounds")) {
+                rounds = (int) value;
+            }
+            else if (option.equals("-seed")) {
+                seed = value;
+            }
+            else {
+                usage();
+            }
+        }
+        if (args.length - argument < 3) {
+            usage();
+        }
+
+        final File resDirectory = new File(args[argument]);
+        final String locale = args[argument + 1];
+        final File output = new File(new File(resDirectory, "xml"), LETTERS_PREFIX + locale + ".xml");
+        final File template = output.exists() ? output
+                : new File(new File(resDirectory, "xml"), LETTERS_PREFIX + DEFAULT_LOCALE + ".xml");
+        final List<File> corpus = new ArrayList<File>();
+        for (int i = argument + 2; i < args.length; i++) {
+            corpus.add(new File(args[i]));
+        }
+
+        final Grid grid = Grid.read(template, resDirectory);
+        final ForkJoinPool pool = new ForkJoinPool();
+        final long start = System.currentTimeMillis();
+        final long[] bigrams = pool.invoke(new CountTask(Corpus.split(corpus), grid.symbolTable(), grid.size()));
+        System.out.println("Counted " + total(bigrams) + " bigrams in "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        final Travel travel = new Travel(grid, bigrams);
+        int[] best = grid.identity();
+        double bestCost = travel.cost(best);
+        System.out.println(String.format("%s: %.4f key widths per key", template.getName(), bestCost));
+        for (int round = 0; round < rounds; round++) {
+            final List<AnnealTask> tasks = new ArrayList<AnnealTask>();
+            for (int chain = 0; chain < chains; chain++) {
+                tasks.add(new AnnealTask(travel, best, iterations, seed + round * chains + chain));
+            }
+            for (AnnealTask task : pool.invoke(new AllTask(tasks))) {
+                final double cost = travel.cost(task.join());
+                if (cost < bestCost) {
+                    best = task.join();
+                    bestCost = cost;
+                }
+            }
+            System.out.println(String.format("Round %d: %.4f key widths per key", round + 1, bestCost));
+        }
+        pool.shutdown();
+
+        write(template, grid, best, output);
+        System.out.println("Wrote " + output);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: LayoutOptimizer [-chains n] [-iterations n] [-rounds n] [-seed n]"
+                + " <res directory> <locale> <corpus file>...");
+        System.exit(1);
+    }
+
+    private static long total(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * The keys of a layout that take part in the travel: the letters, that can be
+     * moved, and the space, that cannot.
+     */
+    static class Grid {
+        /** The letter of every movable key, in document order, followed by the space if any. */
+        final List<Character> symbols = new ArrayList<Character>();
+        final List<double[]> centers = new ArrayList<double[]>();
+        int letterCount;
+
+        int size() {
+            return symbols.size();
+        }
+
+        int[] identity() {
+            final int[] slots = new int[size()];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = i;
+            }
+            return slots;
+        }
+
+        /**
+         * @return the symbol of every character of the corpus, the whitespace mapped
+         * to the space, or {@link #NO_SYMBOL} for the characters that are not typed
+         */
+        int[] symbolTable() {
+            final int[] table = new int[Character.MAX_VALUE + 1];
+            Arrays.fill(table, NO_SYMBOL);
+            for (int c = 0; c <= Character.MAX_VALUE; c++) {
+                final int index = symbols.indexOf(Character.toLowerCase((char) c));
+                if (index >= 0 && index < letterCount) {
+                    table[c] = index;
+                }
+                else if (Character.isWhitespace(c) && letterCount < size()) {
+                    table[c] = letterCount;
+                }
+            }
+            return table;
+        }
+
+        static Grid read(File file, File resDirectory) throws Exception {
+            final Map<String, Double> fractions = readFractions(new File(new File(resDirectory, "values"), "dimens.xml"));
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            final Document document = factory.newDocumentBuilder().parse(file);
+            final Element keyboard = document.getDocumentElement();
+            final double keyWidth = fraction(file, keyboard, "keyWidth", fractions, 0);
+            final double defaultGap = fraction(file, keyboard, "horizontalGap", fractions, 0);
+            if (keyWidth <= 0) {
+                throw new IllegalArgumentException(file + ": the keyboard has no key width");
+            }
+
+            final Grid grid = new Grid();
+            double[] spaceCenter = null;
+            int row = 0;
+            for (Element rowElement : children(keyboard)) {
+                double x = 0;
+                for (Element key : children(rowElement)) {
+                    x += fraction(file, key, "horizontalGap", fractions, defaultGap) / keyWidth;
+                    final double width = fraction(file, key, "keyWidth", fractions, keyWidth) / keyWidth;
+                    final double[] center = new double[] { x + width / 2, row * ROW_HEIGHT };
+                    x += width;
+
+                    final int code = code(key);
+                    if (isLetterKey(key, code)) {
+                        grid.symbols.add((char) code);
+                        grid.centers.add(center);
+                    }
+                    else if (code == ' ' && spaceCenter == null) {
+                        spaceCenter = center;
+                    }
+                }
+                row++;
+            }
+
+            grid.letterCount = grid.symbols.size();
+            if (spaceCenter != null) {
+                grid.symbols.add(' ');
+                grid.centers.add(spaceCenter);
+            }
+            return grid;
+        }
+
+        private static Map<String, Double> readFractions(File file) throws Exception {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            final Document document = factory.newDocumentBuilder().parse(file);
+            final Map<String, Double> fractions = new HashMap<String, Double>();
+            for (Element item : children(document.getDocumentElement())) {
+                final String value = item.getTextContent().trim();
+                if ("fraction".equals(item.getAttribute("type")) && value.endsWith("%p")) {
+                    fractions.put(item.getAttribute("name"),
+                            Double.parseDouble(value.substring(0, value.length() - 2)) / 100);
+                }
+            }
+            return fractions;
+        }
+
+        /**
+         * @return the value of an attribute that must be a fraction of the width, or 0px
+         */
+        private static double fraction(File file, Element element, String attribute,
+                Map<String, Double> fractions, double defaultValue) {
+            if (!element.hasAttributeNS(LayoutCompiler.ANDROID_NS, attribute)) {
+                return defaultValue;
+            }
+            final String value = element.getAttributeNS(LayoutCompiler.ANDROID_NS, attribute).trim();
+            if (value.matches("0+px")) {
+                return 0;
+            }
+            if (value.startsWith("@fraction/") && fractions.containsKey(value.substring(10))) {
+                return fractions.get(value.substring(10));
+            }
+            throw new IllegalArgumentException(file + ": unsupported size " + attribute + "=\""
+                    + value + "\", use a @fraction resource of res/values/dimens.xml");
+        }
+    }
+
+    private static int code(Element key) {
+        final String codes = key.getAttributeNS(LayoutCompiler.ANDROID_NS, "codes").trim();
+        return codes.length() == 0 || codes.contains(",") ? 0 : Integer.parseInt(codes);
+    }
+
+    /**
+     * @return whether the key types a single lower case letter, shown as its label
+     */
+    private static boolean isLetterKey(Element key, int code) {
+        return code <= Character.MAX_VALUE && Character.isLowerCase(code)
+                && String.valueOf((char) code).equals(key.getAttributeNS(LayoutCompiler.ANDROID_NS, "keyLabel"));
+    }
+
+    private static List<Element> children(Element parent) {
+        final List<Element> elements = new ArrayList<Element>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Counts the bigrams of some chunks of the corpus, splitting them in halves down
+     * to a single chunk. The whitespace counts as the space, a key repeated costs no
+     * travel and is not counted, and any other character that is not a letter of the
+     * layout breaks the sequence.
+     */
+    static class CountTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Corpus.Chunk> chunks;
+        private final int[] symbolTable;
+        private final int symbolCount;
+
+        CountTask(List<Corpus.Chunk> chunks, int[] symbolTable, int symbolCount) {
+            this.chunks = chunks;
+            this.symbolTable = symbolTable;
+            this.symbolCount = symbolCount;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (chunks.size() > 1) {
+                final int half = chunks.size() / 2;
+                final CountTask first = new CountTask(chunks.subList(0, half), symbolTable, symbolCount);
+                final CountTask second = new CountTask(chunks.subList(half, chunks.size()), symbolTable, symbolCount);
+                first.fork();
+                final long[] counts = second.compute();
+                final long[] firstCounts = first.join();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += firstCounts[i];
+                }
+                return counts;
+            }
+
+            final long[] counts = new long[symbolCount * symbolCount];
+            for (Corpus.Chunk chunk : chunks) {
+                try {
+                    count(chunk, counts);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException("Cannot read " + chunk.file, e);
+                }
+            }
+            return counts;
+        }
+
+        /**
+         * Counts the bigrams of a chunk. The bigrams that cross its ends are not counted.
+         */
+        private void count(Corpus.Chunk chunk, final long[] counts) throws IOException {
+            Corpus.read(chunk, new Corpus.Reader() {
+                private int previous = NO_SYMBOL;
+
+                @Override
+                public void read(int c) {
+                    final int symbol = c >= 0 && c <= Character.MAX_VALUE ? symbolTable[c] : NO_SYMBOL;
+                    if (symbol != NO_SYMBOL && previous != NO_SYMBOL && symbol != previous) {
+                        counts[previous * symbolCount + symbol]++;
+                    }
+                    previous = symbol;
+                }
+            });
+        }
+    }
+
+    /**
+     * The expected travel from a key to the next, given where every symbol is.
+     */
+    static class Travel {
+        final int size;
+        final int letterCount;
+        /** Probability of every pair of symbols following each other, in either order. */
+        final double[] weights;
+        final double[] distances;
+
+        Travel(Grid grid, long[] bigrams) {
+            size = grid.size();
+            letterCount = grid.letterCount;
+            final double total = Math.max(1, total(bigrams));
+            weights = new double[size * size];
+            distances = new double[size * size];
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    if (i != j) {
+                        weights[i * size + j] = (bigrams[i * size + j] + bigrams[j * size + i]) / total;
+                    }
+                    final double[] a = grid.centers.get(i);
+                    final double[] b = grid.centers.get(j);
+                    distances[i * size + j] = Math.hypot(a[0] - b[0], a[1] - b[1]);
+                }
+            }
+        }
+
+        /**
+         * @param slots the slot of every symbol
+         */
+        double cost(int[] slots) {
+            double cost = 0;
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    cost += weights[i * size + j] * distances[slots[i] * size + slots[j]];
+                }
+            }
+            return cost;
+        }
+
+        /**
+         * @return how much the cost changes if the letters a and b swap their slots
+         */
+        double swapDelta(int[] slots, int a, int b) {
+            final int slotA = slots[a];
+            final int slotB = slots[b];
+            double delta = 0;
+            for (int k = 0; k < size; k++) {
+                if (k != a && k != b) {
+                    final int slotK = slots[k];
+                    delta += (weights[a * size + k] - weights[b * size + k])
+                            * (distances[slotB * size + slotK] - distances[slotA * size + slotK]);
+                }
+            }
+            return delta;
+        }
+    }
+
+    /**
+     * A simulated annealing chain that swaps two letters at a time, starting from a
+     * layout and cooling geometrically from a temperature of the order of the cost
+     * of a random swap.
+     */
+    static class AnnealTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Travel travel;
+        private final int[] start;
+        private final int iterations;
+        private final long seed;
+
+        AnnealTask(Travel travel, int[] start, int iterations, long seed) {
+            this.travel = travel;
+            this.start = start;
+            this.iterations = iterations;
+            this.seed = seed;
+        }
+
+        @Override
+        protected int[] compute() {
+            final Random random = new Random(seed);
+            final int letterCount = travel.letterCount;
+            final int[] slots = start.clone();
+            if (letterCount < 2) {
+                return slots;
+            }
+
+            double cost = travel.cost(slots);
+            int[] best = slots.clone();
+            double bestCost = cost;
+
+            double initialTemperature = 0;
+            for (int i = 0; i < TEMPERATURE_SAMPLES; i++) {
+                final int a = random.nextInt(letterCount);
+                final int b = random.nextInt(letterCount);
+                initialTemperature += Math.abs(travel.swapDelta(slots, a, b));
+            }
+            initialTemperature /= TEMPERATURE_SAMPLES;
+            if (initialTemperature == 0) {
+                return slots;
+            }
+
+            final double cooling = Math.pow(COOLING, 1.0 / iterations);
+            double temperature = initialTemperature;
+            for (int i = 0; i < iterations; i++, temperature *= cooling) {
+                final int a = random.nextInt(letterCount);
+                final int b = random.nextInt(letterCount - 1);
+                final int other = b >= a ? b + 1 : b;
+                final double delta = travel.swapDelta(slots, a, other);
+                if (delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature)) {
+                    final int slot = slots[a];
+                    slots[a] = slots[other];
+                    slots[other] = slot;
+                    cost += delta;
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        System.arraycopy(slots, 0, best, 0, slots.length);
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Runs some chains in parallel.
+     */
+    static class AllTask extends RecursiveTask<List<AnnealTask>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<AnnealTask> tasks;
+
+        AllTask(List<AnnealTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected List<AnnealTask> compute() {
+            ForkJoinTask.invokeAll(tasks);
+            return tasks;
+        }
+    }
+
+    /**
+     * Writes the template with the letter of every slot replaced, keeping the rest of
+     * the text as it is.
+     *
+     * @param slots the slot of every symbol of the grid
+     */
+    private static void write(File template, Grid grid, int[] slots, File output) throws IOException {
+        final char[] letters = new char[grid.letterCount];
+        for (int i = 0; i < grid.letterCount; i++) {
+            letters[slots[i]] = grid.symbols.get(i);
+        }
+
+        final String text = read(template);
+        final Pattern keyPattern = Pattern.compile("<Key\\b[^>]*>");
+        final Pattern codesPattern = Pattern.compile("android:codes=\"\\s*(\\d+)\\s*\"");
+        final Pattern labelPattern = Pattern.compile("android:keyLabel=\"[^\"]*\"");
+        final Matcher keys = keyPattern.matcher(text);
+        final StringBuffer result = new StringBuffer(text.length());
+        int slot = 0;
+        while (keys.find()) {
+            String key = keys.group();
+            final Matcher codes = codesPattern.matcher(key);
+            if (slot < letters.length && codes.find()) {
+                final int code = Integer.parseInt(codes.group(1));
+                if (code == grid.symbols.get(slot) && labelPattern.matcher(key).find()) {
+                    key = codes.replaceFirst("android:codes=\"" + (int) letters[slot] + "\"");
+                    key = labelPattern.matcher(key).replaceFirst("android:keyLabel=\"" + letters[slot] + "\"");
+                    slot++;
+                }
+            }
+            keys.appendReplacement(result, Matcher.quoteReplacement(key));
+        }
+        keys.appendTail(result);
+        if (slot != letters.length) {
+            throw new IllegalStateException(template + ": found " + slot + " of "
+                    + letters.length + " letter keys");
+        }
+
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
+        try {
+            writer.write(result.toString());
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                final int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += n;
+            }
+        }
+        finally {
+            in.close();
+        }
+        return new String(bytes, "UTF-8");
+    }
+}
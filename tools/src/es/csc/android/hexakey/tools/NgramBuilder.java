@@ -0,0 +1,355 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package es.csc.android.hexakey.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds the language model of the next words that the app reads (see NgramModel)
+ * from UTF-8 text corpora of a language.
+ * <p>
+ * Run it from the root of the project with one or more text files:
+ * <pre>
+ * java -cp tools/bin es.csc.android.hexakey.tools.NgramBuilder res es corpus.txt
+ * </pre>
+ * and the model is written to res/raw/ngrams_&lt;locale&gt;.lm. The words are the
+ * runs of letters, in lower case. A sentence starts after . ! ? or a line break, and
+ * any other character but a space breaks the context, as in the keyboard. For every
+ * context of one or two words seen at least -min-count times, only the -predictions
+ * most frequent next words are kept. The corpus is read in chunks, in parallel on a
+ * fork-join pool.
+ */
+public class NgramBuilder {
+    // Must match NgramModel
+    static final int MAGIC = 0x48584E47;
+    static final int VERSION = 1;
+    static final double COST_SCALE = 16;
+    static final char WORD_END = '\uffff';
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    static final int MAX_WORD_LENGTH = 48;
+    static final int MAX_WORDS = Character.MAX_VALUE + 1;
+    static final int MAX_COST = 255;
+
+    private static final int DEFAULT_PREDICTIONS = 8;
+    private static final int DEFAULT_MIN_COUNT = 2;
+
+    public static void main(String[] args) throws Exception {
+        int predictions = DEFAULT_PREDICTIONS;
+        int minCount = DEFAULT_MIN_COUNT;
+        int argument = 0;
+        for (; argument < args.length && args[argument].startsWith("-"); argument++) {
+            final String option = args[argument];
+            if (argument + 1 == args.length) {
+                usage();
+            }
+            final String value = args[++argument];
+            if (option.equals("-predictions")) {
+                predictions = Math.max(1, Math.min(255, Integer.parseInt(value)));
+            }
+            else if (option.equals("-min-count")) {
+                minCount = Math.max(1, Integer.parseInt(value));
+            }
+            else {
+                usage();
+            }
+        }
+        if (args.length - argument < 3) {
+            usage();
+        }
+
+        final File rawDirectory = new File(args[argument], "raw");
+        final String locale = args[argument + 1];
+        final List<File> corpus = new ArrayList<File>();
+        for (int i = argument + 2; i < args.length; i++) {
+            corpus.add(new File(args[i]));
+        }
+        if (!rawDirectory.isDirectory() && !rawDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + rawDirectory);
+        }
+
+        final long start = System.currentTimeMillis();
+        final ForkJoinPool pool = new ForkJoinPool();
+        final Map<Long, Map<String, int[]>> counts = pool.invoke(new CountTask(Corpus.split(corpus)));
+        pool.shutdown();
+
+        final List<Context> contexts = prune(counts, predictions, minCount);
+        final File output = new File(rawDirectory, "ngrams_" + locale + ".lm");
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output)));
+        int wordCount;
+        try {
+            wordCount = write(contexts, out);
+        }
+        finally {
+            out.close();
+        }
+        System.out.println("Built " + contexts.size() + " contexts of " + wordCount + " words into "
+                + output + " (" + output.length() / 1024 + " KB) in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static void usage() {
+        System.err.println("Usage: NgramBuilder [-predictions n] [-min-count n]"
+                + " <res directory> <locale> <corpus file>...");
+        System.exit(1);
+    }
+
+    /**
+     * Hashes a word of a context after the words already hashed, as NgramModel does.
+     * The beginning of a sentence is a null word.
+     */
+    static long hash(long hash, String word) {
+        if (word != null) {
+            for (int i = 0; i < word.length(); i++) {
+                hash = (hash ^ word.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return (hash ^ WORD_END) * FNV_PRIME;
+    }
+
+    /**
+     * A context with its most frequent next words and their cost.
+     */
+    static class Context {
+        final long hash;
+        final int count;
+        final List<String> words = new ArrayList<String>();
+        final List<Integer> costs = new ArrayList<Integer>();
+
+        Context(long hash, int count) {
+            this.hash = hash;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Drops the rare contexts and the rare words of each one, and sorts the rest by
+     * decreasing frequency, so the app can read only the first ones. The words that
+     * would make the model have more than {@link #MAX_WORDS} are dropped too.
+     */
+    static List<Context> prune(Map<Long, Map<String, int[]>> counts, int predictions, int minCount) {
+        final List<Context> contexts = new ArrayList<Context>();
+        final List<Map.Entry<String, int[]>> next = new ArrayList<Map.Entry<String, int[]>>();
+        final Comparator<Map.Entry<String, int[]>> byCount = new Comparator<Map.Entry<String, int[]>>() {
+            @Override
+            public int compare(Map.Entry<String, int[]> a, Map.Entry<String, int[]> b) {
+                return b.getValue()[0] - a.getValue()[0];
+            }
+        };
+        for (Map.Entry<Long, Map<String, int[]>> entry : counts.entrySet()) {
+            int total = 0;
+            for (int[] count : entry.getValue().values()) {
+                total += count[0];
+            }
+            if (total < minCount) {
+                continue;
+            }
+
+            next.clear();
+            next.addAll(entry.getValue().entrySet());
+            Collections.sort(next, byCount);
+            final Context context = new Context(entry.getKey(), total);
+            for (int i = 0; i < next.size() && i < predictions; i++) {
+                final double probability = (double) next.get(i).getValue()[0] / total;
+                context.words.add(next.get(i).getKey());
+                context.costs.add((int) Math.min(MAX_COST, Math.round(-Math.log(probability) * COST_SCALE)));
+            }
+            contexts.add(context);
+        }
+
+        Collections.sort(contexts, new Comparator<Context>() {
+            @Override
+            public int compare(Context a, Context b) {
+                return a.count != b.count ? (b.count < a.count ? -1 : 1) : Long.compare(a.hash, b.hash);
+            }
+        });
+        return contexts;
+    }
+
+    /**
+     * @return the number of words written
+     */
+    static int write(List<Context> contexts, DataOutputStream out) throws IOException {
+        // Number the words in the order of the contexts, so the frequent ones come first
+        final Map<String, Integer> numbers = new HashMap<String, Integer>();
+        final List<String> words = new ArrayList<String>();
+        for (Context context : contexts) {
+            for (String word : context.words) {
+                if (!numbers.containsKey(word) && words.size() < MAX_WORDS) {
+                    numbers.put(word, words.size());
+                    words.add(word);
+                }
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(words.size());
+        out.writeInt(contexts.size());
+        for (String word : words) {
+            out.writeByte(word.length());
+            out.writeChars(word);
+        }
+        for (Context context : contexts) {
+            int count = 0;
+            for (String word : context.words) {
+                if (numbers.containsKey(word)) {
+                    count++;
+                }
+            }
+            out.writeLong(context.hash);
+            out.writeByte(count);
+            for (int i = 0; i < context.words.size(); i++) {
+                final Integer number = numbers.get(context.words.get(i));
+                if (number != null) {
+                    out.writeChar(number);
+                    out.writeByte(context.costs.get(i));
+                }
+            }
+        }
+        return words.size();
+    }
+
+    /**
+     * Counts the next words of every context of one and two words of the corpus. The
+     * contexts that cross the ends of a chunk are not counted.
+     */
+    static class CountTask extends RecursiveTask<Map<Long, Map<String, int[]>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Corpus.Chunk> chunks;
+
+        CountTask(List<Corpus.Chunk> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        protected Map<Long, Map<String, int[]>> compute() {
+            if (chunks.size() > 1) {
+                final int half = chunks.size() / 2;
+                final CountTask first = new CountTask(chunks.subList(0, half));
+                final CountTask second = new CountTask(chunks.subList(half, chunks.size()));
+                first.fork();
+                final Map<Long, Map<String, int[]>> counts = second.compute();
+                for (Map.Entry<Long, Map<String, int[]>> entry : first.join().entrySet()) {
+                    for (Map.Entry<String, int[]> word : entry.getValue().entrySet()) {
+                        add(counts, entry.getKey(), word.getKey(), word.getValue()[0]);
+                    }
+                }
+                return counts;
+            }
+
+            final Map<Long, Map<String, int[]>> counts = new HashMap<Long, Map<String, int[]>>();
+            for (Corpus.Chunk chunk : chunks) {
+                try {
+                    count(chunk, counts);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException("Cannot read " + chunk.file, e);
+                }
+            }
+            return counts;
+        }
+
+        private static void add(Map<Long, Map<String, int[]>> counts, long context, String word, int count) {
+            Map<String, int[]> next = counts.get(context);
+            if (next == null) {
+                next = new HashMap<String, int[]>();
+                counts.put(context, next);
+            }
+            final int[] wordCount = next.get(word);
+            if (wordCount == null) {
+                next.put(word, new int[] { count });
+            }
+            else {
+                wordCount[0] += count;
+            }
+        }
+
+        private void count(Corpus.Chunk chunk, final Map<Long, Map<String, int[]>> counts)
+                throws IOException {
+            Corpus.read(chunk, new Corpus.Reader() {
+                private final StringBuilder word = new StringBuilder(MAX_WORD_LENGTH);
+                private boolean hasContext;
+                /** Whether the word before the previous one is in the context too. */
+                private boolean hasTwoWords;
+                private String previous;
+                private String beforePrevious;
+
+                @Override
+                public void read(int c) {
+                    if (c != Corpus.INVALID && Character.isLetter(c)) {
+                        word.appendCodePoint(Character.toLowerCase(c));
+                        return;
+                    }
+
+                    if (word.length() > 0) {
+                        endWord();
+                    }
+                    if (c == '.' || c == '!' || c == '?' || c == '\n') {
+                        startSentence();
+                    }
+                    else if (c != ' ') {
+                        hasContext = false;
+                        hasTwoWords = false;
+                    }
+                }
+
+                private void endWord() {
+                    if (word.length() > MAX_WORD_LENGTH) {
+                        word.setLength(0);
+                        hasContext = false;
+                        hasTwoWords = false;
+                        return;
+                    }
+
+                    final String next = word.toString();
+                    word.setLength(0);
+                    if (hasContext) {
+                        add(counts, hash(FNV_OFFSET, previous), next, 1);
+                        if (hasTwoWords) {
+                            add(counts, hash(hash(FNV_OFFSET, beforePrevious), previous), next, 1);
+                        }
+                    }
+                    hasTwoWords = hasContext && previous != null;
+                    beforePrevious = previous;
+                    previous = next;
+                    hasContext = true;
+                }
+
+                private void startSentence() {
+                    previous = null;
+                    hasContext = true;
+                    hasTwoWords = false;
+                }
+            });
+        }
+    }
+}
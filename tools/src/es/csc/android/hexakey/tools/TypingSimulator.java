@@ -0,0 +1,458 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package es.csc.android.hexakey.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Types text corpora with a single finger on every keyboard layout and reports how far
+ * the finger travels, how many times it moves to another key and how long it takes
+ * according to Fitts' law.
+ * <p>
+ * Run it from the root of the project with one or more UTF-8 text files:
+ * <pre>
+ * java -cp tools/bin es.csc.android.hexakey.tools.TypingSimulator res corpus.txt
+ * </pre>
+ * The keys are placed as Keyboard places them, with the dimensions of res/values (and
+ * res/values-land with -land) on a screen of the given width in dp, 360 by default.
+ * Every layout of res/xml is simulated, and any other given with -layout, e.g. a
+ * QWERTY one to compare with. A character goes to the closest key that types it, a
+ * capital letter with no key of its own to the closest shift key first, and the
+ * characters a layout cannot type are counted apart and left out of the averages per
+ * character. For landscape, give also the width of the screen in landscape.
+ * <p>
+ * The time of every key is a + b * log2(D / W + 1), D being the distance from the
+ * previous key and W the width of the key, with the a and b of Soukoreff and
+ * MacKenzie (1995) unless others are given. The corpus is read in chunks, in
+ * parallel on a fork-join pool.
+ */
+public class TypingSimulator {
+    private static final double DEFAULT_SCREEN_WIDTH_DP = 360;
+    private static final double DEFAULT_FITTS_A = 0.083;
+    private static final double DEFAULT_FITTS_B = 0.127;
+    private static final double MM_PER_DP = 25.4 / 160;
+    private static final int KEYCODE_SHIFT = -1;
+
+    public static void main(String[] args) throws Exception {
+        double screenWidth = DEFAULT_SCREEN_WIDTH_DP;
+        boolean isLandscape = false;
+        double fittsA = DEFAULT_FITTS_A;
+        double fittsB = DEFAULT_FITTS_B;
+        final List<File> extraLayouts = new ArrayList<File>();
+        int argument = 0;
+        for (; argument < args.length && args[argument].startsWith("-"); argument++) {
+            final String option = args[argument];
+            if (option.equals("-land")) {
+                isLandscape = true;
+                continue;
+            }
+            if (argument + 1 == args.length) {
+                usage();
+            }
+            final String value = args[++argument];
+            if (option.equals("-width")) {
+                screenWidth = Double.parseDouble(value);
+            }
+            else if (option.equals("-a")) {
+                fittsA = Double.parseDouble(value);
+            }
+            else if (option.equals("-b")) {
+                fittsB = Double.parseDouble(value);
+            }
+            else if (option.equals("-layout")) {
+                extraLayouts.add(new File(value));
+            }
+            else {
+                usage();
+            }
+        }
+        if (args.length - argument < 2) {
+            usage();
+        }
+
+        final File resDirectory = new File(args[argument]);
+        final List<File> corpus = new ArrayList<File>();
+        for (int i = argument + 1; i < args.length; i++) {
+            corpus.add(new File(args[i]));
+        }
+
+        final Map<String, String> values = readValues(new File(resDirectory, "values"));
+        if (isLandscape) {
+            values.putAll(readValues(new File(resDirectory, "values-land")));
+        }
+        final List<File> layoutFiles = new ArrayList<File>();
+        final File[] files = new File(resDirectory, "xml").listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list " + new File(resDirectory, "xml"));
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (LayoutCompiler.isKeyboardLayout(file.getName())) {
+                layoutFiles.add(file);
+            }
+        }
+        layoutFiles.addAll(extraLayouts);
+
+        final List<Layout> layouts = new ArrayList<Layout>();
+        for (File file : layoutFiles) {
+            layouts.add(Layout.read(file, values, screenWidth));
+        }
+
+        final long start = System.currentTimeMillis();
+        final ForkJoinPool pool = new ForkJoinPool();
+        final Stats[] stats = pool.invoke(new SimulateTask(Corpus.split(corpus), layouts, fittsA, fittsB));
+        pool.shutdown();
+        System.out.println(String.format(Locale.US, "Simulated in %d ms, %.0f dp wide %s screen",
+                System.currentTimeMillis() - start, screenWidth, isLandscape ? "landscape" : "portrait"));
+        print(layouts, stats);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: TypingSimulator [-width dp] [-land] [-a seconds] [-b seconds]"
+                + " [-layout xml file]... <res directory> <corpus file>...");
+        System.exit(1);
+    }
+
+    private static void print(List<Layout> layouts, Stats[] stats) {
+        System.out.println(String.format(Locale.US, "%-20s %11s %12s %11s %12s %12s %10s %9s %9s %7s",
+                "layout", "key (dp)", "chars", "missing", "keys", "switches",
+                "travel (m)", "dp/char", "ms/char", "wpm"));
+        for (int i = 0; i < layouts.size(); i++) {
+            final Layout layout = layouts.get(i);
+            final Stats s = stats[i];
+            final long typed = s.characters - s.missing;
+            final double chars = Math.max(1, typed);
+            System.out.println(String.format(Locale.US,
+                    "%-20s %5.1fx%-5.1f %12d %11d %12d %12d %10.1f %9.2f %9.1f %7.1f",
+                    layout.name, layout.keyWidth, layout.keyHeight, s.characters, s.missing,
+                    s.keys, s.switches, s.travel * MM_PER_DP / 1000, s.travel / chars,
+                    s.time * 1000 / chars, s.time > 0 ? typed / 5.0 / (s.time / 60) : 0));
+        }
+    }
+
+    /**
+     * @return the dimensions and fractions of the values of a directory, by name
+     */
+    private static Map<String, String> readValues(File directory) throws Exception {
+        final Map<String, String> values = new HashMap<String, String>();
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return values;
+        }
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        for (File file : files) {
+            if (!file.getName().endsWith(".xml")) {
+                continue;
+            }
+            final Document document = factory.newDocumentBuilder().parse(file);
+            for (Element item : children(document.getDocumentElement())) {
+                if (item.getTagName().equals("dimen")) {
+                    values.put("@dimen/" + item.getAttribute("name"), item.getTextContent().trim());
+                }
+                else if ("fraction".equals(item.getAttribute("type"))) {
+                    values.put("@fraction/" + item.getAttribute("name"), item.getTextContent().trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    private static List<Element> children(Element parent) {
+        final List<Element> elements = new ArrayList<Element>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * The keys of a layout: their centers and widths in dp, and the keys typing every
+     * character.
+     */
+    static class Layout {
+        String name;
+        double keyWidth;
+        double keyHeight;
+        final List<double[]> keys = new ArrayList<double[]>();
+        /** The keys of every character, or null if no key types it. */
+        final int[][] keysOf = new int[Character.MAX_VALUE + 1][];
+        int[] shiftKeys = new int[0];
+
+        static Layout read(File file, Map<String, String> values, double screenWidth) throws Exception {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            final Document document = factory.newDocumentBuilder().parse(file);
+            final Element keyboard = document.getDocumentElement();
+
+            final Layout layout = new Layout();
+            layout.name = file.getName().substring(0, file.getName().lastIndexOf('.'));
+            layout.keyWidth = size(file, keyboard, "keyWidth", values, screenWidth, screenWidth / 10);
+            layout.keyHeight = size(file, keyboard, "keyHeight", values, screenWidth, 50);
+            final double horizontalGap = size(file, keyboard, "horizontalGap", values, screenWidth, 0);
+            final double verticalGap = size(file, keyboard, "verticalGap", values, screenWidth, 0);
+
+            final Map<Integer, List<Integer>> keysByCode = new HashMap<Integer, List<Integer>>();
+            double y = 0;
+            for (Element row : children(keyboard)) {
+                final double rowWidth = size(file, row, "keyWidth", values, screenWidth, layout.keyWidth);
+                final double rowHeight = size(file, row, "keyHeight", values, screenWidth, layout.keyHeight);
+                final double rowGap = size(file, row, "horizontalGap", values, screenWidth, horizontalGap);
+                final double rowVerticalGap = size(file, row, "verticalGap", values, screenWidth, verticalGap);
+                double x = 0;
+                for (Element key : children(row)) {
+                    x += size(file, key, "horizontalGap", values, screenWidth, rowGap);
+                    final double width = size(file, key, "keyWidth", values, screenWidth, rowWidth);
+                    final double height = size(file, key, "keyHeight", values, screenWidth, rowHeight);
+                    layout.keys.add(new double[] { x + width / 2, y + height / 2, width });
+                    x += width;
+
+                    final int code = code(key);
+                    List<Integer> keys = keysByCode.get(code);
+                    if (keys == null) {
+                        keys = new ArrayList<Integer>();
+                        keysByCode.put(code, keys);
+                    }
+                    keys.add(layout.keys.size() - 1);
+                }
+                y += rowVerticalGap + rowHeight;
+            }
+
+            for (Map.Entry<Integer, List<Integer>> entry : keysByCode.entrySet()) {
+                final int[] keys = new int[entry.getValue().size()];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = entry.getValue().get(i);
+                }
+                if (entry.getKey() == KEYCODE_SHIFT) {
+                    layout.shiftKeys = keys;
+                }
+                else if (entry.getKey() >= 0 && entry.getKey() <= Character.MAX_VALUE) {
+                    layout.keysOf[entry.getKey()] = keys;
+                }
+            }
+            return layout;
+        }
+
+        private static int code(Element key) {
+            final String codes = key.getAttributeNS(LayoutCompiler.ANDROID_NS, "codes").trim();
+            if (codes.length() > 0) {
+                return Integer.parseInt(codes.split(",")[0].trim());
+            }
+            final String label = key.getAttributeNS(LayoutCompiler.ANDROID_NS, "keyLabel");
+            return label.length() > 0 ? label.charAt(0) : 0;
+        }
+
+        /**
+         * @return the value of a size attribute in dp, a fraction being relative to
+         * the width of the screen as for the keys of Keyboard
+         */
+        private static double size(File file, Element element, String attribute,
+                Map<String, String> values, double screenWidth, double defaultValue) {
+            if (!element.hasAttributeNS(LayoutCompiler.ANDROID_NS, attribute)) {
+                return defaultValue;
+            }
+            String value = element.getAttributeNS(LayoutCompiler.ANDROID_NS, attribute).trim();
+            if (value.startsWith("@")) {
+                if (!values.containsKey(value)) {
+                    throw new IllegalArgumentException(file + ": unknown resource " + value);
+                }
+                value = values.get(value);
+            }
+            if (value.endsWith("%p")) {
+                return Double.parseDouble(value.substring(0, value.length() - 2)) / 100 * screenWidth;
+            }
+            for (String unit : new String[] { "dip", "dp", "sp", "px" }) {
+                if (value.endsWith(unit)) {
+                    return Double.parseDouble(value.substring(0, value.length() - unit.length()));
+                }
+            }
+            throw new IllegalArgumentException(file + ": unsupported size " + attribute + "=\""
+                    + value + "\"");
+        }
+    }
+
+    static class Stats {
+        long characters;
+        long missing;
+        long keys;
+        long switches;
+        /** In dp. */
+        double travel;
+        /** In seconds. */
+        double time;
+
+        void add(Stats other) {
+            characters += other.characters;
+            missing += other.missing;
+            keys += other.keys;
+            switches += other.switches;
+            travel += other.travel;
+            time += other.time;
+        }
+    }
+
+    /**
+     * The finger typing on a layout.
+     */
+    static class Finger {
+        private final Layout layout;
+        private final double fittsA;
+        private final double fittsB;
+        private final Stats stats = new Stats();
+        private int lastKey = -1;
+
+        Finger(Layout layout, double fittsA, double fittsB) {
+            this.layout = layout;
+            this.fittsA = fittsA;
+            this.fittsB = fittsB;
+        }
+
+        void type(int c) {
+            if (c == '\r') {
+                return;
+            }
+            stats.characters++;
+            final int[] keys = c >= 0 && c <= Character.MAX_VALUE ? layout.keysOf[c] : null;
+            if (keys != null) {
+                press(closest(keys));
+                return;
+            }
+
+            final int lowerCase = c >= 0 ? Character.toLowerCase(c) : c;
+            if (lowerCase != c && lowerCase <= Character.MAX_VALUE
+                    && layout.keysOf[lowerCase] != null && layout.shiftKeys.length > 0) {
+                press(closest(layout.shiftKeys));
+                press(closest(layout.keysOf[lowerCase]));
+            }
+            else {
+                stats.missing++;
+            }
+        }
+
+        private int closest(int[] keys) {
+            if (lastKey < 0 || keys.length == 1) {
+                return keys[0];
+            }
+            int closest = keys[0];
+            double closestDistance = Double.MAX_VALUE;
+            for (int key : keys) {
+                final double distance = distance(lastKey, key);
+                if (distance < closestDistance) {
+                    closest = key;
+                    closestDistance = distance;
+                }
+            }
+            return closest;
+        }
+
+        private void press(int key) {
+            stats.keys++;
+            final double distance = lastKey < 0 ? 0 : distance(lastKey, key);
+            if (lastKey >= 0 && key != lastKey) {
+                stats.switches++;
+            }
+            stats.travel += distance;
+            stats.time += fittsA + fittsB * Math.log(distance / layout.keys.get(key)[2] + 1) / Math.log(2);
+            lastKey = key;
+        }
+
+        private double distance(int from, int to) {
+            final double[] a = layout.keys.get(from);
+            final double[] b = layout.keys.get(to);
+            return Math.hypot(a[0] - b[0], a[1] - b[1]);
+        }
+    }
+
+    /**
+     * Types some chunks of the corpus on every layout, splitting them in halves down
+     * to a single chunk.
+     */
+    static class SimulateTask extends RecursiveTask<Stats[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Corpus.Chunk> chunks;
+        private final List<Layout> layouts;
+        private final double fittsA;
+        private final double fittsB;
+
+        SimulateTask(List<Corpus.Chunk> chunks, List<Layout> layouts, double fittsA, double fittsB) {
+            this.chunks = chunks;
+            this.layouts = layouts;
+            this.fittsA = fittsA;
+            this.fittsB = fittsB;
+        }
+
+        @Override
+        protected Stats[] compute() {
+            if (chunks.size() > 1) {
+                final int half = chunks.size() / 2;
+                final SimulateTask first = new SimulateTask(chunks.subList(0, half), layouts, fittsA, fittsB);
+                final SimulateTask second = new SimulateTask(chunks.subList(half, chunks.size()),
+                        layouts, fittsA, fittsB);
+                first.fork();
+                final Stats[] stats = second.compute();
+                final Stats[] firstStats = first.join();
+                for (int i = 0; i < stats.length; i++) {
+                    stats[i].add(firstStats[i]);
+                }
+                return stats;
+            }
+
+            final Stats[] stats = new Stats[layouts.size()];
+            for (int i = 0; i < stats.length; i++) {
+                stats[i] = new Stats();
+            }
+            for (Corpus.Chunk chunk : chunks) {
+                final Finger[] fingers = new Finger[layouts.size()];
+                for (int i = 0; i < fingers.length; i++) {
+                    fingers[i] = new Finger(layouts.get(i), fittsA, fittsB);
+                }
+                try {
+                    Corpus.read(chunk, new Corpus.Reader() {
+                        @Override
+                        public void read(int c) {
+                            for (Finger finger : fingers) {
+                                finger.type(c);
+                            }
+                        }
+                    });
+                }
+                catch (IOException e) {
+                    throw new RuntimeException("Cannot read " + chunk.file, e);
+                }
+                for (int i = 0; i < fingers.length; i++) {
+                    stats[i].add(fingers[i].stats);
+                }
+            }
+            return stats;
+        }
+    }
+}